@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Creates accessors for annotated members when their injection metadata is built. The factory can be replaced using
+ * {@link Accessors#setFactory(AccessorFactory)}; the default is {@link ReflectionAccessorFactory}. Classes with a
+ * generated injector do not need accessors at all.
+ * 
+ * @author Markus
+ */
+public interface AccessorFactory {
+    FieldAccessor createFieldAccessor(Field field);
+
+    MethodInvoker createMethodInvoker(Method method);
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Holds the {@link AccessorFactory} used for classes without generated injector. Set a custom factory before the
+ * first injection; accessors already resolved are not affected.
+ * 
+ * @author Markus
+ */
+public final class Accessors {
+    private static volatile AccessorFactory factory = new ReflectionAccessorFactory();
+
+    private Accessors() {
+    }
+
+    public static AccessorFactory getFactory() {
+        return factory;
+    }
+
+    public static void setFactory(AccessorFactory factory) {
+        if (factory == null) {
+            throw new IllegalArgumentException("Factory may not be null");
+        }
+        Accessors.factory = factory;
+    }
+
+    static FieldAccessor forField(Field field) {
+        return factory.createFieldAccessor(field);
+    }
+
+    static MethodInvoker forMethod(Method method) {
+        MethodInvoker invoker = factory.createMethodInvoker(method);
+        if (invoker == null) {
+            throw new InjectException("No invoker created for method " + method.getName());
+        }
+        return invoker;
+    }
+
+}
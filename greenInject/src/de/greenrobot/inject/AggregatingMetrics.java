@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import android.util.Log;
+
+/**
+ * Aggregates injection metrics into {@link LatencyHistogram}s per phase and per member kind, each for all classes and
+ * per class, and sums up the counts, e.g. to be sent to telemetry periodically. Getters return copies. Classes are
+ * weakly referenced, so their histograms do not keep them loaded.
+ * 
+ * <pre>
+ * AggregatingMetrics metrics = new AggregatingMetrics();
+ * Injector.setMetrics(metrics);
+ * ...
+ * long p90 = metrics.getPhaseHistogram(InjectionMetrics.PHASE_INJECT_FIELDS).getPercentile(90);
+ * </pre>
+ * 
+ * @author Markus
+ */
+public class AggregatingMetrics implements InjectionMetrics {
+    private final LatencyHistogram[] phaseHistograms = new LatencyHistogram[PHASE_MAX + 1];
+    private final LatencyHistogram[] memberHistograms = new LatencyHistogram[MEMBER_MAX + 1];
+    private final Map<Class<?>, ClassHistograms> classHistograms = new WeakHashMap<Class<?>, ClassHistograms>();
+    private long viewsResolved;
+    private long resourcesDecoded;
+    private long bytesAllocated;
+
+    /** Histograms of a single class, created on first record. */
+    private static final class ClassHistograms {
+        final LatencyHistogram[] phases = new LatencyHistogram[PHASE_MAX + 1];
+        final LatencyHistogram[] members = new LatencyHistogram[MEMBER_MAX + 1];
+    }
+
+    public AggregatingMetrics() {
+        for (int i = 1; i <= PHASE_MAX; i++) {
+            phaseHistograms[i] = new LatencyHistogram();
+        }
+        for (int i = 1; i <= MEMBER_MAX; i++) {
+            memberHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public synchronized void onPhase(int phase, Class<?> targetClass, long nanos) {
+        phaseHistograms[phase].record(nanos);
+        if (targetClass != null) {
+            record(getClassHistograms(targetClass).phases, phase, nanos);
+        }
+    }
+
+    @Override
+    public synchronized void onMember(int memberKind, Class<?> targetClass, long nanos) {
+        memberHistograms[memberKind].record(nanos);
+        if (targetClass != null) {
+            record(getClassHistograms(targetClass).members, memberKind, nanos);
+        }
+    }
+
+    private ClassHistograms getClassHistograms(Class<?> targetClass) {
+        ClassHistograms histograms = classHistograms.get(targetClass);
+        if (histograms == null) {
+            histograms = new ClassHistograms();
+            classHistograms.put(targetClass, histograms);
+        }
+        return histograms;
+    }
+
+    private static void record(LatencyHistogram[] histograms, int index, long nanos) {
+        if (histograms[index] == null) {
+            histograms[index] = new LatencyHistogram();
+        }
+        histograms[index].record(nanos);
+    }
+
+    @Override
+    public synchronized void onViewsResolved(Class<?> targetClass, int count) {
+        viewsResolved += count;
+    }
+
+    @Override
+    public synchronized void onResourceDecoded(int resourceId, long bytes) {
+        resourcesDecoded++;
+        bytesAllocated += bytes;
+    }
+
+    /** @return timings of the given phase (PHASE_XXX) for all classes */
+    public synchronized LatencyHistogram getPhaseHistogram(int phase) {
+        return phaseHistograms[phase].copy();
+    }
+
+    /** @return timings of the given phase (PHASE_XXX) for the given class; empty if none were recorded */
+    public synchronized LatencyHistogram getPhaseHistogram(int phase, Class<?> targetClass) {
+        ClassHistograms histograms = classHistograms.get(targetClass);
+        return copyOrEmpty(histograms != null ? histograms.phases[phase] : null);
+    }
+
+    /** @return timings of the given phase (PHASE_XXX) by class, for classes the phase was recorded for */
+    public synchronized Map<Class<?>, LatencyHistogram> getPhaseHistogramsByClass(int phase) {
+        Map<Class<?>, LatencyHistogram> result = new HashMap<Class<?>, LatencyHistogram>();
+        for (Map.Entry<Class<?>, ClassHistograms> entry : classHistograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue().phases[phase];
+            if (histogram != null) {
+                result.put(entry.getKey(), histogram.copy());
+            }
+        }
+        return result;
+    }
+
+    /** @return timings of single members of the given kind (MEMBER_XXX) */
+    public synchronized LatencyHistogram getMemberHistogram(int memberKind) {
+        return memberHistograms[memberKind].copy();
+    }
+
+    /** @return timings of single members of the given kind (MEMBER_XXX) of the given class; empty if none */
+    public synchronized LatencyHistogram getMemberHistogram(int memberKind, Class<?> targetClass) {
+        ClassHistograms histograms = classHistograms.get(targetClass);
+        return copyOrEmpty(histograms != null ? histograms.members[memberKind] : null);
+    }
+
+    private static LatencyHistogram copyOrEmpty(LatencyHistogram histogram) {
+        return histogram != null ? histogram.copy() : new LatencyHistogram();
+    }
+
+    public synchronized long getViewsResolved() {
+        return viewsResolved;
+    }
+
+    public synchronized long getResourcesDecoded() {
+        return resourcesDecoded;
+    }
+
+    /** Estimated bytes allocated for decoded resources. */
+    public synchronized long getBytesAllocated() {
+        return bytesAllocated;
+    }
+
+    /** Forgets all timings and counts, e.g. after they were sent. */
+    public synchronized void reset() {
+        for (int i = 1; i <= PHASE_MAX; i++) {
+            phaseHistograms[i].reset();
+        }
+        for (int i = 1; i <= MEMBER_MAX; i++) {
+            memberHistograms[i].reset();
+        }
+        classHistograms.clear();
+        viewsResolved = 0;
+        resourcesDecoded = 0;
+        bytesAllocated = 0;
+    }
+
+    /** Logs a summary of the phases, members and counts recorded so far. */
+    public synchronized void log() {
+        for (int i = 1; i <= PHASE_MAX; i++) {
+            if (phaseHistograms[i].getCount() > 0) {
+                Log.d("greenInject", "Phase " + i + ": " + phaseHistograms[i]);
+            }
+        }
+        for (int i = 1; i <= MEMBER_MAX; i++) {
+            if (memberHistograms[i].getCount() > 0) {
+                Log.d("greenInject", "Member kind " + i + ": " + memberHistograms[i]);
+            }
+        }
+        Log.d("greenInject", viewsResolved + " views resolved, " + resourcesDecoded + " resources decoded ("
+                + bytesAllocated + " bytes)");
+    }
+
+}
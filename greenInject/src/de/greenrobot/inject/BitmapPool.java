@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import android.graphics.Bitmap;
+
+/**
+ * Bitmaps that are no longer used and may be reused for decoding injected Bitmap resources (BitmapFactory.Options
+ * inBitmap, Android 3.0 and later). Pooling is optional: it is active once a pool was set by
+ * {@link #setDefault(BitmapPool)}; decoded bitmaps are mutable then, so they can be put back into the pool. Injected
+ * bitmaps are shared by {@link ResourceCache}, so do not draw into them although they are mutable. Resources scaled
+ * to the screen density (e.g. a drawable-mdpi resource on a hdpi screen) are decoded without reuse.
+ * 
+ * @author Markus
+ */
+public final class BitmapPool {
+    private static volatile BitmapPool defaultPool;
+
+    /** Least recently put first. */
+    private final LinkedList<Bitmap> bitmaps = new LinkedList<Bitmap>();
+    private final long maxSize;
+    private long size;
+
+    /**
+     * @param maxSize
+     *            bytes of all pooled bitmaps; least recently put bitmaps are recycled if exceeded
+     */
+    public BitmapPool(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Max size may not be negative");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /** The pool used for decoding injected Bitmap resources, or null if pooling is not active. */
+    public static BitmapPool getDefault() {
+        return defaultPool;
+    }
+
+    /** @param pool the pool to use, or null to disable pooling */
+    public static void setDefault(BitmapPool pool) {
+        defaultPool = pool;
+    }
+
+    /**
+     * Puts a bitmap the caller will not use anymore into the pool. Bitmaps that are immutable or recycled are
+     * ignored.
+     */
+    public void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        synchronized (this) {
+            if (bitmaps.contains(bitmap)) {
+                return;
+            }
+            bitmaps.addLast(bitmap);
+            size += ResourceCache.sizeOf(bitmap);
+            while (size > maxSize && !bitmaps.isEmpty()) {
+                Bitmap evicted = bitmaps.removeFirst();
+                size -= ResourceCache.sizeOf(evicted);
+                evicted.recycle();
+            }
+        }
+    }
+
+    /**
+     * Takes a bitmap with the given size and config out of the pool.
+     * 
+     * @return the bitmap, or null if there is none
+     */
+    public synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+        Iterator<Bitmap> iterator = bitmaps.iterator();
+        while (iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                iterator.remove();
+                size -= ResourceCache.sizeOf(bitmap);
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /** Bytes of all pooled bitmaps. */
+    public synchronized long size() {
+        return size;
+    }
+
+    /** Recycles all pooled bitmaps. */
+    public synchronized void clear() {
+        for (Bitmap bitmap : bitmaps) {
+            bitmap.recycle();
+        }
+        bitmaps.clear();
+        size = 0;
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.lang.reflect.Field;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Resource ID and decode options of an injected Bitmap, as given by @InjectResource. Bitmaps exceeding the max size
+ * are subsampled by a power of two, so they are still at least as large as the max size.
+ * 
+ * @author Markus
+ */
+public final class BitmapSpec {
+    /** BitmapFactory.Options fields not available at API level 4; null if not available. */
+    private static final Field inBitmapField;
+    private static final Field inMutableField;
+
+    static {
+        Field inBitmap = null;
+        Field inMutable = null;
+        if (Build.VERSION.SDK_INT >= 11) {
+            try {
+                inBitmap = BitmapFactory.Options.class.getField("inBitmap");
+                inMutable = BitmapFactory.Options.class.getField("inMutable");
+            } catch (NoSuchFieldException e) {
+                Log.w("greenInject", "Bitmap reuse not available", e);
+                inBitmap = null;
+            }
+        }
+        inBitmapField = inBitmap;
+        inMutableField = inBitmap != null ? inMutable : null;
+    }
+
+    private final int id;
+    private final int maxWidth;
+    private final int maxHeight;
+    private final Bitmap.Config config;
+
+    /**
+     * @param maxWidth
+     *            in pixels, 0 for no limit
+     * @param maxHeight
+     *            in pixels, 0 for no limit
+     * @param config
+     *            preferred config, or null for the default
+     */
+    public BitmapSpec(int id, int maxWidth, int maxHeight, Bitmap.Config config) {
+        if (maxWidth < 0 || maxHeight < 0) {
+            throw new IllegalArgumentException("Max width/height may not be negative");
+        }
+        this.id = id;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.config = config;
+    }
+
+    /** Without any decode options. */
+    public BitmapSpec(int id) {
+        this(id, 0, 0, null);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    public Bitmap.Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Decodes the bitmap, reusing a bitmap of the default {@link BitmapPool} if possible. Bitmaps decoded while a pool
+     * is active are mutable (so they can be pooled later); bitmaps shared by {@link ResourceCache} must not be
+     * modified nevertheless.
+     */
+    public Bitmap decode(Resources resources) {
+        BitmapPool pool = inBitmapField != null ? BitmapPool.getDefault() : null;
+        if (maxWidth == 0 && maxHeight == 0 && config == null && pool == null) {
+            return BitmapFactory.decodeResource(resources, id);
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (config != null) {
+            options.inPreferredConfig = config;
+        }
+        if (maxWidth > 0 || maxHeight > 0 || pool != null) {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeResource(resources, id, options);
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = calculateSampleSize(options.outWidth, options.outHeight, maxWidth, maxHeight);
+        }
+        if (pool == null || isScaled(options)) {
+            // Density scaled bitmaps do not have the decoded size, which pooled bitmaps must match exactly
+            return BitmapFactory.decodeResource(resources, id, options);
+        }
+
+        Bitmap reusable = null;
+        try {
+            inMutableField.setBoolean(options, true);
+            int width = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+            int height = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+            // Before Android 4.4, subsampled bitmaps cannot be reused
+            if (options.inSampleSize == 1 || Build.VERSION.SDK_INT >= 19) {
+                Bitmap.Config reusableConfig = config != null ? config : Bitmap.Config.ARGB_8888;
+                reusable = pool.take(width, height, reusableConfig);
+                inBitmapField.set(options, reusable);
+            }
+        } catch (IllegalAccessException e) {
+            throw new InjectException(e);
+        }
+        try {
+            return BitmapFactory.decodeResource(resources, id, options);
+        } catch (IllegalArgumentException e) {
+            if (reusable == null) {
+                throw e;
+            }
+            // Bitmap could not be reused after all
+            pool.put(reusable);
+            try {
+                inBitmapField.set(options, null);
+            } catch (IllegalAccessException e2) {
+                throw new InjectException(e2);
+            }
+            return BitmapFactory.decodeResource(resources, id, options);
+        }
+    }
+
+    /**
+     * @return true if the resource is scaled to the screen density on decoding; inDensity and inTargetDensity are set
+     *         by decodeResource
+     */
+    private static boolean isScaled(BitmapFactory.Options options) {
+        return options.inScaled && options.inDensity != 0 && options.inTargetDensity != 0
+                && options.inDensity != options.inTargetDensity;
+    }
+
+    /** @return the largest power of two subsampling the size not below the max size */
+    static int calculateSampleSize(int width, int height, int maxWidth, int maxHeight) {
+        if (maxWidth == 0 && maxHeight == 0) {
+            return 1;
+        }
+        int sampleSize = 1;
+        while (sampleSize < (1 << 16)) {
+            int nextSampleSize = sampleSize * 2;
+            if ((maxWidth > 0 && width / nextSampleSize < maxWidth)
+                    || (maxHeight > 0 && height / nextSampleSize < maxHeight)) {
+                break;
+            }
+            sampleSize = nextSampleSize;
+        }
+        return sampleSize;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof BitmapSpec)) {
+            return false;
+        }
+        BitmapSpec other = (BitmapSpec) object;
+        return id == other.id && maxWidth == other.maxWidth && maxHeight == other.maxHeight && config == other.config;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = ((id * 31) + maxWidth) * 31 + maxHeight;
+        return config != null ? hash * 31 + config.hashCode() : hash;
+    }
+
+}
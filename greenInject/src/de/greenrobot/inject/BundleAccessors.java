@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.io.Serializable;
+
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.util.Log;
+
+/**
+ * Reads and writes fields from and to Bundles with the Bundle method matching the field type, which is resolved once
+ * per field. Primitives are transferred using the typed {@link FieldAccessor} methods without boxing. Used for
+ * instance state and Intent extras.
+ * 
+ * @author Markus
+ */
+final class BundleAccessors {
+    static final int TYPE_BOOLEAN = 1;
+    static final int TYPE_BYTE = 2;
+    static final int TYPE_CHAR = 3;
+    static final int TYPE_SHORT = 4;
+    static final int TYPE_INT = 5;
+    static final int TYPE_LONG = 6;
+    static final int TYPE_FLOAT = 7;
+    static final int TYPE_DOUBLE = 8;
+    static final int TYPE_STRING = 9;
+    static final int TYPE_CHAR_SEQUENCE = 10;
+    static final int TYPE_BUNDLE = 11;
+    static final int TYPE_PARCELABLE = 12;
+    static final int TYPE_BOOLEAN_ARRAY = 13;
+    static final int TYPE_BYTE_ARRAY = 14;
+    static final int TYPE_CHAR_ARRAY = 15;
+    static final int TYPE_SHORT_ARRAY = 16;
+    static final int TYPE_INT_ARRAY = 17;
+    static final int TYPE_LONG_ARRAY = 18;
+    static final int TYPE_FLOAT_ARRAY = 19;
+    static final int TYPE_DOUBLE_ARRAY = 20;
+    static final int TYPE_STRING_ARRAY = 21;
+    static final int TYPE_SERIALIZABLE = 22;
+
+    private static final Class<?>[] TYPES = { null, boolean.class, byte.class, char.class, short.class, int.class,
+            long.class, float.class, double.class, String.class, CharSequence.class, Bundle.class, null,
+            boolean[].class, byte[].class, char[].class, short[].class, int[].class, long[].class, float[].class,
+            double[].class, String[].class };
+
+    private BundleAccessors() {
+    }
+
+    /** @return the TYPE_XXX constant for the field type, or 0 if Bundles cannot hold it */
+    static int typeOf(Class<?> type) {
+        for (int i = 1; i < TYPES.length; i++) {
+            if (TYPES[i] == type) {
+                return i;
+            }
+        }
+        if (Parcelable.class.isAssignableFrom(type)) {
+            return TYPE_PARCELABLE;
+        } else if (Serializable.class.isAssignableFrom(type) || type.isInterface()) {
+            // Interfaces like List may hold Serializable objects; checked when put
+            return TYPE_SERIALIZABLE;
+        }
+        return 0;
+    }
+
+    /**
+     * Parses the default value of an extra once per field.
+     * 
+     * @return the value boxed, or null if the text is empty
+     */
+    static Object parseDefault(Class<?> type, String text, String fieldName) {
+        if (text.length() == 0) {
+            return null;
+        }
+        try {
+            if (type == int.class) {
+                // Long to allow unsigned hex values like colors
+                return (int) Long.decode(text).longValue();
+            } else if (type == long.class) {
+                return Long.decode(text);
+            } else if (type == short.class) {
+                return Short.decode(text);
+            } else if (type == byte.class) {
+                return Byte.decode(text);
+            } else if (type == float.class) {
+                return Float.valueOf(text);
+            } else if (type == double.class) {
+                return Double.valueOf(text);
+            } else if (type == boolean.class && (text.equals("true") || text.equals("false"))) {
+                return Boolean.valueOf(text);
+            } else if (type == char.class && text.length() == 1) {
+                return text.charAt(0);
+            } else if (type == String.class || type == CharSequence.class) {
+                return text;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new InjectException("Invalid default value \"" + text + "\" for field " + fieldName + " of type " + type);
+    }
+
+    /**
+     * Sets the field to the extra using the typed Bundle getter. If the extra is missing or has another type, the field
+     * is set to the default value, or keeps its value if there is no default.
+     * 
+     * @param bundle
+     *            the extras, may be null
+     * @param defaultValue
+     *            parsed by {@link #parseDefault(Class, String, String)}, or null
+     */
+    static void getExtra(Bundle bundle, String key, int type, FieldAccessor accessor, Object target,
+            Object defaultValue) {
+        switch (type) {
+        case TYPE_BOOLEAN: {
+            boolean fallback = defaultValue != null ? (Boolean) defaultValue : accessor.getBoolean(target);
+            accessor.setBoolean(target, bundle != null ? bundle.getBoolean(key, fallback) : fallback);
+            break;
+        }
+        case TYPE_INT: {
+            int fallback = defaultValue != null ? (Integer) defaultValue : accessor.getInt(target);
+            accessor.setInt(target, bundle != null ? bundle.getInt(key, fallback) : fallback);
+            break;
+        }
+        case TYPE_LONG: {
+            long fallback = defaultValue != null ? (Long) defaultValue : accessor.getLong(target);
+            accessor.setLong(target, bundle != null ? bundle.getLong(key, fallback) : fallback);
+            break;
+        }
+        case TYPE_FLOAT: {
+            float fallback = defaultValue != null ? (Float) defaultValue : accessor.getFloat(target);
+            accessor.setFloat(target, bundle != null ? bundle.getFloat(key, fallback) : fallback);
+            break;
+        }
+        case TYPE_DOUBLE: {
+            double fallback = defaultValue != null ? (Double) defaultValue : accessor.getDouble(target);
+            accessor.setDouble(target, bundle != null ? bundle.getDouble(key, fallback) : fallback);
+            break;
+        }
+        default:
+            Object value = bundle != null ? bundle.get(key) : null;
+            if (value != null && !isInstance(accessor.getType(), value)) {
+                Log.w("greenInject", "Ignoring extra " + key + " of " + value.getClass() + " for field "
+                        + accessor.getName());
+                value = null;
+            }
+            if (value != null) {
+                accessor.set(target, value);
+            } else if (defaultValue != null) {
+                accessor.set(target, defaultValue);
+            }
+        }
+    }
+
+    /** Like Class.isInstance, but for primitive types, the value must be of the wrapper type. */
+    static boolean isInstance(Class<?> type, Object value) {
+        if (!type.isPrimitive()) {
+            return type.isInstance(value);
+        }
+        return (type == byte.class && value instanceof Byte) || (type == short.class && value instanceof Short)
+                || (type == char.class && value instanceof Character);
+    }
+
+    /** Puts the field value into the Bundle. */
+    static void put(Bundle bundle, String key, int type, FieldAccessor accessor, Object target) {
+        switch (type) {
+        case TYPE_BOOLEAN:
+            bundle.putBoolean(key, accessor.getBoolean(target));
+            break;
+        case TYPE_BYTE:
+            bundle.putByte(key, accessor.getByte(target));
+            break;
+        case TYPE_CHAR:
+            bundle.putChar(key, accessor.getChar(target));
+            break;
+        case TYPE_SHORT:
+            bundle.putShort(key, accessor.getShort(target));
+            break;
+        case TYPE_INT:
+            bundle.putInt(key, accessor.getInt(target));
+            break;
+        case TYPE_LONG:
+            bundle.putLong(key, accessor.getLong(target));
+            break;
+        case TYPE_FLOAT:
+            bundle.putFloat(key, accessor.getFloat(target));
+            break;
+        case TYPE_DOUBLE:
+            bundle.putDouble(key, accessor.getDouble(target));
+            break;
+        case TYPE_STRING:
+            bundle.putString(key, (String) accessor.get(target));
+            break;
+        case TYPE_CHAR_SEQUENCE:
+            bundle.putCharSequence(key, (CharSequence) accessor.get(target));
+            break;
+        case TYPE_BUNDLE:
+            bundle.putBundle(key, (Bundle) accessor.get(target));
+            break;
+        case TYPE_PARCELABLE:
+            bundle.putParcelable(key, (Parcelable) accessor.get(target));
+            break;
+        case TYPE_BOOLEAN_ARRAY:
+            bundle.putBooleanArray(key, (boolean[]) accessor.get(target));
+            break;
+        case TYPE_BYTE_ARRAY:
+            bundle.putByteArray(key, (byte[]) accessor.get(target));
+            break;
+        case TYPE_CHAR_ARRAY:
+            bundle.putCharArray(key, (char[]) accessor.get(target));
+            break;
+        case TYPE_SHORT_ARRAY:
+            bundle.putShortArray(key, (short[]) accessor.get(target));
+            break;
+        case TYPE_INT_ARRAY:
+            bundle.putIntArray(key, (int[]) accessor.get(target));
+            break;
+        case TYPE_LONG_ARRAY:
+            bundle.putLongArray(key, (long[]) accessor.get(target));
+            break;
+        case TYPE_FLOAT_ARRAY:
+            bundle.putFloatArray(key, (float[]) accessor.get(target));
+            break;
+        case TYPE_DOUBLE_ARRAY:
+            bundle.putDoubleArray(key, (double[]) accessor.get(target));
+            break;
+        case TYPE_STRING_ARRAY:
+            bundle.putStringArray(key, (String[]) accessor.get(target));
+            break;
+        case TYPE_SERIALIZABLE:
+            Object value = accessor.get(target);
+            if (value != null && !(value instanceof Serializable)) {
+                throw new InjectException("Value of field " + accessor.getName() + " is not Serializable: "
+                        + value.getClass());
+            }
+            bundle.putSerializable(key, (Serializable) value);
+            break;
+        default:
+            throw new InjectException("Unknown Bundle type: " + type);
+        }
+    }
+
+    /** Sets the field to the value in the Bundle; the Bundle must contain the key. */
+    static void get(Bundle bundle, String key, int type, FieldAccessor accessor, Object target) {
+        switch (type) {
+        case TYPE_BOOLEAN:
+            accessor.setBoolean(target, bundle.getBoolean(key));
+            break;
+        case TYPE_BYTE:
+            accessor.setByte(target, bundle.getByte(key));
+            break;
+        case TYPE_CHAR:
+            accessor.setChar(target, bundle.getChar(key));
+            break;
+        case TYPE_SHORT:
+            accessor.setShort(target, bundle.getShort(key));
+            break;
+        case TYPE_INT:
+            accessor.setInt(target, bundle.getInt(key));
+            break;
+        case TYPE_LONG:
+            accessor.setLong(target, bundle.getLong(key));
+            break;
+        case TYPE_FLOAT:
+            accessor.setFloat(target, bundle.getFloat(key));
+            break;
+        case TYPE_DOUBLE:
+            accessor.setDouble(target, bundle.getDouble(key));
+            break;
+        default:
+            // Bundle.get returns objects and arrays as they were put
+            accessor.set(target, bundle.get(key));
+        }
+    }
+
+}
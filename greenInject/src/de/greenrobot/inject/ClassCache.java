@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Bounded cache for metadata derived from classes (injection plans, generated injectors, value fields). The most
+ * recently used entries are kept strongly referenced. Older entries are only softly referenced, and classes are only
+ * weakly referenced, so metadata of screens not used for a while does not accumulate in long running processes.
+ * Metadata collected by the garbage collector is simply created again on next use.
+ * 
+ * @author Markus
+ */
+final class ClassCache<V> {
+    /** Default number of classes kept strongly referenced per cache. */
+    static final int DEFAULT_MAX_SIZE = 64;
+
+    /** Strongly referenced values in access order, least recently used first. */
+    private final LinkedHashMap<Class<?>, V> entries = new LinkedHashMap<Class<?>, V>(16, 0.75f, true);
+    /** Values evicted from entries; values referencing their class (e.g. by Field) must not be strongly reachable. */
+    private final Map<Class<?>, SoftReference<V>> evictedEntries = new WeakHashMap<Class<?>, SoftReference<V>>();
+    private int maxSize;
+
+    ClassCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    ClassCache(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    /** @return the value for the class, or null */
+    synchronized V get(Class<?> clazz) {
+        V value = entries.get(clazz);
+        if (value == null) {
+            SoftReference<V> reference = evictedEntries.remove(clazz);
+            value = reference != null ? reference.get() : null;
+            if (value != null) {
+                putStrong(clazz, value);
+            }
+        }
+        return value;
+    }
+
+    synchronized void put(Class<?> clazz, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value may not be null");
+        }
+        evictedEntries.remove(clazz);
+        putStrong(clazz, value);
+    }
+
+    private void putStrong(Class<?> clazz, V value) {
+        entries.put(clazz, value);
+        trimToSize(maxSize);
+    }
+
+    /** Keeps at most the given number of values strongly referenced, evicting the least recently used. */
+    synchronized void trimToSize(int size) {
+        while (entries.size() > size) {
+            Map.Entry<Class<?>, V> eldest = entries.entrySet().iterator().next();
+            entries.remove(eldest.getKey());
+            evictedEntries.put(eldest.getKey(), new SoftReference<V>(eldest.getValue()));
+        }
+    }
+
+    synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Max size may not be negative");
+        }
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    synchronized int maxSize() {
+        return maxSize;
+    }
+
+    /** @return the number of strongly referenced values */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        evictedEntries.clear();
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+/**
+ * Reads and writes a field of target objects. Accessors are resolved once per field (see {@link AccessorFactory}).
+ * Subclasses should override the primitive methods to avoid boxing; by default they delegate to
+ * {@link #get(Object)}/{@link #set(Object, Object)}. Failures are reported as {@link InjectException}.
+ * 
+ * @author Markus
+ */
+public abstract class FieldAccessor {
+    /** Field name, used for error messages. */
+    public abstract String getName();
+
+    public abstract Class<?> getType();
+
+    public abstract Object get(Object target);
+
+    public abstract void set(Object target, Object value);
+
+    public byte getByte(Object target) {
+        return (Byte) get(target);
+    }
+
+    public void setByte(Object target, byte value) {
+        set(target, value);
+    }
+
+    public char getChar(Object target) {
+        return (Character) get(target);
+    }
+
+    public void setChar(Object target, char value) {
+        set(target, value);
+    }
+
+    public short getShort(Object target) {
+        return (Short) get(target);
+    }
+
+    public void setShort(Object target, short value) {
+        set(target, value);
+    }
+
+    public int getInt(Object target) {
+        return (Integer) get(target);
+    }
+
+    public void setInt(Object target, int value) {
+        set(target, value);
+    }
+
+    public long getLong(Object target) {
+        return (Long) get(target);
+    }
+
+    public void setLong(Object target, long value) {
+        set(target, value);
+    }
+
+    public float getFloat(Object target) {
+        return (Float) get(target);
+    }
+
+    public void setFloat(Object target, float value) {
+        set(target, value);
+    }
+
+    public double getDouble(Object target) {
+        return (Double) get(target);
+    }
+
+    public void setDouble(Object target, double value) {
+        set(target, value);
+    }
+
+    public boolean getBoolean(Object target) {
+        return (Boolean) get(target);
+    }
+
+    public void setBoolean(Object target, boolean value) {
+        set(target, value);
+    }
+
+}
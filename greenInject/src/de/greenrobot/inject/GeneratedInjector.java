@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import android.os.Bundle;
+
+/**
+ * Implemented by classes generated by the greenInject annotation processor (named like the target class with a
+ * "$$Injector" suffix). Generated injectors access fields and call methods directly, so {@link Injector} and
+ * {@link ValueBinder} prefer them over reflection when present.
+ * 
+ * @author Markus
+ */
+public interface GeneratedInjector<T> {
+    /** Sorted unique IDs of all views used by {@link #injectFields(Injector, Object)} and bindMethods. */
+    int[] getViewIds();
+
+    /** Unique specs of Bitmap resources (not lazy) injected by injectFields, which may be decoded in parallel. */
+    BitmapSpec[] getBitmapSpecs();
+
+    /** Sorted unique IDs of Drawable resources (not lazy) injected by injectFields. */
+    int[] getDrawableResourceIds();
+
+    void injectFields(Injector injector, T target);
+
+    void bindMethods(Injector injector, T target);
+
+    /** Puts the fields annotated with @InjectState into the Bundle. */
+    void saveState(T target, Bundle outState);
+
+    /** Sets the fields annotated with @InjectState to the values contained in the Bundle. */
+    void restoreState(T target, Bundle savedState);
+
+    /** Sets fields injected with views and resources to null, releasing Bitmaps by {@link Injector#releaseBitmap}. */
+    void releaseFields(T target);
+
+    /** Accessors for fields annotated with @Value, used by {@link ValueBinder}. */
+    FieldAccessor[] getValueAccessors();
+
+    /** View IDs bound to the fields; same index as {@link #getValueAccessors()}. */
+    int[] getValueViewIds();
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+/**
+ * Looks up generated injectors once per class. Classes without a generated injector are remembered as well, so the
+ * reflection fallback does not pay for repeated class loading attempts. Injectors of classes not used for a while may
+ * be collected by the garbage collector (see {@link ClassCache}).
+ * 
+ * @author Markus
+ */
+final class GeneratedInjectors {
+    static final String SUFFIX = "$$Injector";
+
+    private static final Object NONE = new Object();
+    static final ClassCache<Object> injectors = new ClassCache<Object>();
+    /** Set to false by tests to use the reflection fallback for all classes. */
+    static volatile boolean lookupEnabled = true;
+
+    private GeneratedInjectors() {
+    }
+
+    /** @return the generated injector for the given class, or null if there is none */
+    @SuppressWarnings("unchecked")
+    static GeneratedInjector<Object> forClass(Class<?> clazz) {
+        if (!lookupEnabled) {
+            return null;
+        }
+        Object injector = injectors.get(clazz);
+        if (injector == null) {
+            injector = load(clazz);
+            injectors.put(clazz, injector);
+        }
+        return injector != NONE ? (GeneratedInjector<Object>) injector : null;
+    }
+
+    private static Object load(Class<?> clazz) {
+        String name = clazz.getName() + SUFFIX;
+        try {
+            Class<?> injectorClass = Class.forName(name, true, clazz.getClassLoader());
+            return injectorClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            return NONE;
+        } catch (Exception e) {
+            throw new InjectException("Could not create generated injector " + name, e);
+        }
+    }
+
+}
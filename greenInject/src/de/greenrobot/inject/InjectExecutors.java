@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+/**
+ * Executors running background work like methods annotated with @OnClick(newThread = true). A bounded default
+ * executor is created on first use; it can be replaced by {@link #setDefault(Executor)}. Additional executors can be
+ * registered by name and selected per method using @OnClick(executor = "name"). Executors are resolved when methods
+ * are bound, so configure them before injecting.
+ * 
+ * @author Markus
+ */
+public final class InjectExecutors {
+    /** Threads of the default executor. */
+    public static final int DEFAULT_THREADS = 2;
+
+    /** Queue capacity of the default executor; further tasks are rejected. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    /** Logs and drops rejected tasks; throwing would crash the UI thread calling the listener. */
+    public static final RejectedExecutionHandler DISCARD_AND_LOG = new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (runnable instanceof InjectedOnClickListener.SingleFlightTask) {
+                ((InjectedOnClickListener.SingleFlightTask) runnable).rejected();
+            }
+            Log.w("greenInject", "Background task rejected, queue is full (" + executor.getQueue().size() + ")");
+        }
+    };
+
+    private static final Map<String, Executor> executors = new ConcurrentHashMap<String, Executor>();
+
+    private static volatile Executor defaultExecutor;
+    private static volatile Executor decodeExecutor;
+
+    private InjectExecutors() {
+    }
+
+    /**
+     * Creates a bounded executor with a fixed number of threads, which are started on demand.
+     * 
+     * @param name
+     *            used for thread names
+     * @param rejectionHandler
+     *            invoked if the queue is full, e.g. {@link #DISCARD_AND_LOG} or one of ThreadPoolExecutor's policies;
+     *            methods invoked with OnClick.RUN_DROP or RUN_COALESCE run again on the next click even if a
+     *            discarding policy dropped their task
+     */
+    public static ThreadPoolExecutor newBoundedExecutor(final String name, int threads, int queueCapacity,
+            RejectedExecutionHandler rejectionHandler) {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "greenInject-" + name + "-" + count.incrementAndGet());
+            }
+        };
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(
+                queueCapacity), threadFactory, reportingDiscards(rejectionHandler));
+    }
+
+    /** Tells single-flight tasks dropped by the handler, so their method is not blocked until they would have run. */
+    private static RejectedExecutionHandler reportingDiscards(final RejectedExecutionHandler rejectionHandler) {
+        if (rejectionHandler == DISCARD_AND_LOG) {
+            return rejectionHandler;
+        }
+        return new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                rejectionHandler.rejectedExecution(runnable, executor);
+                // Policies like DiscardOldestPolicy may have queued the task after all
+                if (runnable instanceof InjectedOnClickListener.SingleFlightTask
+                        && !executor.getQueue().contains(runnable)) {
+                    ((InjectedOnClickListener.SingleFlightTask) runnable).rejected();
+                }
+            }
+        };
+    }
+
+    /** The default executor used for background work if no executor name is given. */
+    public static Executor getDefault() {
+        Executor executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (InjectExecutors.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    executor = newBoundedExecutor("default", DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY, DISCARD_AND_LOG);
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    public static void setDefault(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor may not be null");
+        }
+        defaultExecutor = executor;
+    }
+
+    /**
+     * The executor decoding resources in parallel during injection (see {@link Injector#injectAllParallel(long)}); by
+     * default, it has a thread per CPU core. If its queue is full, the resource is decoded by the calling thread.
+     */
+    public static Executor getDecodeExecutor() {
+        Executor executor = decodeExecutor;
+        if (executor == null) {
+            synchronized (InjectExecutors.class) {
+                executor = decodeExecutor;
+                if (executor == null) {
+                    int threads = Runtime.getRuntime().availableProcessors();
+                    executor = newBoundedExecutor("decode", threads, 64, new ThreadPoolExecutor.CallerRunsPolicy());
+                    decodeExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    public static void setDecodeExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor may not be null");
+        }
+        decodeExecutor = executor;
+    }
+
+    /** Registers an executor, which can be referenced by @OnClick(executor = "name"). */
+    public static void register(String name, Executor executor) {
+        if (name == null || name.length() == 0 || executor == null) {
+            throw new IllegalArgumentException("Name/executor may not be null or empty");
+        }
+        executors.put(name, executor);
+    }
+
+    public static void unregister(String name) {
+        executors.remove(name);
+    }
+
+    /**
+     * @param name
+     *            registered name, or an empty string for the default executor
+     */
+    public static Executor get(String name) {
+        if (name.length() == 0) {
+            return getDefault();
+        }
+        Executor executor = executors.get(name);
+        if (executor == null) {
+            throw new InjectException("No executor registered for name \"" + name + "\"");
+        }
+        return executor;
+    }
+
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.View.OnClickListener;
+import android.view.View.OnLongClickListener;
+import android.widget.AdapterView;
+import android.widget.AdapterView.OnItemClickListener;
+import android.widget.CompoundButton;
+import android.widget.CompoundButton.OnCheckedChangeListener;
+import android.widget.TextView;
+
+/**
+ * Single listener of a target for all bound views, dispatching events to the target's methods by view ID. Handlers
+ * are created once per method, not per view. The target may be referenced weakly, so views do not keep it; events
+ * are ignored once it was garbage collected. The views bound are remembered, so the listeners can be detached again by
+ * {@link #unbind()}.
+ * 
+ * @author Markus
+ */
+final class InjectedDispatcher implements OnClickListener, OnLongClickListener, OnItemClickListener,
+        OnCheckedChangeListener {
+
+    /** References the target strongly or weakly. */
+    static final class TargetReference {
+        private final Object target;
+        private final WeakReference<Object> weakTarget;
+
+        TargetReference(Object target, boolean weak) {
+            this.target = weak ? null : target;
+            weakTarget = weak ? new WeakReference<Object>(target) : null;
+        }
+
+        /** @return the target, or null if it was garbage collected */
+        Object get() {
+            return weakTarget != null ? weakTarget.get() : target;
+        }
+    }
+
+    /** A view this dispatcher listens to. */
+    static final class BoundView {
+        final int event;
+        final View view;
+        /** Only for EVENT_TEXT_CHANGED. */
+        final TextChangedWatcher watcher;
+
+        BoundView(int event, View view, TextChangedWatcher watcher) {
+            this.event = event;
+            this.view = view;
+            this.watcher = watcher;
+        }
+    }
+
+    /** Weak key matching its target by identity, because targets may override equals and hashCode. */
+    static final class TargetKey extends WeakReference<Object> {
+        private final int hash;
+
+        TargetKey(Object target, ReferenceQueue<Object> queue) {
+            super(target, queue);
+            hash = System.identityHashCode(target);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) {
+                return true;
+            }
+            if (!(object instanceof TargetKey)) {
+                return false;
+            }
+            Object target = get();
+            return target != null && target == ((TargetKey) object).get();
+        }
+    }
+
+    /**
+     * Latest dispatcher of each target for {@link #forTarget(Object)}; guarded by itself. Dispatchers are weakly
+     * referenced: they are kept by the views they listen to, and must not keep their target.
+     */
+    private static final Map<TargetKey, WeakReference<InjectedDispatcher>> dispatchers =
+            new HashMap<TargetKey, WeakReference<InjectedDispatcher>>();
+    /** Keys of collected targets, removed from dispatchers on the next access. */
+    private static final ReferenceQueue<Object> collectedTargets = new ReferenceQueue<Object>();
+
+    /** Invokes a method for an event, with or without the event's argument. */
+    static final class EventHandler {
+        final MethodInvoker invoker;
+        final boolean invokeWithArg;
+
+        EventHandler(MethodInvoker invoker, boolean invokeWithArg) {
+            this.invoker = invoker;
+            this.invokeWithArg = invokeWithArg;
+        }
+
+        Object invoke(Object target, Object arg) {
+            return invoker.invoke(target, invokeWithArg ? arg : null);
+        }
+
+        Object invoke(Object target, int arg) {
+            return invokeWithArg ? invoker.invoke(target, arg) : invoker.invoke(target, null);
+        }
+
+        Object invoke(Object target, boolean arg) {
+            return invokeWithArg ? invoker.invoke(target, arg) : invoker.invoke(target, null);
+        }
+    }
+
+    /** TextWatcher does not pass the view, so a watcher per view is needed to know the ID. */
+    final class TextChangedWatcher implements TextWatcher {
+        private final int viewId;
+
+        TextChangedWatcher(int viewId) {
+            this.viewId = viewId;
+        }
+
+        @Override
+        public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence text, int start, int before, int count) {
+        }
+
+        @Override
+        public void afterTextChanged(Editable text) {
+            EventHandler handler = textChangedHandlers.get(viewId);
+            Object currentTarget = target.get();
+            if (handler != null && currentTarget != null) {
+                handler.invoke(currentTarget, text);
+            }
+        }
+    }
+
+    private final TargetReference target;
+    private final SparseArray<InjectedOnClickListener> clickHandlers = new SparseArray<InjectedOnClickListener>();
+    private final SparseArray<EventHandler> longClickHandlers = new SparseArray<EventHandler>();
+    private final SparseArray<EventHandler> itemClickHandlers = new SparseArray<EventHandler>();
+    private final SparseArray<EventHandler> checkedChangeHandlers = new SparseArray<EventHandler>();
+    private final SparseArray<EventHandler> textChangedHandlers = new SparseArray<EventHandler>();
+    private final List<BoundView> boundViews = new ArrayList<BoundView>();
+
+    InjectedDispatcher(Object target, boolean weakTarget) {
+        this.target = new TargetReference(target, weakTarget);
+        synchronized (dispatchers) {
+            removeCollectedTargets();
+            dispatchers.put(new TargetKey(target, collectedTargets), new WeakReference<InjectedDispatcher>(this));
+        }
+    }
+
+    /** @return the dispatcher created last for the target, or null if there is none (or it was unbound) */
+    static InjectedDispatcher forTarget(Object target) {
+        synchronized (dispatchers) {
+            removeCollectedTargets();
+            WeakReference<InjectedDispatcher> reference = dispatchers.get(new TargetKey(target, null));
+            return reference != null ? reference.get() : null;
+        }
+    }
+
+    /** Must be called holding dispatchers. */
+    private static void removeCollectedTargets() {
+        Object key;
+        while ((key = collectedTargets.poll()) != null) {
+            dispatchers.remove(key);
+        }
+    }
+
+    TargetReference getTargetReference() {
+        return target;
+    }
+
+    void bindClick(int viewId, View view, InjectedOnClickListener handler) {
+        clickHandlers.put(viewId, handler);
+        view.setOnClickListener(this);
+        boundViews.add(new BoundView(InjectionPlan.EVENT_CLICK, view, null));
+    }
+
+    /**
+     * @param event
+     *            one of the InjectionPlan.EVENT_XXX constants except EVENT_CLICK
+     */
+    void bind(int event, int viewId, View view, EventHandler handler) {
+        TextChangedWatcher watcher = null;
+        switch (event) {
+        case InjectionPlan.EVENT_LONG_CLICK:
+            longClickHandlers.put(viewId, handler);
+            view.setOnLongClickListener(this);
+            break;
+        case InjectionPlan.EVENT_ITEM_CLICK:
+            checkViewType(view, AdapterView.class, handler);
+            itemClickHandlers.put(viewId, handler);
+            ((AdapterView<?>) view).setOnItemClickListener(this);
+            break;
+        case InjectionPlan.EVENT_CHECKED_CHANGE:
+            checkViewType(view, CompoundButton.class, handler);
+            checkedChangeHandlers.put(viewId, handler);
+            ((CompoundButton) view).setOnCheckedChangeListener(this);
+            break;
+        case InjectionPlan.EVENT_TEXT_CHANGED:
+            checkViewType(view, TextView.class, handler);
+            if (textChangedHandlers.get(viewId) == null) {
+                watcher = new TextChangedWatcher(viewId);
+                ((TextView) view).addTextChangedListener(watcher);
+            }
+            textChangedHandlers.put(viewId, handler);
+            break;
+        default:
+            throw new InjectException("Unknown event: " + event);
+        }
+        boundViews.add(new BoundView(event, view, watcher));
+    }
+
+    /** Detaches this dispatcher from all views it was bound to, and forgets the handlers. */
+    void unbind() {
+        for (BoundView boundView : boundViews) {
+            View view = boundView.view;
+            switch (boundView.event) {
+            case InjectionPlan.EVENT_CLICK:
+                view.setOnClickListener(null);
+                break;
+            case InjectionPlan.EVENT_LONG_CLICK:
+                view.setOnLongClickListener(null);
+                break;
+            case InjectionPlan.EVENT_ITEM_CLICK:
+                ((AdapterView<?>) view).setOnItemClickListener(null);
+                break;
+            case InjectionPlan.EVENT_CHECKED_CHANGE:
+                ((CompoundButton) view).setOnCheckedChangeListener(null);
+                break;
+            case InjectionPlan.EVENT_TEXT_CHANGED:
+                if (boundView.watcher != null) {
+                    ((TextView) view).removeTextChangedListener(boundView.watcher);
+                }
+                break;
+            }
+        }
+        boundViews.clear();
+        clickHandlers.clear();
+        longClickHandlers.clear();
+        itemClickHandlers.clear();
+        checkedChangeHandlers.clear();
+        textChangedHandlers.clear();
+        Object currentTarget = target.get();
+        if (currentTarget != null) {
+            synchronized (dispatchers) {
+                if (forTarget(currentTarget) == this) {
+                    dispatchers.remove(new TargetKey(currentTarget, null));
+                }
+            }
+        }
+    }
+
+    private static void checkViewType(View view, Class<?> type, EventHandler handler) {
+        if (!type.isInstance(view)) {
+            throw new InjectException("View for method " + handler.invoker.getName() + " must be a "
+                    + type.getSimpleName() + ", but is a " + view.getClass().getName());
+        }
+    }
+
+    @Override
+    public void onClick(View view) {
+        InjectedOnClickListener handler = clickHandlers.get(view.getId());
+        if (handler != null) {
+            handler.onClick(view);
+        }
+    }
+
+    @Override
+    public boolean onLongClick(View view) {
+        EventHandler handler = longClickHandlers.get(view.getId());
+        Object currentTarget = target.get();
+        if (handler == null || currentTarget == null) {
+            return false;
+        }
+        Object result = handler.invoke(currentTarget, view);
+        // Methods not returning a boolean always consume the long click
+        return !(result instanceof Boolean) || (Boolean) result;
+    }
+
+    @Override
+    public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+        EventHandler handler = itemClickHandlers.get(parent.getId());
+        Object currentTarget = target.get();
+        if (handler != null && currentTarget != null) {
+            handler.invoke(currentTarget, position);
+        }
+    }
+
+    @Override
+    public void onCheckedChanged(CompoundButton button, boolean isChecked) {
+        EventHandler handler = checkedChangeHandlers.get(button.getId());
+        Object currentTarget = target.get();
+        if (handler != null && currentTarget != null) {
+            handler.invoke(currentTarget, isChecked);
+        }
+    }
+
+}
@@ -15,48 +15,146 @@
  */
 package de.greenrobot.inject;
 
-import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.view.View;
 import android.view.View.OnClickListener;
+import de.greenrobot.inject.annotation.OnClick;
 
 class InjectedOnClickListener implements OnClickListener {
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_RUNNING_PENDING = 2;
 
-    private final Object target;
-    private final Method method;
+    private final InjectedDispatcher.TargetReference target;
+    private final MethodInvoker invoker;
     private final boolean invokeWithViewParam;
-    private final boolean invokeInNewThread;
+    /** Executor for background invocation, or null to invoke on the UI thread. */
+    private final Executor backgroundExecutor;
+    /** One of the OnClick.RUN_XXX constants; used for background invocation only. */
+    private final int whileRunning;
 
-    InjectedOnClickListener(Object target, Method method, boolean invokeWithViewParam, boolean invokeInNewThread) {
+    /** Background invocation state for RUN_DROP and RUN_COALESCE. */
+    private final AtomicInteger state = new AtomicInteger();
+    /** View of the last click coalesced while running. */
+    private volatile View pendingView;
+
+    InjectedOnClickListener(InjectedDispatcher.TargetReference target, MethodInvoker invoker,
+            boolean invokeWithViewParam, Executor backgroundExecutor, int whileRunning) {
         this.target = target;
-        this.method = method;
+        this.invoker = invoker;
         this.invokeWithViewParam = invokeWithViewParam;
-        this.invokeInNewThread = invokeInNewThread;
+        this.backgroundExecutor = backgroundExecutor;
+        this.whileRunning = whileRunning;
     }
 
     @Override
     public void onClick(final View view) {
-        if (invokeInNewThread) {
-            new Thread() {
+        if (backgroundExecutor == null) {
+            handleOnClick(view);
+        } else if (whileRunning == OnClick.RUN_CONCURRENT) {
+            backgroundExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
                     handleOnClick(view);
                 }
-            }.start();
+            });
         } else {
-            handleOnClick(view);
+            onClickSingleFlight(view);
         }
     }
 
-    protected void handleOnClick(View view) {
-        try {
-            if (invokeWithViewParam) {
-                method.invoke(target, view);
+    private void onClickSingleFlight(View view) {
+        while (true) {
+            int currentState = state.get();
+            if (currentState == STATE_IDLE) {
+                if (state.compareAndSet(STATE_IDLE, STATE_RUNNING)) {
+                    SingleFlightTask newTask = new SingleFlightTask(view);
+                    try {
+                        backgroundExecutor.execute(newTask);
+                    } catch (RuntimeException e) {
+                        newTask.rejected();
+                        throw e;
+                    }
+                    return;
+                }
+            } else if (whileRunning == OnClick.RUN_DROP) {
+                return;
             } else {
-                method.invoke(target);
+                // Set before the state, so a trailing run always finds a view
+                pendingView = view;
+                if (currentState == STATE_RUNNING_PENDING
+                        || state.compareAndSet(STATE_RUNNING, STATE_RUNNING_PENDING)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    protected void handleOnClick(View view) {
+        Object currentTarget = target.get();
+        if (currentTarget == null) {
+            return;
+        }
+        invoker.invoke(currentTarget, invokeWithViewParam ? view : null);
+    }
+
+    /** Runs the method, and again for clicks coalesced meanwhile, before allowing the next background run. */
+    class SingleFlightTask implements Runnable {
+        private final View view;
+        /** Set by the first of running and giving up the task, so a task given up never runs. */
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        SingleFlightTask(View view) {
+            this.view = view;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            View currentView = view;
+            while (currentView != null) {
+                boolean completed = false;
+                try {
+                    handleOnClick(currentView);
+                    completed = true;
+                } finally {
+                    if (completed) {
+                        currentView = finishRun();
+                    } else {
+                        reset();
+                    }
+                }
+            }
+        }
+
+        /** @return the view for the trailing run, or null if done */
+        private View finishRun() {
+            while (true) {
+                if (state.compareAndSet(STATE_RUNNING, STATE_IDLE)) {
+                    return null;
+                } else if (state.compareAndSet(STATE_RUNNING_PENDING, STATE_RUNNING)) {
+                    View trailingView = pendingView;
+                    pendingView = null;
+                    return trailingView != null ? trailingView : view;
+                }
             }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        }
+
+        /** Called if the executor dropped this task without running it; allows the next run unless it ran. */
+        void rejected() {
+            if (claimed.compareAndSet(false, true)) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            pendingView = null;
+            state.set(STATE_IDLE);
         }
     }
 
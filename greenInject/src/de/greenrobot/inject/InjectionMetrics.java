@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+/**
+ * Receives timings and counts of injections once installed by {@link Injector#setMetrics(InjectionMetrics)}. Without
+ * a listener, injection does not take any timings and does not allocate anything for metrics. Callbacks may come
+ * from any thread (e.g. prewarming or parallel decoding), and should return quickly.
+ * <p>
+ * Member timings are taken for the members injected by reflection; classes with generated injectors report their
+ * phase timings only.
+ * 
+ * @author Markus
+ */
+public interface InjectionMetrics {
+    /** Injecting fields, including restoring @InjectState fields. */
+    int PHASE_INJECT_FIELDS = 1;
+    /** Wiring listeners to annotated methods. */
+    int PHASE_BIND_METHODS = 2;
+    /** {@link ValueBinder#valuesToUi()}. */
+    int PHASE_VALUES_TO_UI = 3;
+    /** {@link ValueBinder#uiToValues()}. */
+    int PHASE_UI_TO_VALUES = 4;
+    /** Setting injected view and resource fields to null on release. */
+    int PHASE_RELEASE = 5;
+    /** Loading the metadata index asset; reported without target class. */
+    int PHASE_LOAD_INDEX = 6;
+    /** Preparing the metadata of a class by {@link Injector#prewarm(android.content.Context)}. */
+    int PHASE_PREWARM = 7;
+    /** Highest PHASE_XXX constant. */
+    int PHASE_MAX = 7;
+
+    int MEMBER_VIEW = 1;
+    int MEMBER_RESOURCE = 2;
+    int MEMBER_EXTRA = 3;
+    int MEMBER_DEPENDENCY = 4;
+    int MEMBER_STATE = 5;
+    /** A method wired to view events. */
+    int MEMBER_METHOD = 6;
+    /** Highest MEMBER_XXX constant. */
+    int MEMBER_MAX = 6;
+
+    /**
+     * @param phase
+     *            one of the PHASE_XXX constants
+     * @param targetClass
+     *            class of the injected object, or null if the phase does not concern a single class
+     */
+    void onPhase(int phase, Class<?> targetClass, long nanos);
+
+    /**
+     * @param memberKind
+     *            one of the MEMBER_XXX constants
+     */
+    void onMember(int memberKind, Class<?> targetClass, long nanos);
+
+    /** Views looked up for the target class, either by a single findViewById or by one traversal of the layout. */
+    void onViewsResolved(Class<?> targetClass, int count);
+
+    /**
+     * A resource was loaded into the {@link ResourceCache} because it was not cached yet.
+     * 
+     * @param bytes
+     *            estimated bytes allocated for the resource, e.g. the pixel data of a Bitmap
+     */
+    void onResourceDecoded(int resourceId, long bytes);
+
+}
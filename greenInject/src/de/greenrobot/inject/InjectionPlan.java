@@ -0,0 +1,519 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.animation.Animation;
+import de.greenrobot.inject.MetadataIndex.MemberEntry;
+import de.greenrobot.inject.annotation.OnClick;
+
+/**
+ * Immutable injection metadata of a class. Scanning annotations is expensive, so this is done once per class; the
+ * result is cached (see {@link ClassCache}) and shared by all {@link Injector} instances. Classes in the
+ * {@link MetadataIndex} are not scanned; their members are looked up by name.
+ *
+ * @author Markus
+ */
+final class InjectionPlan {
+    static final int KIND_VIEW = 1;
+    static final int KIND_RESOURCE = 2;
+    static final int KIND_EXTRA = 3;
+    static final int KIND_DEPENDENCY = 4;
+    /** 5 is used by MetadataIndex.MEMBER_VALUE. */
+    static final int KIND_STATE = 6;
+
+    static final int EVENT_CLICK = 1;
+    static final int EVENT_LONG_CLICK = 2;
+    static final int EVENT_ITEM_CLICK = 3;
+    static final int EVENT_CHECKED_CHANGE = 4;
+    static final int EVENT_TEXT_CHANGED = 5;
+
+    static final int RESOURCE_STRING = 1;
+    static final int RESOURCE_DRAWABLE = 2;
+    static final int RESOURCE_BITMAP = 3;
+    /** Integer, color or dimension in pixels depending on the resource type; see {@link Injector#getIntResource}. */
+    static final int RESOURCE_INT = 4;
+    static final int RESOURCE_BOOLEAN = 5;
+    /** Dimension as float. */
+    static final int RESOURCE_DIMENSION = 6;
+    static final int RESOURCE_STRING_ARRAY = 7;
+    static final int RESOURCE_ANIMATION = 8;
+
+    static final ClassCache<InjectionPlan> plans = new ClassCache<InjectionPlan>();
+
+    private static final Class<?>[] PRIMITIVE_TYPES = { int.class, boolean.class, long.class, float.class,
+            double.class, short.class, byte.class, char.class };
+
+    /** A field to inject into. */
+    static final class FieldEntry {
+        final FieldAccessor accessor;
+        final int kind;
+        /** View or resource ID. */
+        final int id;
+        /** Resource kind (RESOURCE_XXX) for KIND_RESOURCE. */
+        final int resourceKind;
+        /** Key for KIND_EXTRA and KIND_STATE. */
+        final String key;
+        /** Type argument if the field is a {@link Lazy}, otherwise null. */
+        final Class<?> lazyType;
+        /** Decode options for RESOURCE_BITMAP. */
+        final BitmapSpec bitmapSpec;
+        /** BundleAccessors.TYPE_XXX for KIND_STATE and KIND_EXTRA (0 for types without typed getter). */
+        final int bundleType;
+        /** Parsed default value for KIND_EXTRA, or null. */
+        final Object defaultValue;
+
+        FieldEntry(FieldAccessor accessor, int kind, int id, int resourceKind, String key, Class<?> lazyType,
+                BitmapSpec bitmapSpec, int bundleType) {
+            this(accessor, kind, id, resourceKind, key, lazyType, bitmapSpec, bundleType, null);
+        }
+
+        FieldEntry(FieldAccessor accessor, int kind, int id, int resourceKind, String key, Class<?> lazyType,
+                BitmapSpec bitmapSpec, int bundleType, Object defaultValue) {
+            this.accessor = accessor;
+            this.kind = kind;
+            this.id = id;
+            this.resourceKind = resourceKind;
+            this.key = key;
+            this.lazyType = lazyType;
+            this.bitmapSpec = bitmapSpec;
+            this.bundleType = bundleType;
+            this.defaultValue = defaultValue;
+        }
+    }
+
+    /** A method to bind to views. */
+    static final class MethodEntry {
+        /** One of the EVENT_XXX constants. */
+        final int event;
+        final MethodInvoker invoker;
+        /** View IDs to bind to (no zero IDs). */
+        final int[] ids;
+        /** If the method has a parameter for the event's argument (e.g. the clicked view). */
+        final boolean invokeWithArg;
+        final boolean invokeInNewThread;
+        /** Name of the executor for background invocation, empty for the default executor. */
+        final String executorName;
+        /** One of the OnClick.RUN_XXX constants. */
+        final int whileRunning;
+
+        MethodEntry(int event, MethodInvoker invoker, int[] ids, boolean invokeWithArg, boolean invokeInNewThread,
+                String executorName, int whileRunning) {
+            this.event = event;
+            this.invoker = invoker;
+            this.ids = ids;
+            this.invokeWithArg = invokeWithArg;
+            this.invokeInNewThread = invokeInNewThread;
+            this.executorName = executorName;
+            this.whileRunning = whileRunning;
+        }
+    }
+
+    final Class<?> clazz;
+    final FieldEntry[] fieldEntries;
+    final MethodEntry[] methodEntries;
+    /** Sorted unique IDs of all views used by field and method entries. */
+    final int[] viewIds;
+    /** Fields annotated with @InjectState, also contained in fieldEntries. */
+    final FieldEntry[] stateEntries;
+    /** Unique specs of Bitmap resources injected (not lazy). */
+    final BitmapSpec[] bitmapSpecs;
+    /** Sorted unique IDs of Drawable resources injected (not lazy). */
+    final int[] drawableResourceIds;
+
+    /** Gets the cached plan for the given class, building it on first use. */
+    static InjectionPlan forClass(Class<?> clazz) {
+        InjectionPlan plan = plans.get(clazz);
+        if (plan == null) {
+            // Concurrent first calls may build the plan twice, which is harmless as plans are immutable
+            plan = new InjectionPlan(clazz);
+            plans.put(clazz, plan);
+        }
+        return plan;
+    }
+
+    private InjectionPlan(Class<?> clazz) {
+        this.clazz = clazz;
+
+        List<FieldEntry> fieldEntryList = new ArrayList<FieldEntry>();
+        List<MethodEntry> methodEntryList = new ArrayList<MethodEntry>();
+        // Per event
+        SparseArray<SparseArray<Method>> methodsById = new SparseArray<SparseArray<Method>>();
+        MemberEntry[] indexedMembers = MetadataIndex.forClass(clazz);
+        Member[] members = indexedMembers != null ? findIndexedMembers(clazz, indexedMembers) : null;
+        if (members != null) {
+            // Fast path: look up members by name instead of reading annotations
+            for (int i = 0; i < members.length; i++) {
+                MemberEntry member = indexedMembers[i];
+                if (member.isMethod()) {
+                    methodEntryList.add(createMethodEntry((Method) members[i], member, methodsById));
+                } else if (member.kind != MetadataIndex.MEMBER_VALUE) {
+                    fieldEntryList.add(createFieldEntry((Field) members[i], member));
+                }
+            }
+        } else {
+            for (Field field : clazz.getDeclaredFields()) {
+                for (Annotation annotation : field.getAnnotations()) {
+                    MemberEntry member = MemberEntry.fromAnnotation(field.getName(), "", annotation);
+                    if (member != null && member.kind != MetadataIndex.MEMBER_VALUE) {
+                        fieldEntryList.add(createFieldEntry(field, member));
+                    }
+                }
+            }
+
+            for (Method method : clazz.getDeclaredMethods()) {
+                Class<?>[] parameterTypes = method.getParameterTypes();
+                String parameterType = parameterTypes.length > 0 ? parameterTypes[0].getName() : "";
+                for (Annotation annotation : method.getAnnotations()) {
+                    MemberEntry member = MemberEntry.fromAnnotation(method.getName(), parameterType, annotation);
+                    if (member != null && member.isMethod()) {
+                        methodEntryList.add(createMethodEntry(method, member, methodsById));
+                    }
+                }
+            }
+        }
+        fieldEntries = fieldEntryList.toArray(new FieldEntry[fieldEntryList.size()]);
+        methodEntries = methodEntryList.toArray(new MethodEntry[methodEntryList.size()]);
+
+        viewIds = collectViewIds();
+        stateEntries = collectStateEntries();
+        bitmapSpecs = collectBitmapSpecs();
+        drawableResourceIds = collectResourceIds(RESOURCE_DRAWABLE);
+    }
+
+    private int[] collectViewIds() {
+        int count = 0;
+        for (FieldEntry entry : fieldEntries) {
+            if (entry.kind == KIND_VIEW && entry.lazyType == null) {
+                count++;
+            }
+        }
+        for (MethodEntry entry : methodEntries) {
+            count += entry.ids.length;
+        }
+        int[] ids = new int[count];
+        int index = 0;
+        for (FieldEntry entry : fieldEntries) {
+            if (entry.kind == KIND_VIEW && entry.lazyType == null) {
+                ids[index++] = entry.id;
+            }
+        }
+        for (MethodEntry entry : methodEntries) {
+            System.arraycopy(entry.ids, 0, ids, index, entry.ids.length);
+            index += entry.ids.length;
+        }
+        return ViewResolver.toSortedIds(ids);
+    }
+
+    private FieldEntry[] collectStateEntries() {
+        List<FieldEntry> entries = new ArrayList<FieldEntry>();
+        for (FieldEntry entry : fieldEntries) {
+            if (entry.kind == KIND_STATE) {
+                entries.add(entry);
+            }
+        }
+        return entries.toArray(new FieldEntry[entries.size()]);
+    }
+
+    private BitmapSpec[] collectBitmapSpecs() {
+        Set<BitmapSpec> specs = new LinkedHashSet<BitmapSpec>();
+        for (FieldEntry entry : fieldEntries) {
+            if (entry.bitmapSpec != null && entry.lazyType == null) {
+                specs.add(entry.bitmapSpec);
+            }
+        }
+        return specs.toArray(new BitmapSpec[specs.size()]);
+    }
+
+    private int[] collectResourceIds(int resourceKind) {
+        int[] ids = new int[fieldEntries.length];
+        for (int i = 0; i < fieldEntries.length; i++) {
+            FieldEntry entry = fieldEntries[i];
+            if (entry.kind == KIND_RESOURCE && entry.resourceKind == resourceKind && entry.lazyType == null) {
+                ids[i] = entry.id;
+            }
+        }
+        // Drops the zeros
+        return ViewResolver.toSortedIds(ids);
+    }
+
+    private static FieldEntry createFieldEntry(Field field, MemberEntry member) {
+        FieldAccessor accessor = Accessors.forField(field);
+        Class<?> lazyType = resolveLazyType(field);
+        switch (member.kind) {
+        case KIND_VIEW:
+            if (lazyType != null && !View.class.isAssignableFrom(lazyType)) {
+                throw new InjectException("Lazy type must be a View: " + field.getName());
+            }
+            return new FieldEntry(accessor, KIND_VIEW, member.ids[0], 0, null, lazyType, null, 0);
+        case KIND_RESOURCE:
+            Class<?> type = lazyType != null ? lazyType : field.getType();
+            int resourceKind = resourceKindForType(type);
+            if (resourceKind == 0) {
+                throw new InjectException("Cannot inject for type " + type + " (field " + field.getName() + ")");
+            }
+            BitmapSpec bitmapSpec = createBitmapSpec(field, member, resourceKind);
+            return new FieldEntry(accessor, KIND_RESOURCE, member.ids[0], resourceKind, null, lazyType, bitmapSpec,
+                    0);
+        case KIND_EXTRA:
+            Class<?> fieldType = field.getType();
+            Object defaultValue = BundleAccessors.parseDefault(fieldType, member.defaultValue, field.getName());
+            return new FieldEntry(accessor, KIND_EXTRA, 0, 0, member.text, null, null,
+                    BundleAccessors.typeOf(fieldType), defaultValue);
+        case KIND_DEPENDENCY:
+            return new FieldEntry(accessor, KIND_DEPENDENCY, 0, 0, null, lazyType, null, 0);
+        case KIND_STATE:
+            int bundleType = BundleAccessors.typeOf(field.getType());
+            if (bundleType == 0) {
+                throw new InjectException("Cannot save state of type " + field.getType() + " (field "
+                        + field.getName() + ")");
+            }
+            String key = member.text.length() > 0 ? member.text : field.getName();
+            return new FieldEntry(accessor, KIND_STATE, 0, 0, key, null, null, bundleType);
+        default:
+            throw new InjectException("Unknown member kind " + member.kind + ": " + field.getName());
+        }
+    }
+
+    private static MethodEntry createMethodEntry(Method method, MemberEntry member,
+            SparseArray<SparseArray<Method>> methodsById) {
+        int event = member.kind - MetadataIndex.METHOD_EVENT_OFFSET;
+        // checkIds reuses the array
+        int[] allIds = member.ids.clone();
+        switch (event) {
+        case EVENT_CLICK:
+            return createOnClickEntry(method, member, allIds, methodsById);
+        case EVENT_LONG_CLICK:
+            return createEventEntry(method, EVENT_LONG_CLICK, View.class, allIds, methodsById);
+        case EVENT_ITEM_CLICK:
+            return createEventEntry(method, EVENT_ITEM_CLICK, int.class, allIds, methodsById);
+        case EVENT_CHECKED_CHANGE:
+            return createEventEntry(method, EVENT_CHECKED_CHANGE, boolean.class, allIds, methodsById);
+        case EVENT_TEXT_CHANGED:
+            return createEventEntry(method, EVENT_TEXT_CHANGED, CharSequence.class, allIds, methodsById);
+        default:
+            throw new InjectException("Unknown member kind " + member.kind + ": " + method.getName());
+        }
+    }
+
+    /**
+     * Looks up the fields and methods of the indexed members (in the same order).
+     * 
+     * @return null if the index is out of date
+     */
+    private static Member[] findIndexedMembers(Class<?> clazz, MemberEntry[] indexedMembers) {
+        Member[] members = new Member[indexedMembers.length];
+        for (int i = 0; i < members.length; i++) {
+            MemberEntry member = indexedMembers[i];
+            if (member.isMethod()) {
+                members[i] = findMethod(clazz, member.name, member.parameterType);
+            } else {
+                members[i] = findField(clazz, member.name);
+            }
+            if (members[i] == null) {
+                MetadataIndex.logOutOfDate(clazz, member.name);
+                return null;
+            }
+        }
+        return members;
+    }
+
+    /** Looks up an indexed field; returns null if there is none (out of date index). */
+    static Field findField(Class<?> clazz, String name) {
+        try {
+            return clazz.getDeclaredField(name);
+        } catch (NoSuchFieldException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Looks up an indexed method by its name and parameter type (annotated methods have no or a single parameter);
+     * returns null if there is none (out of date index).
+     */
+    private static Method findMethod(Class<?> clazz, String name, String parameterType) {
+        try {
+            if (parameterType.length() == 0) {
+                return clazz.getDeclaredMethod(name);
+            }
+            return clazz.getDeclaredMethod(name, loadType(clazz, parameterType));
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /** @return the class for the name returned by Class.getName(), including primitive types */
+    private static Class<?> loadType(Class<?> clazz, String name) throws ClassNotFoundException {
+        for (Class<?> primitiveType : PRIMITIVE_TYPES) {
+            if (primitiveType.getName().equals(name)) {
+                return primitiveType;
+            }
+        }
+        return Class.forName(name, false, clazz.getClassLoader());
+    }
+
+    /** @return the RESOURCE_XXX constant for the given field type, or 0 if the type is not supported */
+    static int resourceKindForType(Class<?> type) {
+        if (type == String.class) {
+            return RESOURCE_STRING;
+        } else if (Drawable.class.isAssignableFrom(type)) {
+            return RESOURCE_DRAWABLE;
+        } else if (Bitmap.class.isAssignableFrom(type)) {
+            return RESOURCE_BITMAP;
+        } else if (type == int.class) {
+            return RESOURCE_INT;
+        } else if (type == boolean.class) {
+            return RESOURCE_BOOLEAN;
+        } else if (type == float.class) {
+            return RESOURCE_DIMENSION;
+        } else if (type == String[].class) {
+            return RESOURCE_STRING_ARRAY;
+        } else if (type == Animation.class) {
+            return RESOURCE_ANIMATION;
+        } else {
+            return 0;
+        }
+    }
+
+    /** @return true if the resource kind is injected into a primitive field */
+    static boolean isPrimitiveResourceKind(int resourceKind) {
+        return resourceKind == RESOURCE_INT || resourceKind == RESOURCE_BOOLEAN || resourceKind == RESOURCE_DIMENSION;
+    }
+
+    private static BitmapSpec createBitmapSpec(Field field, MemberEntry member, int resourceKind) {
+        int maxWidth = member.maxWidth;
+        int maxHeight = member.maxHeight;
+        String configName = member.text;
+        if (resourceKind != RESOURCE_BITMAP) {
+            if (maxWidth != 0 || maxHeight != 0 || configName.length() > 0) {
+                throw new InjectException("Max width/height and config are supported for Bitmaps only: "
+                        + field.getName());
+            }
+            return null;
+        }
+        if (maxWidth < 0 || maxHeight < 0) {
+            throw new InjectException("Max width/height may not be negative: " + field.getName());
+        }
+        Bitmap.Config config = null;
+        if (configName.length() > 0) {
+            try {
+                config = Bitmap.Config.valueOf(configName);
+            } catch (IllegalArgumentException e) {
+                throw new InjectException("Unknown Bitmap config " + configName + ": " + field.getName());
+            }
+        }
+        return new BitmapSpec(member.ids[0], maxWidth, maxHeight, config);
+    }
+
+    /** @return the type argument if the field is a {@link Lazy}, otherwise null */
+    private static Class<?> resolveLazyType(Field field) {
+        if (field.getType() != Lazy.class) {
+            return null;
+        }
+        Type genericType = field.getGenericType();
+        if (genericType instanceof ParameterizedType) {
+            Type typeArgument = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+            if (typeArgument instanceof Class) {
+                return (Class<?>) typeArgument;
+            }
+        }
+        throw new InjectException("Lazy fields must declare a class as type argument: " + field.getName());
+    }
+
+    private static MethodEntry createOnClickEntry(Method method, MemberEntry member, int[] allIds,
+            SparseArray<SparseArray<Method>> methodsById) {
+        boolean invokeWithView = checkParameters(method, View.class);
+        String executorName = member.text;
+        if (executorName.length() > 0 && !member.newThread) {
+            throw new InjectException("Executor may be set only if newThread is true: " + method.getName());
+        }
+        int whileRunning = member.whileRunning;
+        if (whileRunning < OnClick.RUN_CONCURRENT || whileRunning > OnClick.RUN_COALESCE) {
+            throw new InjectException("Illegal whileRunning value " + whileRunning + ": " + method.getName());
+        } else if (whileRunning != OnClick.RUN_CONCURRENT && !member.newThread) {
+            throw new InjectException("whileRunning may be set only if newThread is true: " + method.getName());
+        }
+        int[] ids = checkIds(method, EVENT_CLICK, allIds, methodsById);
+        return new MethodEntry(EVENT_CLICK, Accessors.forMethod(method), ids, invokeWithView, member.newThread,
+                executorName, whileRunning);
+    }
+
+    private static MethodEntry createEventEntry(Method method, int event, Class<?> argType, int[] allIds,
+            SparseArray<SparseArray<Method>> methodsById) {
+        boolean invokeWithArg = checkParameters(method, argType);
+        int[] ids = checkIds(method, event, allIds, methodsById);
+        return new MethodEntry(event, Accessors.forMethod(method), ids, invokeWithArg, false, "",
+                OnClick.RUN_CONCURRENT);
+    }
+
+    /** @return true if the method has a single parameter of the given type, false if it has none */
+    private static boolean checkParameters(Method method, Class<?> argType) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length == 0) {
+            return false;
+        } else if (parameterTypes.length == 1) {
+            if (parameterTypes[0] == argType) {
+                return true;
+            } else {
+                throw new InjectException("Method may have no parameter or a single " + argType.getSimpleName()
+                        + " parameter only: " + method.getName() + ", found paramter type " + parameterTypes[0]);
+            }
+        } else {
+            throw new InjectException("Method may have no parameter or a single " + argType.getSimpleName()
+                    + " parameter only: " + method.getName());
+        }
+    }
+
+    /** @return the non-zero IDs; throws if a view is already bound to another method for the event */
+    private static int[] checkIds(Method method, int event, int[] allIds,
+            SparseArray<SparseArray<Method>> methodsById) {
+        SparseArray<Method> eventMethodsById = methodsById.get(event);
+        if (eventMethodsById == null) {
+            eventMethodsById = new SparseArray<Method>();
+            methodsById.put(event, eventMethodsById);
+        }
+        int count = 0;
+        for (int id : allIds) {
+            if (id != 0) {
+                if (eventMethodsById.get(id) != null) {
+                    throw new InjectException("View can be bound to methods only once per event: " + method.getName());
+                }
+                eventMethodsById.put(id, method);
+                allIds[count++] = id;
+            }
+        }
+        int[] ids = new int[count];
+        System.arraycopy(allIds, 0, ids, 0, count);
+        return ids;
+    }
+
+}
@@ -15,27 +15,35 @@
  */
 package de.greenrobot.inject;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
 import java.lang.reflect.Member;
-import java.lang.reflect.Method;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.View;
-import de.greenrobot.inject.annotation.InjectExtra;
-import de.greenrobot.inject.annotation.InjectResource;
-import de.greenrobot.inject.annotation.InjectView;
-import de.greenrobot.inject.annotation.OnClick;
+import android.view.Window;
+import android.view.animation.Animation;
+import android.view.animation.AnimationUtils;
 
 /**
  * Injects views, resources, extras, etc. into Android activities and arbitrary Java objects.
@@ -43,7 +51,21 @@ import de.greenrobot.inject.annotation.OnClick;
  * @author Markus
  */
 public class Injector {
-    public static boolean LOG_PERFORMANCE;
+    /**
+     * Name of the application meta-data listing classes for {@link #prewarm(Context)}, either by android:resource
+     * referencing a string array or by android:value with class names separated by commas.
+     */
+    public static final String PREWARM_META_DATA = "de.greenrobot.inject.PREWARM";
+
+    private static volatile boolean weakTargetReferenceDefault;
+    private static volatile InjectionMetrics metrics;
+
+    private static final int INT_RESOURCE_INTEGER = 1;
+    private static final int INT_RESOURCE_COLOR = 2;
+    private static final int INT_RESOURCE_DIMENSION = 3;
+    private static final int INT_RESOURCE_UNSUPPORTED = 4;
+    /** INT_RESOURCE_XXX by resource ID; resource types do not depend on the configuration. */
+    private static final SparseIntArray intResourceKinds = new SparseIntArray();
 
     protected final Context context;
     protected final Object target;
@@ -51,9 +73,20 @@ public class Injector {
     protected final Resources resources;
     protected final Class<?> clazz;
     private final Bundle extras;
+    /** Saved instance state to restore @InjectState fields from, or null. */
+    private Bundle savedState;
 
     private ValueBinder valueBinder;
 
+    /** Views resolved in a single pass for the running injection, or null. */
+    private SparseArray<View> resolvedViews;
+
+    /** Resources decoded in parallel for the running injection, or null. */
+    private Decoding decoding;
+
+    private InjectedDispatcher dispatcher;
+    private boolean weakTargetReference = weakTargetReferenceDefault;
+
     public Injector(Context context) {
         this(context, context);
     }
@@ -78,6 +111,7 @@ public class Injector {
             extras = null;
         }
         clazz = target.getClass();
+        MetadataIndex.load(context);
     }
 
     public static Injector injectInto(Context context) {
@@ -90,129 +124,883 @@ public class Injector {
         return injector;
     }
 
+    /** Like {@link #injectInto(Context)}; also restores @InjectState fields if the saved state is not null. */
+    public static Injector injectInto(Context context, Bundle savedInstanceState) {
+        return inject(context, context, savedInstanceState);
+    }
+
+    /** Like {@link #inject(Context, Object)}; also restores @InjectState fields if the saved state is not null. */
+    public static Injector inject(Context context, Object target, Bundle savedInstanceState) {
+        Injector injector = new Injector(context, target);
+        injector.setSavedState(savedInstanceState);
+        injector.injectAll();
+        return injector;
+    }
+
+    /** Sets the saved instance state, from which {@link #injectFields()} restores the @InjectState fields. */
+    public void setSavedState(Bundle savedInstanceState) {
+        savedState = savedInstanceState;
+    }
+
+    /**
+     * Saves the fields annotated with @InjectState into the Bundle; call it from onSaveInstanceState and pass the saved
+     * instance state on injection, e.g. using {@link #injectInto(Context, Bundle)}.
+     */
+    public static void saveState(Object target, Bundle outState) {
+        GeneratedInjector<Object> generatedInjector = GeneratedInjectors.forClass(target.getClass());
+        if (generatedInjector != null) {
+            generatedInjector.saveState(target, outState);
+        } else {
+            for (InjectionPlan.FieldEntry entry : InjectionPlan.forClass(target.getClass()).stateEntries) {
+                BundleAccessors.put(outState, entry.key, entry.bundleType, entry.accessor, target);
+            }
+        }
+    }
+
+    /** Restores the fields annotated with @InjectState from the Bundle; fields missing in the Bundle are unchanged. */
+    public static void restoreState(Object target, Bundle savedState) {
+        GeneratedInjector<Object> generatedInjector = GeneratedInjectors.forClass(target.getClass());
+        if (generatedInjector != null) {
+            generatedInjector.restoreState(target, savedState);
+        } else {
+            InjectionMetrics currentMetrics = metrics;
+            for (InjectionPlan.FieldEntry entry : InjectionPlan.forClass(target.getClass()).stateEntries) {
+                if (savedState.containsKey(entry.key)) {
+                    long start = currentMetrics != null ? System.nanoTime() : 0;
+                    BundleAccessors.get(savedState, entry.key, entry.bundleType, entry.accessor, target);
+                    if (currentMetrics != null) {
+                        long time = System.nanoTime() - start;
+                        currentMetrics.onMember(InjectionMetrics.MEMBER_STATE, target.getClass(), time);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the injection metadata (generated injectors or annotations scanned by reflection) of the given classes on a
+     * background thread, e.g. in Application.onCreate, so the first injection of each class is fast. Dependencies of
+     * the {@link ObjectGraph} are not prepared, because bindings may not be registered yet.
+     * 
+     * @return completes with the number of classes prepared; failures are logged and thrown again on injection
+     */
+    public static Future<Integer> prewarm(Class<?>... classes) {
+        return startPrewarming(new Prewarming(null, classes, 0));
+    }
+
+    /** Like {@link #prewarm(Class...)} for the classes listed by the manifest meta-data {@link #PREWARM_META_DATA}. */
+    public static Future<Integer> prewarm(Context context) {
+        return startPrewarming(new Prewarming(context, null, 0));
+    }
+
+    /** Like {@link #prewarm(Class...)} for the classes listed by name in the given string array resource. */
+    public static Future<Integer> prewarm(Context context, int classNamesResId) {
+        return startPrewarming(new Prewarming(context, null, classNamesResId));
+    }
+
+    private static Future<Integer> startPrewarming(Prewarming prewarming) {
+        FutureTask<Integer> task = new FutureTask<Integer>(prewarming);
+        Thread thread = new Thread(task, "greenInject-prewarm");
+        thread.setDaemon(true);
+        thread.start();
+        return task;
+    }
+
+    /**
+     * Sets how many classes each metadata cache (injection plans, generated injectors, value fields) keeps strongly
+     * referenced; the default is 64. Metadata of classes used less recently may be garbage collected, and is loaded
+     * again when needed.
+     */
+    public static void setMetadataCacheSize(int maxClasses) {
+        InjectionPlan.plans.setMaxSize(maxClasses);
+        GeneratedInjectors.injectors.setMaxSize(maxClasses);
+        ValueBinder.valuesForClass.setMaxSize(maxClasses);
+    }
+
+    /** Sets the default of {@link #setWeakTargetReference(boolean)} for Injectors created afterwards. */
+    public static void setWeakTargetReferenceDefault(boolean weak) {
+        weakTargetReferenceDefault = weak;
+    }
+
+    /**
+     * Installs a listener for injection timings and counts, e.g. {@link AggregatingMetrics}.
+     * 
+     * @param metrics
+     *            the listener, or null to stop taking metrics
+     */
+    public static void setMetrics(InjectionMetrics metrics) {
+        Injector.metrics = metrics;
+    }
+
+    /** @return the listener set by {@link #setMetrics(InjectionMetrics)}, or null */
+    public static InjectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * If enabled, listeners bound to views reference the target only weakly, so a view outliving its activity (e.g. a
+     * view kept by a static field) does not keep the activity. Events arriving after the target was garbage collected
+     * are ignored. The target must be strongly referenced elsewhere, which is the case for activities until they are
+     * destroyed. Must be called before methods are bound.
+     */
+    public void setWeakTargetReference(boolean weak) {
+        if (dispatcher != null) {
+            throw new InjectException("Methods are already bound");
+        }
+        weakTargetReference = weak;
+    }
+
+    public boolean isWeakTargetReference() {
+        return weakTargetReference;
+    }
+
     /** Injects into fields and wires methods. */
     public void injectAll() {
-        injectFields();
-        bindMethods();
+        boolean viewsResolved = resolveViews();
+        try {
+            injectFields();
+            bindMethods();
+        } finally {
+            if (viewsResolved) {
+                resolvedViews = null;
+            }
+        }
+    }
+
+    /**
+     * Like {@link #injectAll()}, but Bitmap and Drawable resources are decoded in parallel by
+     * {@link InjectExecutors#getDecodeExecutor()} while the other fields are injected. Resources no worker picked up
+     * yet are decoded by the calling thread.
+     * 
+     * @param timeoutMillis
+     *            max time to wait for decoding; an InjectException is thrown if it is exceeded
+     */
+    public void injectAllParallel(long timeoutMillis) {
+        Decoding parallelDecoding = new Decoding(SystemClock.uptimeMillis() + timeoutMillis);
+        parallelDecoding.start(null);
+        injectAll(parallelDecoding);
+    }
+
+    /**
+     * Decodes Bitmap and Drawable resources in the background by {@link InjectExecutors#getDecodeExecutor()}. Once
+     * all are decoded, fields are injected and methods are wired on the main thread; the callback is run afterwards.
+     * 
+     * @param callback
+     *            run on the main thread after injection, may be null
+     */
+    public void injectAllAsync(final Runnable callback) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        final Decoding asyncDecoding = new Decoding(Long.MAX_VALUE);
+        asyncDecoding.start(new Runnable() {
+            @Override
+            public void run() {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        injectAll(asyncDecoding);
+                        if (callback != null) {
+                            callback.run();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void injectAll(Decoding newDecoding) {
+        decoding = newDecoding;
+        try {
+            injectAll();
+        } finally {
+            decoding = null;
+        }
     }
 
     /** Injects into fields. */
     public void injectFields() {
-        long start = System.currentTimeMillis();
-        Field[] fields = clazz.getDeclaredFields();
-        for (Field field : fields) {
-            Annotation[] annotations = field.getAnnotations();
-            for (Annotation annotation : annotations) {
-                if (annotation.annotationType() == InjectView.class) {
-                    int id = ((InjectView) annotation).id();
-                    View view = findView(field, id);
-                    injectIntoField(field, view);
-                } else if (annotation.annotationType() == InjectResource.class) {
-                    Object ressource = findResource(field.getType(), field, (InjectResource) annotation);
-                    injectIntoField(field, ressource);
-                } else if (annotation.annotationType() == InjectExtra.class) {
-                    if (extras != null) {
-                        Object value = extras.get(((InjectExtra) annotation).key());
-                        injectIntoField(field, value);
-                    }
+        boolean viewsResolved = resolveViews();
+        try {
+            injectFieldsInternal();
+        } finally {
+            if (viewsResolved) {
+                resolvedViews = null;
+            }
+        }
+    }
+
+    private void injectFieldsInternal() {
+        InjectionMetrics currentMetrics = metrics;
+        long start = currentMetrics != null ? System.nanoTime() : 0;
+        if (savedState != null) {
+            restoreState(target, savedState);
+        }
+        GeneratedInjector<Object> generatedInjector = GeneratedInjectors.forClass(clazz);
+        if (generatedInjector != null) {
+            generatedInjector.injectFields(this, target);
+            if (currentMetrics != null) {
+                currentMetrics.onPhase(InjectionMetrics.PHASE_INJECT_FIELDS, clazz, System.nanoTime() - start);
+            }
+            return;
+        }
+        InjectionPlan plan = InjectionPlan.forClass(clazz);
+        for (InjectionPlan.FieldEntry entry : plan.fieldEntries) {
+            if (entry.kind == InjectionPlan.KIND_STATE) {
+                // Restored (and reported) by restoreState
+                continue;
+            }
+            long memberStart = currentMetrics != null ? System.nanoTime() : 0;
+            FieldAccessor accessor = entry.accessor;
+            switch (entry.kind) {
+            case InjectionPlan.KIND_VIEW:
+                if (entry.lazyType != null) {
+                    Class<? extends View> viewType = entry.lazyType.asSubclass(View.class);
+                    accessor.set(target, lazyView(accessor.getName(), entry.id, viewType));
+                } else {
+                    View view = findView(accessor.getName(), entry.id);
+                    accessor.set(target, view);
+                }
+                break;
+            case InjectionPlan.KIND_RESOURCE:
+                if (entry.bitmapSpec != null) {
+                    Object bitmap = entry.lazyType != null ? lazyBitmap(entry.bitmapSpec)
+                            : getBitmapResource(entry.bitmapSpec);
+                    accessor.set(target, bitmap);
+                } else if (entry.lazyType != null) {
+                    accessor.set(target, newLazyResource(entry.lazyType, entry.resourceKind, entry.id));
+                } else if (entry.resourceKind == InjectionPlan.RESOURCE_INT) {
+                    accessor.setInt(target, getIntResource(entry.id, accessor.getInt(target)));
+                } else if (entry.resourceKind == InjectionPlan.RESOURCE_BOOLEAN) {
+                    accessor.setBoolean(target, getBooleanResource(entry.id));
+                } else if (entry.resourceKind == InjectionPlan.RESOURCE_DIMENSION) {
+                    accessor.setFloat(target, getDimensionResource(entry.id));
+                } else {
+                    Object ressource = getResource(entry.resourceKind, entry.id);
+                    accessor.set(target, ressource);
+                }
+                break;
+            case InjectionPlan.KIND_EXTRA:
+                BundleAccessors.getExtra(extras, entry.key, entry.bundleType, accessor, target, entry.defaultValue);
+                break;
+            case InjectionPlan.KIND_DEPENDENCY:
+                if (entry.lazyType != null) {
+                    accessor.set(target, lazyDependency(entry.lazyType));
+                } else {
+                    accessor.set(target, getDependency(accessor.getType()));
                 }
+                break;
             }
+            if (currentMetrics != null) {
+                currentMetrics.onMember(toMemberKind(entry.kind), clazz, System.nanoTime() - memberStart);
+            }
+        }
+        if (currentMetrics != null) {
+            currentMetrics.onPhase(InjectionMetrics.PHASE_INJECT_FIELDS, clazz, System.nanoTime() - start);
         }
-        if (LOG_PERFORMANCE) {
-            long time = System.currentTimeMillis() - start;
-            Log.d("greenInject", "Injected fields in " + time + "ms (" + fields.length + " fields checked)");
+    }
+
+    /** @return the InjectionMetrics.MEMBER_XXX constant for the InjectionPlan.KIND_XXX constant */
+    private static int toMemberKind(int kind) {
+        switch (kind) {
+        case InjectionPlan.KIND_VIEW:
+            return InjectionMetrics.MEMBER_VIEW;
+        case InjectionPlan.KIND_RESOURCE:
+            return InjectionMetrics.MEMBER_RESOURCE;
+        case InjectionPlan.KIND_EXTRA:
+            return InjectionMetrics.MEMBER_EXTRA;
+        case InjectionPlan.KIND_DEPENDENCY:
+            return InjectionMetrics.MEMBER_DEPENDENCY;
+        default:
+            throw new InjectException("Unknown kind: " + kind);
         }
     }
 
-    /** Wires OnClickListeners to methods. */
+    /** Wires listeners to methods annotated with OnClick, OnLongClick, OnItemClick, OnCheckedChange, OnTextChanged. */
     public void bindMethods() {
-        long start = System.currentTimeMillis();
-        Method[] methods = clazz.getDeclaredMethods();
-        Set<View> modifiedViews = new HashSet<View>();
-        for (final Method method : methods) {
-            Annotation[] annotations = method.getAnnotations();
-            for (Annotation annotation : annotations) {
-                if (annotation.annotationType() == OnClick.class) {
-                    bindOnClickListener(method, (OnClick) annotation, modifiedViews);
-                }
+        boolean viewsResolved = resolveViews();
+        try {
+            bindMethodsInternal();
+        } finally {
+            if (viewsResolved) {
+                resolvedViews = null;
             }
         }
-        if (LOG_PERFORMANCE) {
-            long time = System.currentTimeMillis() - start;
-            Log.d("greenInject", "Bound methods in " + time + "ms (" + methods.length + " methods checked)");
-        }
     }
 
-    protected boolean bindOnClickListener(final Method method, OnClick onClick, Set<View> modifiedViews) {
-        Class<?>[] parameterTypes = method.getParameterTypes();
-        boolean invokeWithView;
-        if (parameterTypes.length == 0) {
-            invokeWithView = false;
-        } else if (parameterTypes.length == 1) {
-            if (parameterTypes[0] == View.class) {
-                invokeWithView = true;
+    private void bindMethodsInternal() {
+        InjectionMetrics currentMetrics = metrics;
+        long start = currentMetrics != null ? System.nanoTime() : 0;
+        GeneratedInjector<Object> generatedInjector = GeneratedInjectors.forClass(clazz);
+        if (generatedInjector != null) {
+            generatedInjector.bindMethods(this, target);
+            if (currentMetrics != null) {
+                currentMetrics.onPhase(InjectionMetrics.PHASE_BIND_METHODS, clazz, System.nanoTime() - start);
+            }
+            return;
+        }
+        InjectionPlan plan = InjectionPlan.forClass(clazz);
+        for (InjectionPlan.MethodEntry entry : plan.methodEntries) {
+            long memberStart = currentMetrics != null ? System.nanoTime() : 0;
+            if (entry.event == InjectionPlan.EVENT_CLICK) {
+                bindOnClickListener(entry.invoker, entry.invokeWithArg, entry.invokeInNewThread, entry.executorName,
+                        entry.whileRunning, entry.ids);
             } else {
-                throw new InjectException("Method may have no parameter or a single View parameter only: "
-                        + method.getName() + ", found paramter type " + parameterTypes[0]);
+                bindEvent(entry.event, entry.invoker, entry.invokeWithArg, entry.ids);
+            }
+            if (currentMetrics != null) {
+                currentMetrics.onMember(InjectionMetrics.MEMBER_METHOD, clazz, System.nanoTime() - memberStart);
             }
-        } else {
-            throw new InjectException("Method may have no parameter or a single View parameter only: "
-                    + method.getName());
         }
-        method.setAccessible(true);
-        InjectedOnClickListener listener = new InjectedOnClickListener(target, method, invokeWithView,
-                onClick.newThread());
+        if (currentMetrics != null) {
+            currentMetrics.onPhase(InjectionMetrics.PHASE_BIND_METHODS, clazz, System.nanoTime() - start);
+        }
+    }
 
-        int[] ids = { onClick.id(), onClick.id2(), onClick.id3(), onClick.id4(), onClick.id5(), onClick.id6(),
-                onClick.id7(), onClick.id8(), onClick.id9(), onClick.id10() };
+    /**
+     * Binds the given invoker to the views; used by generated injectors.
+     * 
+     * @param invokeWithView
+     *            if the clicked view is passed to the method
+     * @param executorName
+     *            see {@link InjectExecutors#get(String)}; only used if newThread is true
+     * @param whileRunning
+     *            one of the OnClick.RUN_XXX constants
+     */
+    public void bindOnClickListener(MethodInvoker invoker, boolean invokeWithView, boolean newThread,
+            String executorName, int whileRunning, int... ids) {
+        Executor executor = newThread ? InjectExecutors.get(executorName) : null;
+        InjectedDispatcher currentDispatcher = getDispatcher();
+        InjectedOnClickListener handler = new InjectedOnClickListener(currentDispatcher.getTargetReference(), invoker,
+                invokeWithView, executor, whileRunning);
         for (int id : ids) {
-            if (id != 0) {
-                View view = findView(method, id);
-                boolean modified = modifiedViews.add(view);
-                if (!modified) {
-                    throw new InjectException("View can be bound to methods only once using OnClick: "
-                            + method.getName());
+            View view = findView(invoker.getName(), id);
+            currentDispatcher.bindClick(id, view, handler);
+        }
+    }
+
+    /** Binds the invoker to long clicks of the views; used by generated injectors. */
+    public void bindOnLongClick(MethodInvoker invoker, boolean invokeWithView, int... ids) {
+        bindEvent(InjectionPlan.EVENT_LONG_CLICK, invoker, invokeWithView, ids);
+    }
+
+    /** Binds the invoker to item clicks of the AdapterViews; used by generated injectors. */
+    public void bindOnItemClick(MethodInvoker invoker, boolean invokeWithPosition, int... ids) {
+        bindEvent(InjectionPlan.EVENT_ITEM_CLICK, invoker, invokeWithPosition, ids);
+    }
+
+    /** Binds the invoker to checked state changes of the CompoundButtons; used by generated injectors. */
+    public void bindOnCheckedChange(MethodInvoker invoker, boolean invokeWithChecked, int... ids) {
+        bindEvent(InjectionPlan.EVENT_CHECKED_CHANGE, invoker, invokeWithChecked, ids);
+    }
+
+    /** Binds the invoker to text changes of the TextViews; used by generated injectors. */
+    public void bindOnTextChanged(MethodInvoker invoker, boolean invokeWithText, int... ids) {
+        bindEvent(InjectionPlan.EVENT_TEXT_CHANGED, invoker, invokeWithText, ids);
+    }
+
+    private void bindEvent(int event, MethodInvoker invoker, boolean invokeWithArg, int[] ids) {
+        InjectedDispatcher.EventHandler handler = new InjectedDispatcher.EventHandler(invoker, invokeWithArg);
+        InjectedDispatcher currentDispatcher = getDispatcher();
+        for (int id : ids) {
+            View view = findView(invoker.getName(), id);
+            currentDispatcher.bind(event, id, view, handler);
+        }
+    }
+
+    /** The single listener for all views bound to the target's methods. */
+    private InjectedDispatcher getDispatcher() {
+        if (dispatcher == null) {
+            dispatcher = new InjectedDispatcher(target, weakTargetReference);
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Undoes the injection, e.g. in onDestroy of screens recreated often: detaches the listeners bound by
+     * {@link #bindMethods()}, releases the {@link ValueBinder}'s views, and sets fields injected with views and
+     * resources to null. Injected Bitmaps are released by {@link #releaseBitmap(Bitmap)}, so they must not be used
+     * anymore. If the target is the activity, its activity scoped objects are released from the default
+     * {@link ObjectGraph}. The target may be injected again afterwards.
+     */
+    public void release() {
+        if (dispatcher != null) {
+            dispatcher.unbind();
+            dispatcher = null;
+        }
+        if (valueBinder != null) {
+            valueBinder.release();
+        }
+        releaseFields(target);
+        if (target == activity) {
+            ObjectGraph.getDefault().releaseScope(activity);
+        }
+    }
+
+    /**
+     * Like {@link #release()} for the target injected by any Injector, except that the ValueBinder is not released
+     * (call {@link ValueBinder#release()} for it if used).
+     */
+    public static void release(Object target) {
+        InjectedDispatcher targetDispatcher = InjectedDispatcher.forTarget(target);
+        if (targetDispatcher != null) {
+            targetDispatcher.unbind();
+        }
+        releaseFields(target);
+        if (target instanceof Activity) {
+            ObjectGraph.getDefault().releaseScope((Activity) target);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void releaseFields(Object target) {
+        InjectionMetrics currentMetrics = metrics;
+        long start = currentMetrics != null ? System.nanoTime() : 0;
+        Class<?> targetClass = target.getClass();
+        GeneratedInjector<Object> generatedInjector = GeneratedInjectors.forClass(targetClass);
+        if (generatedInjector != null) {
+            generatedInjector.releaseFields(target);
+        } else {
+            for (InjectionPlan.FieldEntry entry : InjectionPlan.forClass(targetClass).fieldEntries) {
+                if (entry.kind != InjectionPlan.KIND_VIEW && entry.kind != InjectionPlan.KIND_RESOURCE
+                        || InjectionPlan.isPrimitiveResourceKind(entry.resourceKind)) {
+                    continue;
                 }
-                view.setOnClickListener(listener);
+                FieldAccessor accessor = entry.accessor;
+                if (entry.bitmapSpec != null || entry.resourceKind == InjectionPlan.RESOURCE_BITMAP) {
+                    Object value = accessor.get(target);
+                    if (entry.lazyType != null) {
+                        releaseLazyBitmap((Lazy<Bitmap>) value);
+                    } else {
+                        releaseBitmap((Bitmap) value);
+                    }
+                }
+                accessor.set(target, null);
             }
         }
-        return invokeWithView;
+        if (currentMetrics != null) {
+            currentMetrics.onPhase(InjectionMetrics.PHASE_RELEASE, targetClass, System.nanoTime() - start);
+        }
     }
 
-    protected Object findResource(Class<?> type, Member field, InjectResource annotation) {
-        int id = annotation.id();
-        if (type == String.class) {
-            return context.getString(id);
-        } else if (Drawable.class.isAssignableFrom(type)) {
-            return resources.getDrawable(id);
-        } else if (Bitmap.class.isAssignableFrom(type)) {
-            return BitmapFactory.decodeResource(resources, id);
+    /**
+     * Gives up an injected Bitmap: a Bitmap shared by the {@link ResourceCache} is left to the cache; otherwise, it is
+     * put into the default {@link BitmapPool} if pooling is active, or recycled. Public for generated injectors.
+     */
+    public static void releaseBitmap(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || ResourceCache.getDefault().isShared(bitmap)) {
+            return;
+        }
+        BitmapPool pool = BitmapPool.getDefault();
+        if (pool != null && bitmap.isMutable()) {
+            pool.put(bitmap);
         } else {
-            throw new InjectException("Cannot inject for type " + type + " (field " + field.getName() + ")");
+            bitmap.recycle();
         }
     }
 
-    protected void injectIntoField(Field field, Object value) {
-        try {
-            field.setAccessible(true);
-            field.set(target, value);
-        } catch (Exception e) {
-            throw new InjectException("Could not inject into field " + field.getName(), e);
+    /** Like {@link #releaseBitmap(Bitmap)} if the Bitmap was created; public for generated injectors. */
+    public static void releaseLazyBitmap(Lazy<Bitmap> lazyBitmap) {
+        if (lazyBitmap != null && lazyBitmap.isCreated()) {
+            releaseBitmap(lazyBitmap.get());
         }
     }
 
+    /**
+     * Gets the resource from the {@link ResourceCache}, loading it if necessary.
+     * 
+     * @param resourceKind
+     *            one of the InjectionPlan.RESOURCE_XXX constants, resolved from the field type
+     */
+    protected Object findResource(int resourceKind, int id) {
+        ResourceCache cache = ResourceCache.getDefault();
+        cache.registerCallbacks(context);
+        switch (resourceKind) {
+        case InjectionPlan.RESOURCE_STRING:
+            return cache.getString(resources, id);
+        case InjectionPlan.RESOURCE_DRAWABLE:
+            return cache.getDrawable(resources, id);
+        case InjectionPlan.RESOURCE_BITMAP:
+            return findBitmap(new BitmapSpec(id));
+        case InjectionPlan.RESOURCE_INT:
+            return getIntResource(id, 0);
+        case InjectionPlan.RESOURCE_BOOLEAN:
+            return resources.getBoolean(id);
+        case InjectionPlan.RESOURCE_DIMENSION:
+            return resources.getDimension(id);
+        case InjectionPlan.RESOURCE_STRING_ARRAY:
+            // Not cached, arrays are mutable
+            return resources.getStringArray(id);
+        case InjectionPlan.RESOURCE_ANIMATION:
+            // Animations have state, so each injection gets a new one
+            return AnimationUtils.loadAnimation(context, id);
+        default:
+            throw new InjectException("Unknown resource kind: " + resourceKind);
+        }
+    }
+
+    /** Gets the Bitmap from the {@link ResourceCache}, decoding it with the spec's options if necessary. */
+    protected Bitmap findBitmap(BitmapSpec spec) {
+        ResourceCache cache = ResourceCache.getDefault();
+        cache.registerCallbacks(context);
+        return cache.getBitmap(resources, spec);
+    }
+
+    /** Gets the resource decoded in parallel for the running injection, or finds it. */
+    private Object getResource(int resourceKind, int id) {
+        if (resourceKind == InjectionPlan.RESOURCE_BITMAP) {
+            return getBitmapResource(new BitmapSpec(id));
+        }
+        Decoding currentDecoding = decoding;
+        FutureTask<Object> task = currentDecoding != null ? currentDecoding.takeDrawable(id) : null;
+        return task != null ? currentDecoding.await(task) : findResource(resourceKind, id);
+    }
+
+    /** Gets a String resource; used by generated injectors. */
+    public String getStringResource(int id) {
+        return (String) getResource(InjectionPlan.RESOURCE_STRING, id);
+    }
+
+    /** Gets a Drawable resource; used by generated injectors. */
+    public Drawable getDrawableResource(int id) {
+        return (Drawable) getResource(InjectionPlan.RESOURCE_DRAWABLE, id);
+    }
+
+    /** Gets a Bitmap resource; used by generated injectors. */
+    public Bitmap getBitmapResource(int id) {
+        return getBitmapResource(new BitmapSpec(id));
+    }
+
+    /** Gets a Bitmap resource decoded with the spec's options; used by generated injectors. */
+    public Bitmap getBitmapResource(BitmapSpec spec) {
+        Decoding currentDecoding = decoding;
+        FutureTask<Object> task = currentDecoding != null ? currentDecoding.bitmapTasks.get(spec) : null;
+        return task != null ? (Bitmap) currentDecoding.await(task) : findBitmap(spec);
+    }
+
+    /**
+     * Gets an integer, color, or dimension (in pixels, see Resources.getDimensionPixelSize) resource depending on the
+     * resource type of the ID, which is looked up once per ID; public for generated injectors.
+     * 
+     * @return the resource, or the fallback (e.g. the field's current value) if the resource type is none of those
+     */
+    public int getIntResource(int id, int fallback) {
+        int intKind;
+        synchronized (intResourceKinds) {
+            intKind = intResourceKinds.get(id);
+        }
+        if (intKind == 0) {
+            String typeName = resources.getResourceTypeName(id);
+            if ("integer".equals(typeName)) {
+                intKind = INT_RESOURCE_INTEGER;
+            } else if ("color".equals(typeName)) {
+                intKind = INT_RESOURCE_COLOR;
+            } else if ("dimen".equals(typeName)) {
+                intKind = INT_RESOURCE_DIMENSION;
+            } else {
+                intKind = INT_RESOURCE_UNSUPPORTED;
+            }
+            synchronized (intResourceKinds) {
+                intResourceKinds.put(id, intKind);
+            }
+        }
+        switch (intKind) {
+        case INT_RESOURCE_COLOR:
+            return resources.getColor(id);
+        case INT_RESOURCE_DIMENSION:
+            return resources.getDimensionPixelSize(id);
+        case INT_RESOURCE_UNSUPPORTED:
+            Log.w("greenInject", "Ignoring resource " + resources.getResourceName(id)
+                    + ", only integer, color and dimension resources can be injected into int fields");
+            return fallback;
+        default:
+            return resources.getInteger(id);
+        }
+    }
+
+    /** Gets a boolean resource; used by generated injectors. */
+    public boolean getBooleanResource(int id) {
+        return resources.getBoolean(id);
+    }
+
+    /** Gets a dimension resource (not rounded to pixels); used by generated injectors. */
+    public float getDimensionResource(int id) {
+        return resources.getDimension(id);
+    }
+
+    /** Gets a string array resource; used by generated injectors. */
+    public String[] getStringArrayResource(int id) {
+        return (String[]) findResource(InjectionPlan.RESOURCE_STRING_ARRAY, id);
+    }
+
+    /** Loads a new Animation; used by generated injectors. */
+    public Animation getAnimationResource(int id) {
+        return (Animation) findResource(InjectionPlan.RESOURCE_ANIMATION, id);
+    }
+
+    /** Creates a Lazy decoding the Bitmap on first use; public for generated injectors. */
+    public Lazy<Bitmap> lazyBitmap(final BitmapSpec spec) {
+        return new Lazy<Bitmap>() {
+            @Override
+            protected Bitmap create() {
+                return findBitmap(spec);
+            }
+        };
+    }
+
+    /** Creates a Lazy finding the view on first use; public for generated injectors. */
+    public <T extends View> Lazy<T> lazyView(final String memberName, final int viewId, final Class<T> type) {
+        if (activity == null) {
+            throw new InjectException("Views can be injected only in activities (member " + memberName + " in "
+                    + context.getClass());
+        }
+        return new Lazy<T>() {
+            @Override
+            protected T create() {
+                View view = findView(memberName, viewId);
+                if (!type.isInstance(view)) {
+                    throw new InjectException("View for member " + memberName + " is a " + view.getClass().getName()
+                            + ", expected " + type.getName());
+                }
+                return type.cast(view);
+            }
+        };
+    }
+
+    /**
+     * Creates a Lazy loading the resource on first use; public for generated injectors.
+     * 
+     * @param type
+     *            String, a Drawable, or Bitmap
+     */
+    public <T> Lazy<T> lazyResource(Class<T> type, int id) {
+        int resourceKind = InjectionPlan.resourceKindForType(type);
+        if (resourceKind == 0) {
+            throw new InjectException("Cannot inject for type " + type);
+        }
+        return newLazyResource(type, resourceKind, id);
+    }
+
+    private <T> Lazy<T> newLazyResource(final Class<T> type, final int resourceKind, final int id) {
+        return new Lazy<T>() {
+            @Override
+            protected T create() {
+                return type.cast(findResource(resourceKind, id));
+            }
+        };
+    }
+
+    /**
+     * Gets the object of the given type from the default {@link ObjectGraph}; activity scoped objects are scoped to
+     * this injector's activity. Public for generated injectors.
+     */
+    public <T> T getDependency(Class<T> type) {
+        InstanceCache.getDefault().registerCallbacks(context);
+        return ObjectGraph.getDefault().get(activity, type);
+    }
+
+    /** Like {@link #getDependency(Class)}, but the object is created on first use. */
+    public <T> Lazy<T> lazyDependency(Class<T> type) {
+        InstanceCache.getDefault().registerCallbacks(context);
+        return ObjectGraph.getDefault().getLazy(activity, type);
+    }
+
+    /**
+     * Gets the int extra, or the fallback if it is missing or not an int; used by generated injectors, which pass the
+     * default value or the current field value as fallback.
+     */
+    public int getIntExtra(String key, int fallback) {
+        return extras != null ? extras.getInt(key, fallback) : fallback;
+    }
+
+    /** Like {@link #getIntExtra(String, int)} for long extras. */
+    public long getLongExtra(String key, long fallback) {
+        return extras != null ? extras.getLong(key, fallback) : fallback;
+    }
+
+    /** Like {@link #getIntExtra(String, int)} for boolean extras. */
+    public boolean getBooleanExtra(String key, boolean fallback) {
+        return extras != null ? extras.getBoolean(key, fallback) : fallback;
+    }
+
+    /** Like {@link #getIntExtra(String, int)} for float extras. */
+    public float getFloatExtra(String key, float fallback) {
+        return extras != null ? extras.getFloat(key, fallback) : fallback;
+    }
+
+    /** Like {@link #getIntExtra(String, int)} for double extras. */
+    public double getDoubleExtra(String key, double fallback) {
+        return extras != null ? extras.getDouble(key, fallback) : fallback;
+    }
+
+    /**
+     * Gets the extra if it is an instance of the given type, otherwise the fallback (extras of other types are logged);
+     * used by generated injectors.
+     */
+    public <T> T getExtra(String key, Class<T> type, T fallback) {
+        Object value = extras != null ? extras.get(key) : null;
+        if (value == null) {
+            return fallback;
+        } else if (!type.isInstance(value)) {
+            Log.w("greenInject", "Ignoring extra " + key + " of " + value.getClass() + ", expected " + type);
+            return fallback;
+        }
+        return type.cast(value);
+    }
+
+    /** The extras of the activity's Intent, or null if there are none. */
+    public Bundle getExtras() {
+        return extras;
+    }
+
     protected View findView(Member field, int viewId) {
+        return findView(field.getName(), viewId);
+    }
+
+    /** Finds the view with the given ID or throws; public for generated injectors. */
+    public View findView(String memberName, int viewId) {
         if (activity == null) {
-            throw new InjectException("Views can be injected only in activities (member " + field.getName() + " in "
+            throw new InjectException("Views can be injected only in activities (member " + memberName + " in "
                     + context.getClass());
         }
-        View view = activity.findViewById(viewId);
+        View view = resolvedViews != null ? resolvedViews.get(viewId) : null;
         if (view == null) {
-            throw new InjectException("View not found for member " + field.getName());
+            view = activity.findViewById(viewId);
+            if (view == null) {
+                throw new InjectException("View not found for member " + memberName);
+            }
+            InjectionMetrics currentMetrics = metrics;
+            if (currentMetrics != null) {
+                currentMetrics.onViewsResolved(clazz, 1);
+            }
         }
         return view;
     }
 
+    /**
+     * Resolves all views needed by the target in a single pass over the view hierarchy, unless already done.
+     * 
+     * @return true if views were resolved by this call; the caller must reset them when done
+     */
+    private boolean resolveViews() {
+        if (resolvedViews != null || activity == null) {
+            return false;
+        }
+        GeneratedInjector<Object> generatedInjector = GeneratedInjectors.forClass(clazz);
+        int[] viewIds = generatedInjector != null ? generatedInjector.getViewIds()
+                : InjectionPlan.forClass(clazz).viewIds;
+        Window window = activity.getWindow();
+        View root = window != null ? window.peekDecorView() : null;
+        if (viewIds.length < 2 || root == null) {
+            // A single findViewById is just as fast
+            return false;
+        }
+        resolvedViews = ViewResolver.resolve(root, viewIds);
+        InjectionMetrics currentMetrics = metrics;
+        if (currentMetrics != null) {
+            currentMetrics.onViewsResolved(clazz, resolvedViews.size());
+        }
+        return true;
+    }
+
+    /** Decode tasks for the Bitmap and Drawable resources of the target. */
+    private final class Decoding {
+        private final Map<BitmapSpec, FutureTask<Object>> bitmapTasks = new HashMap<BitmapSpec, FutureTask<Object>>();
+        private final SparseArray<FutureTask<Object>> drawableTasks = new SparseArray<FutureTask<Object>>();
+        /** Uptime millis. */
+        private final long deadline;
+        private final AtomicInteger remaining = new AtomicInteger();
+        private Runnable onDone;
+
+        Decoding(long deadline) {
+            this.deadline = deadline;
+        }
+
+        /** @param onDone run by the thread completing the last task, may be null */
+        void start(Runnable onDone) {
+            this.onDone = onDone;
+            GeneratedInjector<Object> generatedInjector = GeneratedInjectors.forClass(clazz);
+            BitmapSpec[] bitmapSpecs;
+            int[] drawableIds;
+            if (generatedInjector != null) {
+                bitmapSpecs = generatedInjector.getBitmapSpecs();
+                drawableIds = generatedInjector.getDrawableResourceIds();
+            } else {
+                InjectionPlan plan = InjectionPlan.forClass(clazz);
+                bitmapSpecs = plan.bitmapSpecs;
+                drawableIds = plan.drawableResourceIds;
+            }
+            for (final BitmapSpec spec : bitmapSpecs) {
+                bitmapTasks.put(spec, newTask(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        return findBitmap(spec);
+                    }
+                }));
+            }
+            for (final int id : drawableIds) {
+                drawableTasks.put(id, newTask(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        return findResource(InjectionPlan.RESOURCE_DRAWABLE, id);
+                    }
+                }));
+            }
+            // Specs may be equal
+            int count = bitmapTasks.size() + drawableTasks.size();
+            if (count == 0) {
+                if (onDone != null) {
+                    onDone.run();
+                }
+                return;
+            }
+            remaining.set(count);
+            Executor executor = InjectExecutors.getDecodeExecutor();
+            for (FutureTask<Object> task : bitmapTasks.values()) {
+                executor.execute(task);
+            }
+            for (int i = 0; i < drawableTasks.size(); i++) {
+                executor.execute(drawableTasks.valueAt(i));
+            }
+        }
+
+        private FutureTask<Object> newTask(Callable<Object> callable) {
+            return new FutureTask<Object>(callable) {
+                @Override
+                protected void done() {
+                    if (remaining.decrementAndGet() == 0 && onDone != null) {
+                        onDone.run();
+                    }
+                }
+            };
+        }
+
+        /** @return the task for the Drawable, or null; Drawables are taken once, so each field gets its own */
+        FutureTask<Object> takeDrawable(int id) {
+            FutureTask<Object> task = drawableTasks.get(id);
+            drawableTasks.remove(id);
+            return task;
+        }
+
+        Object await(FutureTask<Object> task) {
+            // Decodes on the calling thread if no worker started yet; does nothing otherwise
+            task.run();
+            try {
+                long timeout = Math.max(deadline - SystemClock.uptimeMillis(), 0);
+                return task.get(timeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new InjectException("Timed out decoding resources", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new InjectException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InjectException(e);
+            }
+        }
+    }
+
     private void checkValueBinder() {
         if (valueBinder == null) {
             if (activity == null) {
@@ -222,13 +1010,25 @@ public class Injector {
         }
     }
 
+    /** @return the ValueBinder used for the target, e.g. to enable {@link ValueBinder#setTwoWay(boolean)} */
+    public ValueBinder getValueBinder() {
+        checkValueBinder();
+        return valueBinder;
+    }
+
     /** Convenience for {@link ValueBinder#valuesToUi()}. */
     public void valuesToUi() {
         checkValueBinder();
         valueBinder.valuesToUi();
     }
 
-    /** Convenience for {@link ValueBinder#valuesToUi()}. */
+    /** Convenience for {@link ValueBinder#valuesToUi(String...)}. */
+    public void valuesToUi(String... fieldNames) {
+        checkValueBinder();
+        valueBinder.valuesToUi(fieldNames);
+    }
+
+    /** Convenience for {@link ValueBinder#uiToValues()}. */
     public void uiToValues() {
         checkValueBinder();
         valueBinder.uiToValues();
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+
+/**
+ * Process wide cache for objects of classes annotated with {@link de.greenrobot.inject.annotation.Cached}, keyed by
+ * scope and class. A bounded number of recently used objects is kept strongly referenced, so they stay warm, e.g. when
+ * a screen is entered again. Objects evicted, trimmed or released with their scope are only weakly referenced: they
+ * are still shared while in use, but may be garbage collected afterwards.
+ * <p>
+ * Scopes are {@link #APPLICATION_SCOPE}, activity classes (released by
+ * {@link ObjectGraph#releaseScope(android.app.Activity)}), or any custom object released by
+ * {@link #releaseScope(Object)}. The cache releases all objects on low memory. On Android 4.0 and later, it registers
+ * itself for memory trim callbacks; on earlier versions, call {@link #onLowMemory()} from your Application.
+ * 
+ * @author Markus
+ */
+public final class InstanceCache implements ComponentCallbacks, MemoryCallbacks.Trimmable {
+    /** Scope for objects shared application wide. */
+    public static final Object APPLICATION_SCOPE = "application";
+
+    private static volatile InstanceCache defaultCache;
+
+    static final class Key {
+        final Object scope;
+        final Class<?> type;
+
+        Key(Object scope, Class<?> type) {
+            this.scope = scope;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return type == other.type && scope.equals(other.scope);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * scope.hashCode() + type.hashCode();
+        }
+    }
+
+    static final class WeakEntry extends WeakReference<Object> {
+        final Key key;
+
+        WeakEntry(Key key, Object value, ReferenceQueue<Object> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+    /** Strongly referenced objects in access order, least recently used first. */
+    private final LinkedHashMap<Key, Object> entries = new LinkedHashMap<Key, Object>(16, 0.75f, true);
+    /** Objects released by the cache, still shared while referenced elsewhere. */
+    private final Map<Key, WeakEntry> weakEntries = new HashMap<Key, WeakEntry>();
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    private final int maxSize;
+    private int hitCount;
+    private int missCount;
+
+    private volatile boolean callbacksRegistered;
+
+    /**
+     * @param maxSize
+     *            number of objects kept strongly referenced; 0 keeps objects only while referenced elsewhere
+     */
+    public InstanceCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Max size may not be negative");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /** The cache used by {@link ObjectGraph}; created on first use keeping up to 32 objects strongly referenced. */
+    public static InstanceCache getDefault() {
+        InstanceCache cache = defaultCache;
+        if (cache == null) {
+            synchronized (InstanceCache.class) {
+                cache = defaultCache;
+                if (cache == null) {
+                    cache = new InstanceCache(32);
+                    defaultCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /** Replaces the default cache. */
+    public static void setDefault(InstanceCache cache) {
+        if (cache == null) {
+            throw new IllegalArgumentException("Cache may not be null");
+        }
+        defaultCache = cache;
+    }
+
+    /** @return the object cached for the scope and class, or null */
+    public synchronized Object get(Object scope, Class<?> type) {
+        Key key = new Key(scope, type);
+        Object value = entries.get(key);
+        if (value == null) {
+            pollQueue();
+            WeakEntry weakEntry = weakEntries.get(key);
+            value = weakEntry != null ? weakEntry.get() : null;
+            if (value != null) {
+                // Used again, so keep it warm
+                weakEntries.remove(key);
+                putStrong(key, value);
+            }
+        }
+        if (value != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return value;
+    }
+
+    /**
+     * Caches the object unless another thread cached an object for the scope and class meanwhile.
+     * 
+     * @return the cached object
+     */
+    public synchronized Object putIfAbsent(Object scope, Class<?> type, Object value) {
+        Key key = new Key(scope, type);
+        Object existing = entries.get(key);
+        if (existing == null) {
+            WeakEntry weakEntry = weakEntries.remove(key);
+            existing = weakEntry != null ? weakEntry.get() : null;
+        }
+        if (existing != null) {
+            value = existing;
+        }
+        putStrong(key, value);
+        return value;
+    }
+
+    private void putStrong(Key key, Object value) {
+        entries.put(key, value);
+        trimToSize(maxSize);
+    }
+
+    /** Keeps the given number of most recently used objects strongly referenced, releases the others. */
+    public synchronized void trimToSize(int size) {
+        Iterator<Map.Entry<Key, Object>> iterator = entries.entrySet().iterator();
+        int toRelease = entries.size() - size;
+        while (toRelease > 0 && iterator.hasNext()) {
+            Map.Entry<Key, Object> entry = iterator.next();
+            iterator.remove();
+            release(entry.getKey(), entry.getValue());
+            toRelease--;
+        }
+    }
+
+    /** Releases the objects of the given scope; they are still shared while referenced elsewhere. */
+    public synchronized void releaseScope(Object scope) {
+        Iterator<Map.Entry<Key, Object>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Object> entry = iterator.next();
+            if (entry.getKey().scope.equals(scope)) {
+                iterator.remove();
+                release(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /** Releases all objects; they are still shared while referenced elsewhere. */
+    public synchronized void releaseAll() {
+        trimToSize(0);
+    }
+
+    private void release(Key key, Object value) {
+        pollQueue();
+        weakEntries.put(key, new WeakEntry(key, value, queue));
+    }
+
+    /** Removes weak entries whose objects were garbage collected. */
+    private void pollQueue() {
+        WeakEntry cleared;
+        while ((cleared = (WeakEntry) queue.poll()) != null) {
+            if (weakEntries.get(cleared.key) == cleared) {
+                weakEntries.remove(cleared.key);
+            }
+        }
+    }
+
+    /**
+     * Releases objects on memory pressure: all objects from ComponentCallbacks2.TRIM_MEMORY_MODERATE, half of the max
+     * size from ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL on.
+     */
+    @Override
+    public void trimMemory(int level) {
+        if (level >= ResourceCache.TRIM_MEMORY_MODERATE) {
+            releaseAll();
+        } else if (level >= ResourceCache.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(maxSize / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        releaseAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // Objects do not depend on the configuration
+    }
+
+    /** Registers for memory callbacks of the application (Android 4.0 and later), unless already done. */
+    public void registerCallbacks(Context context) {
+        if (callbacksRegistered || Build.VERSION.SDK_INT < 14) {
+            return;
+        }
+        synchronized (this) {
+            if (callbacksRegistered) {
+                return;
+            }
+            callbacksRegistered = true;
+        }
+        MemoryCallbacks.register(context, this);
+    }
+
+    /** Number of strongly referenced objects. */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public synchronized int hitCount() {
+        return hitCount;
+    }
+
+    public synchronized int missCount() {
+        return missCount;
+    }
+
+}
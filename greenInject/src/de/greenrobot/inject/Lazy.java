@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+/**
+ * Holder for an injected view or resource that is looked up on the first call to {@link #get()}. Declare fields
+ * annotated with @InjectView or @InjectResource as Lazy&lt;T&gt; (e.g. Lazy&lt;Bitmap&gt;) to defer expensive lookups
+ * and decoding until the value is actually used.
+ * 
+ * @author Markus
+ */
+public abstract class Lazy<T> {
+    private volatile T value;
+
+    /** Gets the value, creating it on the first call. */
+    public final T get() {
+        T result = value;
+        if (result == null) {
+            synchronized (this) {
+                result = value;
+                if (result == null) {
+                    result = create();
+                    value = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** @return true if the value was already created by {@link #get()} */
+    public final boolean isCreated() {
+        return value != null;
+    }
+
+    /** Creates the value; called once unless it returns null. */
+    protected abstract T create();
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Forwards the callbacks of ComponentCallbacks2 (Android 4.0 and later) to caches. ComponentCallbacks2 is not
+ * available at API level 4, so it is implemented using a proxy.
+ * 
+ * @author Markus
+ */
+final class MemoryCallbacks implements InvocationHandler {
+    /** Implemented by caches releasing memory. */
+    interface Trimmable extends ComponentCallbacks {
+        void trimMemory(int level);
+    }
+
+    private final Trimmable trimmable;
+
+    private MemoryCallbacks(Trimmable trimmable) {
+        this.trimmable = trimmable;
+    }
+
+    /** Registers for the callbacks of the application on Android 4.0 and later; does nothing before. */
+    static void register(Context context, Trimmable trimmable) {
+        if (Build.VERSION.SDK_INT < 14) {
+            return;
+        }
+        Context applicationContext = context.getApplicationContext();
+        if (applicationContext == null) {
+            return;
+        }
+        try {
+            Class<?> callbacks2Class = Class.forName("android.content.ComponentCallbacks2");
+            Object callbacks = Proxy.newProxyInstance(callbacks2Class.getClassLoader(), new Class<?>[] {
+                    callbacks2Class }, new MemoryCallbacks(trimmable));
+            Method register = Context.class.getMethod("registerComponentCallbacks", ComponentCallbacks.class);
+            register.invoke(applicationContext, callbacks);
+        } catch (Exception e) {
+            Log.w("greenInject", "Could not register for memory callbacks", e);
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.equals("onTrimMemory")) {
+            trimmable.trimMemory((Integer) args[0]);
+        } else if (name.equals("onLowMemory")) {
+            trimmable.onLowMemory();
+        } else if (name.equals("onConfigurationChanged")) {
+            trimmable.onConfigurationChanged((Configuration) args[0]);
+        } else if (name.equals("equals")) {
+            return proxy == args[0];
+        } else if (name.equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        } else if (name.equals("toString")) {
+            return "Memory callbacks for " + trimmable.getClass().getSimpleName();
+        }
+        return null;
+    }
+
+}
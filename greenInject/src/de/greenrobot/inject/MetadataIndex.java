@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.util.Log;
+import de.greenrobot.inject.annotation.Inject;
+import de.greenrobot.inject.annotation.InjectExtra;
+import de.greenrobot.inject.annotation.InjectResource;
+import de.greenrobot.inject.annotation.InjectState;
+import de.greenrobot.inject.annotation.InjectView;
+import de.greenrobot.inject.annotation.OnCheckedChange;
+import de.greenrobot.inject.annotation.OnClick;
+import de.greenrobot.inject.annotation.OnItemClick;
+import de.greenrobot.inject.annotation.OnLongClick;
+import de.greenrobot.inject.annotation.OnTextChanged;
+import de.greenrobot.inject.annotation.Value;
+
+/**
+ * Annotation metadata of all annotated classes, written at build time by the annotation processor into the asset
+ * {@link #ASSET_NAME} (processor option greenInject.index=path/to/assets/greenInject.index). Reading annotations by
+ * reflection is slow on older Dalvik VMs; {@link InjectionPlan} and {@link ValueBinder} use the indexed members of a
+ * class instead and only look up fields by name and methods by name and parameter type. Classes missing in the index
+ * are scanned as usual, and so are classes with indexed members that no longer exist (out of date index).
+ * <p>
+ * Format (DataOutputStream): int MAGIC, byte VERSION, int class count; per class: UTF binary class name, short member
+ * count; per member: byte kind (MEMBER_XXX), UTF name, byte ID count, int IDs, UTF text (extra or state key, Bitmap
+ * config or executor name), UTF default value (extras), int max width, int max height, boolean newThread, byte
+ * whileRunning, UTF parameter type (binary class name or primitive type name of a method's single parameter, empty
+ * if there is none; methods may be overloaded).
+ * 
+ * @author Markus
+ */
+final class MetadataIndex {
+    static final String ASSET_NAME = "greenInject.index";
+    static final int MAGIC = 0x67494458;
+    static final int VERSION = 3;
+
+    /** Field kinds have the values of InjectionPlan.KIND_XXX. */
+    static final int MEMBER_VIEW = InjectionPlan.KIND_VIEW;
+    static final int MEMBER_RESOURCE = InjectionPlan.KIND_RESOURCE;
+    static final int MEMBER_EXTRA = InjectionPlan.KIND_EXTRA;
+    static final int MEMBER_INJECT = InjectionPlan.KIND_DEPENDENCY;
+    static final int MEMBER_VALUE = 5;
+    static final int MEMBER_STATE = InjectionPlan.KIND_STATE;
+    /** Method kinds are METHOD_EVENT_OFFSET + InjectionPlan.EVENT_XXX. */
+    static final int METHOD_EVENT_OFFSET = 10;
+
+    private static final MemberEntry[] NONE = new MemberEntry[0];
+    private static final int[] NO_IDS = new int[0];
+
+    /** Null until loaded. */
+    private static volatile Map<String, MemberEntry[]> membersByClass;
+
+    /** An annotated field or method, read from the index or from its annotation. */
+    static final class MemberEntry {
+        final int kind;
+        final String name;
+        /** View or resource ID (first element) for fields, all IDs for methods. */
+        final int[] ids;
+        /** Extra or state key, Bitmap config or executor name; empty if not set. */
+        final String text;
+        /** Default value of an extra; empty if not set. */
+        final String defaultValue;
+        final int maxWidth;
+        final int maxHeight;
+        final boolean newThread;
+        final int whileRunning;
+        /** Name of the method parameter type as returned by Class.getName(); empty for fields and methods without. */
+        final String parameterType;
+
+        MemberEntry(int kind, String name, int[] ids, String text, int maxWidth, int maxHeight, boolean newThread,
+                int whileRunning, String parameterType) {
+            this(kind, name, ids, text, "", maxWidth, maxHeight, newThread, whileRunning, parameterType);
+        }
+
+        MemberEntry(int kind, String name, int[] ids, String text, String defaultValue, int maxWidth, int maxHeight,
+                boolean newThread, int whileRunning, String parameterType) {
+            this.kind = kind;
+            this.name = name;
+            this.ids = ids;
+            this.text = text;
+            this.defaultValue = defaultValue;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            this.newThread = newThread;
+            this.whileRunning = whileRunning;
+            this.parameterType = parameterType;
+        }
+
+        boolean isMethod() {
+            return kind > METHOD_EVENT_OFFSET;
+        }
+
+        /** @return the entry for a supported annotation, or null */
+        static MemberEntry fromAnnotation(String name, String parameterType, Annotation annotation) {
+            Class<? extends Annotation> type = annotation.annotationType();
+            if (type == InjectView.class) {
+                int[] ids = { ((InjectView) annotation).id() };
+                return new MemberEntry(MEMBER_VIEW, name, ids, "", 0, 0, false, 0, "");
+            } else if (type == InjectResource.class) {
+                InjectResource a = (InjectResource) annotation;
+                int[] ids = { a.id() };
+                return new MemberEntry(MEMBER_RESOURCE, name, ids, a.config(), a.maxWidth(), a.maxHeight(), false, 0,
+                        "");
+            } else if (type == InjectExtra.class) {
+                InjectExtra a = (InjectExtra) annotation;
+                return new MemberEntry(MEMBER_EXTRA, name, NO_IDS, a.key(), a.defaultValue(), 0, 0, false, 0, "");
+            } else if (type == Inject.class) {
+                return new MemberEntry(MEMBER_INJECT, name, NO_IDS, "", 0, 0, false, 0, "");
+            } else if (type == InjectState.class) {
+                String key = ((InjectState) annotation).key();
+                return new MemberEntry(MEMBER_STATE, name, NO_IDS, key, 0, 0, false, 0, "");
+            } else if (type == Value.class) {
+                int[] ids = { ((Value) annotation).bindTo() };
+                return new MemberEntry(MEMBER_VALUE, name, ids, "", 0, 0, false, 0, "");
+            } else if (type == OnClick.class) {
+                OnClick a = (OnClick) annotation;
+                int[] ids = { a.id(), a.id2(), a.id3(), a.id4(), a.id5(), a.id6(), a.id7(), a.id8(), a.id9(),
+                        a.id10() };
+                return new MemberEntry(METHOD_EVENT_OFFSET + InjectionPlan.EVENT_CLICK, name, ids, a.executor(), 0, 0,
+                        a.newThread(), a.whileRunning(), parameterType);
+            } else if (type == OnLongClick.class) {
+                OnLongClick a = (OnLongClick) annotation;
+                int[] ids = { a.id(), a.id2(), a.id3(), a.id4(), a.id5(), a.id6(), a.id7(), a.id8(), a.id9(),
+                        a.id10() };
+                return newEventEntry(InjectionPlan.EVENT_LONG_CLICK, name, parameterType, ids);
+            } else if (type == OnItemClick.class) {
+                OnItemClick a = (OnItemClick) annotation;
+                int[] ids = { a.id(), a.id2(), a.id3(), a.id4(), a.id5(), a.id6(), a.id7(), a.id8(), a.id9(),
+                        a.id10() };
+                return newEventEntry(InjectionPlan.EVENT_ITEM_CLICK, name, parameterType, ids);
+            } else if (type == OnCheckedChange.class) {
+                OnCheckedChange a = (OnCheckedChange) annotation;
+                int[] ids = { a.id(), a.id2(), a.id3(), a.id4(), a.id5(), a.id6(), a.id7(), a.id8(), a.id9(),
+                        a.id10() };
+                return newEventEntry(InjectionPlan.EVENT_CHECKED_CHANGE, name, parameterType, ids);
+            } else if (type == OnTextChanged.class) {
+                OnTextChanged a = (OnTextChanged) annotation;
+                int[] ids = { a.id(), a.id2(), a.id3(), a.id4(), a.id5(), a.id6(), a.id7(), a.id8(), a.id9(),
+                        a.id10() };
+                return newEventEntry(InjectionPlan.EVENT_TEXT_CHANGED, name, parameterType, ids);
+            }
+            return null;
+        }
+
+        private static MemberEntry newEventEntry(int event, String name, String parameterType, int[] ids) {
+            return new MemberEntry(METHOD_EVENT_OFFSET + event, name, ids, "", 0, 0, false, OnClick.RUN_CONCURRENT,
+                    parameterType);
+        }
+    }
+
+    private MetadataIndex() {
+    }
+
+    /** Reads the index from the assets unless already done; a missing index is remembered as empty. */
+    static void load(Context context) {
+        if (membersByClass != null) {
+            return;
+        }
+        synchronized (MetadataIndex.class) {
+            if (membersByClass != null) {
+                return;
+            }
+            InjectionMetrics metrics = Injector.getMetrics();
+            long start = metrics != null ? System.nanoTime() : 0;
+            Map<String, MemberEntry[]> members;
+            InputStream in = null;
+            try {
+                AssetManager assets = context.getAssets();
+                if (assets == null) {
+                    throw new FileNotFoundException(ASSET_NAME);
+                }
+                in = assets.open(ASSET_NAME);
+                members = read(in);
+            } catch (FileNotFoundException e) {
+                members = new HashMap<String, MemberEntry[]>();
+            } catch (IOException e) {
+                Log.w("greenInject", "Could not read metadata index, scanning annotations instead", e);
+                members = new HashMap<String, MemberEntry[]>();
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        // Ignore
+                    }
+                }
+            }
+            membersByClass = members;
+            if (metrics != null) {
+                metrics.onPhase(InjectionMetrics.PHASE_LOAD_INDEX, null, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /** Uses the given index instead of the asset, or forgets it if null (the asset is read again on the next load). */
+    static void set(Map<String, MemberEntry[]> index) {
+        membersByClass = index;
+    }
+
+    /** @return the indexed members of the class, or null if the class is not indexed or the index was not loaded */
+    static MemberEntry[] forClass(Class<?> clazz) {
+        Map<String, MemberEntry[]> members = membersByClass;
+        return members != null ? members.get(clazz.getName()) : null;
+    }
+
+    /** Logs that the index does not match the class, which is scanned instead (e.g. after an incremental build). */
+    static void logOutOfDate(Class<?> clazz, String memberName) {
+        Log.w("greenInject", "Metadata index is out of date (" + memberName + " not found in " + clazz
+                + "), scanning annotations instead");
+    }
+
+    static Map<String, MemberEntry[]> read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 4096));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a metadata index");
+        }
+        int version = data.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported metadata index version " + version);
+        }
+        int classCount = data.readInt();
+        Map<String, MemberEntry[]> membersByClass = new HashMap<String, MemberEntry[]>(classCount * 2);
+        for (int i = 0; i < classCount; i++) {
+            String className = data.readUTF();
+            MemberEntry[] members = new MemberEntry[data.readShort()];
+            for (int j = 0; j < members.length; j++) {
+                int kind = data.readByte();
+                String name = data.readUTF();
+                int[] ids = new int[data.readByte()];
+                for (int k = 0; k < ids.length; k++) {
+                    ids[k] = data.readInt();
+                }
+                String text = data.readUTF();
+                String defaultValue = data.readUTF();
+                int maxWidth = data.readInt();
+                int maxHeight = data.readInt();
+                boolean newThread = data.readBoolean();
+                int whileRunning = data.readByte();
+                String parameterType = data.readUTF();
+                members[j] = new MemberEntry(kind, name, ids, text, defaultValue, maxWidth, maxHeight, newThread,
+                        whileRunning, parameterType);
+            }
+            membersByClass.put(className, members.length > 0 ? members : NONE);
+        }
+        return membersByClass;
+    }
+
+}
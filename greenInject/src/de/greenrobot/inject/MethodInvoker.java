@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+/**
+ * Invokes a method of target objects. Invokers are resolved once per method (see {@link AccessorFactory}). Methods
+ * have no parameter or a single parameter. Exceptions thrown by the method are passed on unchecked.
+ * 
+ * @author Markus
+ */
+public abstract class MethodInvoker {
+    /** Method name, used for error messages. */
+    public abstract String getName();
+
+    /**
+     * Invokes the method.
+     * 
+     * @param arg
+     *            the method's parameter; ignored (and usually null) for methods without parameters
+     */
+    public abstract Object invoke(Object target, Object arg);
+
+    /** Invokes a method with an int parameter, e.g. an item position; override to avoid boxing. */
+    public Object invoke(Object target, int arg) {
+        return invoke(target, Integer.valueOf(arg));
+    }
+
+    /** Invokes a method with a boolean parameter, e.g. a checked state; override to avoid boxing. */
+    public Object invoke(Object target, boolean arg) {
+        return invoke(target, Boolean.valueOf(arg));
+    }
+
+}
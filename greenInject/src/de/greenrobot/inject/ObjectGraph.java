@@ -0,0 +1,622 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.app.Activity;
+import android.content.Context;
+import de.greenrobot.inject.annotation.ActivityScoped;
+import de.greenrobot.inject.annotation.Cached;
+import de.greenrobot.inject.annotation.Inject;
+import de.greenrobot.inject.annotation.Singleton;
+
+/**
+ * Creates and shares the application objects injected into fields annotated with {@link Inject}. Objects are created
+ * by the constructor annotated with @Inject (or the no-arg constructor); its parameters and the object's @Inject fields
+ * are resolved by the graph as well. Parameters and fields may be declared as Lazy&lt;T&gt; to defer creating
+ * expensive objects. Classes annotated with {@link Singleton} are created once, classes annotated with
+ * {@link ActivityScoped} once per activity; classes annotated with {@link Cached} are kept in the
+ * {@link InstanceCache}. Other classes are created for every injection. Context and Activity resolve to the activity
+ * injected for.
+ * <p>
+ * How a type is provided is computed once: its constructor, field accessors and the bindings of all its dependencies
+ * are linked into a binding, so creating objects does not walk the graph again. Interfaces and objects not created by
+ * constructors are bound using {@link #bindType(Class, Class)}, {@link #bindInstance(Class, Object)} and
+ * {@link #bindProvider(Class, Provider)} before the type is used.
+ * 
+ * @author Markus
+ */
+public final class ObjectGraph {
+    static final int SCOPE_NONE = 0;
+    static final int SCOPE_SINGLETON = 1;
+    static final int SCOPE_ACTIVITY = 2;
+    static final int SCOPE_CACHED = 3;
+
+    private static volatile ObjectGraph defaultGraph;
+
+    private final Map<Class<?>, Binding> bindings = new ConcurrentHashMap<Class<?>, Binding>();
+    /** Bindings created by the running link pass, published once all are linked; guarded by this. */
+    private Map<Class<?>, Binding> linkingBindings;
+    /** Bindings currently linking their dependencies, outermost first; guarded by this. */
+    private final List<ConstructorBinding> linkStack = new ArrayList<ConstructorBinding>();
+    /**
+     * Index into linkStack of the first binding reached without a lazy dependency in between; a dependency on a binding
+     * at or above this index is a cycle of eager dependencies. Guarded by this.
+     */
+    private int eagerChainStart;
+    /** Number of activity scoped bindings, each having an index into the activity's instance array. */
+    private int activityScopedCount;
+    /**
+     * Instances of activity scoped bindings by activity; guarded by itself. Instances injected with the Context keep
+     * their activity reachable, so entries must be removed by {@link #releaseScope(Activity)}.
+     */
+    private final Map<Activity, Object[]> activityInstances = new WeakHashMap<Activity, Object[]>();
+
+    public ObjectGraph() {
+        Binding contextBinding = new ContextBinding();
+        bindings.put(Context.class, contextBinding);
+        bindings.put(Activity.class, contextBinding);
+    }
+
+    /** @return the graph used by {@link Injector} */
+    public static ObjectGraph getDefault() {
+        ObjectGraph graph = defaultGraph;
+        if (graph == null) {
+            synchronized (ObjectGraph.class) {
+                graph = defaultGraph;
+                if (graph == null) {
+                    graph = new ObjectGraph();
+                    defaultGraph = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    /** Sets the graph used by {@link Injector}, e.g. one with bindings for tests. */
+    public static void setDefault(ObjectGraph graph) {
+        if (graph == null) {
+            throw new IllegalArgumentException("Graph may not be null");
+        }
+        defaultGraph = graph;
+    }
+
+    /** Binds the given type to an implementation class, which is resolved like any other class. */
+    public <T> void bindType(Class<T> type, Class<? extends T> implementation) {
+        if (implementation == type) {
+            throw new IllegalArgumentException("Type may not be bound to itself: " + type);
+        }
+        putBinding(type, new TypeBinding(this, type, implementation));
+    }
+
+    /** Binds the given type to an existing object, which is used as a singleton. */
+    public <T> void bindInstance(Class<T> type, T instance) {
+        if (instance == null) {
+            throw new IllegalArgumentException("Instance may not be null");
+        }
+        putBinding(type, new InstanceBinding(type, instance));
+    }
+
+    /** Binds the given type to a provider, which is called for every injection of the type. */
+    public <T> void bindProvider(Class<T> type, Provider<? extends T> provider) {
+        if (provider == null) {
+            throw new IllegalArgumentException("Provider may not be null");
+        }
+        putBinding(type, new ProviderBinding(type, provider));
+    }
+
+    private synchronized void putBinding(Class<?> type, Binding binding) {
+        if (bindings.containsKey(type)) {
+            throw new InjectException("Type is already bound or was already used: " + type);
+        }
+        bindings.put(type, binding);
+    }
+
+    /** @return an object of the given type; the type may not depend on the activity or Context */
+    public <T> T get(Class<T> type) {
+        return get(null, type);
+    }
+
+    /**
+     * @param activity
+     *            scope for activity scoped objects and the Context; may be null if the type does not depend on those
+     * @return an object of the given type
+     */
+    public <T> T get(Activity activity, Class<T> type) {
+        return type.cast(getBinding(type).get(activity));
+    }
+
+    /** @return a Lazy creating the object of the given type (see {@link #get(Activity, Class)}) on first use */
+    public <T> Lazy<T> getLazy(Activity activity, Class<T> type) {
+        return new LazyObject<T>(getBinding(type), activity);
+    }
+
+    /**
+     * Forgets the activity scoped objects of the given activity and releases the objects cached for its class (see
+     * {@link Cached#ACTIVITY}); call it when the activity is destroyed. {@link Injector#release()} calls it for the
+     * default graph if the activity itself was injected.
+     */
+    public void releaseScope(Activity activity) {
+        synchronized (activityInstances) {
+            activityInstances.remove(activity);
+        }
+        InstanceCache.getDefault().releaseScope(activity.getClass());
+    }
+
+    /** @return the binding for the type, creating and linking it (and its dependencies) on first use */
+    Binding getBinding(Class<?> type) {
+        Binding binding = bindings.get(type);
+        if (binding != null) {
+            return binding;
+        }
+        synchronized (this) {
+            binding = bindings.get(type);
+            if (binding != null) {
+                return binding;
+            }
+            boolean linkPassStarted = linkingBindings == null;
+            if (linkPassStarted) {
+                linkingBindings = new HashMap<Class<?>, Binding>();
+            } else {
+                binding = linkingBindings.get(type);
+                if (binding != null) {
+                    // Still linking, e.g. because of a lazy cycle
+                    return binding;
+                }
+            }
+            try {
+                ConstructorBinding constructorBinding = createConstructorBinding(type);
+                linkingBindings.put(type, constructorBinding);
+                constructorBinding.link(this);
+                if (linkPassStarted) {
+                    resolveNeedsActivity(linkingBindings.values());
+                    bindings.putAll(linkingBindings);
+                }
+                return constructorBinding;
+            } finally {
+                if (linkPassStarted) {
+                    linkingBindings = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Propagates needsActivity through the bindings linked by a pass and checks their scopes. Done after linking,
+     * because bindings in a (lazy) cycle are linked before all of their dependencies are.
+     */
+    private static void resolveNeedsActivity(Collection<Binding> linkedBindings) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Binding binding : linkedBindings) {
+                if (!binding.needsActivity && ((ConstructorBinding) binding).dependenciesNeedActivity()) {
+                    binding.needsActivity = true;
+                    changed = true;
+                }
+            }
+        }
+        for (Binding binding : linkedBindings) {
+            ((ConstructorBinding) binding).checkScope();
+        }
+    }
+
+    /** Must be called holding this. */
+    private ConstructorBinding createConstructorBinding(Class<?> type) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers()) || type.isPrimitive() || type.isArray()) {
+            throw new InjectException("No binding for " + type + ", use bindType/bindInstance/bindProvider");
+        }
+        Constructor<?> constructor = null;
+        for (Constructor<?> candidate : type.getDeclaredConstructors()) {
+            if (candidate.isAnnotationPresent(Inject.class)) {
+                if (constructor != null) {
+                    throw new InjectException("Only one constructor may be annotated with @Inject: " + type);
+                }
+                constructor = candidate;
+            }
+        }
+        if (constructor == null) {
+            try {
+                constructor = type.getDeclaredConstructor();
+            } catch (NoSuchMethodException e) {
+                throw new InjectException("No constructor annotated with @Inject or no-arg constructor: " + type);
+            }
+        }
+        constructor.setAccessible(true);
+
+        int scope = SCOPE_NONE;
+        int scopeIndex = -1;
+        String cacheScope = null;
+        if (type.isAnnotationPresent(Singleton.class)) {
+            scope = SCOPE_SINGLETON;
+        }
+        if (type.isAnnotationPresent(ActivityScoped.class)) {
+            if (scope != SCOPE_NONE) {
+                throw new InjectException("Class may have only one scope annotation: " + type);
+            }
+            scope = SCOPE_ACTIVITY;
+            scopeIndex = activityScopedCount++;
+        }
+        Cached cached = type.getAnnotation(Cached.class);
+        if (cached != null) {
+            if (scope != SCOPE_NONE) {
+                throw new InjectException("Class may have only one scope annotation: " + type);
+            }
+            scope = SCOPE_CACHED;
+            cacheScope = cached.scope();
+        }
+        return new ConstructorBinding(this, type, constructor, scope, scopeIndex, cacheScope);
+    }
+
+    /** @return the dependency on the given type, which may be Lazy&lt;T&gt; */
+    Dependency createDependency(Type genericType, Class<?> rawType, String name) {
+        if (rawType == Lazy.class) {
+            Class<?> lazyType = null;
+            if (genericType instanceof ParameterizedType) {
+                Type typeArgument = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+                if (typeArgument instanceof Class) {
+                    lazyType = (Class<?>) typeArgument;
+                }
+            }
+            if (lazyType == null) {
+                throw new InjectException("Lazy dependencies must declare a class as type argument: " + name);
+            }
+            // Bindings linked from here on are reached lazily from the ones linking now
+            int outerEagerChainStart = eagerChainStart;
+            eagerChainStart = linkStack.size();
+            try {
+                return new Dependency(getTargetBinding(lazyType), true);
+            } finally {
+                eagerChainStart = outerEagerChainStart;
+            }
+        }
+        Binding binding = getTargetBinding(rawType);
+        int linkIndex = linkStack.indexOf(binding);
+        if (linkIndex != -1 && linkIndex >= eagerChainStart) {
+            throw new InjectException("Dependency cycle at " + name + " (" + rawType
+                    + "), declare one dependency as Lazy");
+        }
+        return new Dependency(binding, false);
+    }
+
+    /** @return the binding for the type, or its implementation's binding if bound by type */
+    private Binding getTargetBinding(Class<?> type) {
+        Binding binding = getBinding(type);
+        if (binding instanceof TypeBinding) {
+            binding = ((TypeBinding) binding).getTarget();
+        }
+        return binding;
+    }
+
+    Object getActivityScoped(ConstructorBinding binding, Activity activity) {
+        if (activity == null) {
+            throw new InjectException("Activity scoped type requires an activity: " + binding.type);
+        }
+        synchronized (activityInstances) {
+            Object instance = getInstances(activity, binding.scopeIndex)[binding.scopeIndex];
+            if (instance == null) {
+                instance = binding.create(activity);
+                // Creating dependencies may have replaced the array
+                getInstances(activity, binding.scopeIndex)[binding.scopeIndex] = instance;
+            }
+            return instance;
+        }
+    }
+
+    /** Must be called holding activityInstances. */
+    private Object[] getInstances(Activity activity, int index) {
+        Object[] instances = activityInstances.get(activity);
+        if (instances == null || instances.length <= index) {
+            Object[] newInstances = new Object[Math.max(index + 1, activityScopedCount)];
+            if (instances != null) {
+                System.arraycopy(instances, 0, newInstances, 0, instances.length);
+            }
+            instances = newInstances;
+            activityInstances.put(activity, instances);
+        }
+        return instances;
+    }
+
+    /** Provides objects of a type. */
+    static abstract class Binding {
+        final Class<?> type;
+        /** If objects can only be provided for an activity (activity scoped, Context, or depending on those). */
+        boolean needsActivity;
+
+        Binding(Class<?> type) {
+            this.type = type;
+        }
+
+        abstract Object get(Activity activity);
+    }
+
+    static final class Dependency {
+        final Binding binding;
+        final boolean lazy;
+
+        Dependency(Binding binding, boolean lazy) {
+            this.binding = binding;
+            this.lazy = lazy;
+        }
+
+        Object resolve(Activity activity) {
+            return lazy ? new LazyObject<Object>(binding, activity) : binding.get(activity);
+        }
+    }
+
+    static final class LazyObject<T> extends Lazy<T> {
+        private final Binding binding;
+        private final Activity activity;
+
+        LazyObject(Binding binding, Activity activity) {
+            this.binding = binding;
+            this.activity = activity;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected T create() {
+            return (T) binding.get(activity);
+        }
+    }
+
+    /** Creates objects by a constructor and injects their fields; dependencies are linked once. */
+    static final class ConstructorBinding extends Binding {
+        private final ObjectGraph graph;
+        private final Constructor<?> constructor;
+        final int scope;
+        /** Index into the activity's instances for SCOPE_ACTIVITY. */
+        final int scopeIndex;
+        /** Scope name of {@link Cached} for SCOPE_CACHED. */
+        private final String cacheScope;
+
+        private Dependency[] parameters;
+        private FieldAccessor[] fields;
+        private Dependency[] fieldDependencies;
+
+        private volatile Object singleton;
+
+        ConstructorBinding(ObjectGraph graph, Class<?> type, Constructor<?> constructor, int scope, int scopeIndex,
+                String cacheScope) {
+            super(type);
+            this.graph = graph;
+            this.constructor = constructor;
+            this.scope = scope;
+            this.scopeIndex = scopeIndex;
+            this.cacheScope = cacheScope;
+            // Only the cache key depends on the activity for Cached.ACTIVITY
+            needsActivity = scope == SCOPE_ACTIVITY || Cached.ACTIVITY.equals(cacheScope);
+        }
+
+        /** Resolves the bindings of all dependencies; must be called holding the graph. */
+        void link(ObjectGraph graph) {
+            graph.linkStack.add(this);
+            try {
+                Class<?>[] parameterTypes = constructor.getParameterTypes();
+                Type[] genericTypes = constructor.getGenericParameterTypes();
+                parameters = new Dependency[parameterTypes.length];
+                for (int i = 0; i < parameterTypes.length; i++) {
+                    // Generic types may lack synthetic parameters of inner class constructors
+                    Type genericType = genericTypes.length == parameterTypes.length ? genericTypes[i]
+                            : parameterTypes[i];
+                    parameters[i] = graph.createDependency(genericType, parameterTypes[i], type.getName()
+                            + " constructor parameter " + (i + 1));
+                }
+
+                List<FieldAccessor> fieldList = new ArrayList<FieldAccessor>();
+                List<Dependency> fieldDependencyList = new ArrayList<Dependency>();
+                for (Class<?> clazz = type; clazz != Object.class; clazz = clazz.getSuperclass()) {
+                    for (Field field : clazz.getDeclaredFields()) {
+                        if (field.isAnnotationPresent(Inject.class)) {
+                            fieldDependencyList.add(graph.createDependency(field.getGenericType(), field.getType(),
+                                    field.getName()));
+                            fieldList.add(Accessors.forField(field));
+                        }
+                    }
+                }
+                fields = fieldList.toArray(new FieldAccessor[fieldList.size()]);
+                fieldDependencies = fieldDependencyList.toArray(new Dependency[fieldDependencyList.size()]);
+            } finally {
+                graph.linkStack.remove(graph.linkStack.size() - 1);
+            }
+        }
+
+        boolean dependenciesNeedActivity() {
+            for (Dependency dependency : parameters) {
+                if (dependency.binding.needsActivity) {
+                    return true;
+                }
+            }
+            for (Dependency dependency : fieldDependencies) {
+                if (dependency.binding.needsActivity) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Must be called once needsActivity of all dependencies is final. */
+        void checkScope() {
+            if (scope == SCOPE_SINGLETON && dependenciesNeedActivity()) {
+                throw new InjectException("Singleton may not depend on activity scoped objects or Context: " + type);
+            }
+            if (scope == SCOPE_CACHED && dependenciesNeedActivity()) {
+                throw new InjectException("Cached class may not depend on activity scoped objects or Context: "
+                        + type);
+            }
+        }
+
+        @Override
+        Object get(Activity activity) {
+            switch (scope) {
+            case SCOPE_SINGLETON:
+                Object instance = singleton;
+                if (instance == null) {
+                    synchronized (this) {
+                        instance = singleton;
+                        if (instance == null) {
+                            instance = create(null);
+                            singleton = instance;
+                        }
+                    }
+                }
+                return instance;
+            case SCOPE_ACTIVITY:
+                return graph.getActivityScoped(this, activity);
+            case SCOPE_CACHED:
+                return getCached(activity);
+            default:
+                return create(activity);
+            }
+        }
+
+        private Object getCached(Activity activity) {
+            Object scopeKey;
+            if (cacheScope.equals(Cached.APPLICATION)) {
+                scopeKey = InstanceCache.APPLICATION_SCOPE;
+            } else if (cacheScope.equals(Cached.ACTIVITY)) {
+                if (activity == null) {
+                    throw new InjectException("Cached type with activity scope requires an activity: " + type);
+                }
+                scopeKey = activity.getClass();
+            } else {
+                scopeKey = cacheScope;
+            }
+            InstanceCache cache = InstanceCache.getDefault();
+            Object instance = cache.get(scopeKey, type);
+            if (instance == null) {
+                // Created outside of the cache lock; a concurrently created instance wins
+                instance = cache.putIfAbsent(scopeKey, type, create(null));
+            }
+            return instance;
+        }
+
+        Object create(Activity activity) {
+            Object[] args = new Object[parameters.length];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = parameters[i].resolve(activity);
+            }
+            Object instance;
+            try {
+                instance = constructor.newInstance(args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new InjectException("Could not create " + type, cause);
+            } catch (Exception e) {
+                throw new InjectException("Could not create " + type, e);
+            }
+            for (int i = 0; i < fields.length; i++) {
+                fields[i].set(instance, fieldDependencies[i].resolve(activity));
+            }
+            return instance;
+        }
+    }
+
+    /** Context and Activity resolve to the activity injected for. */
+    static final class ContextBinding extends Binding {
+        ContextBinding() {
+            super(Context.class);
+            needsActivity = true;
+        }
+
+        @Override
+        Object get(Activity activity) {
+            if (activity == null) {
+                throw new InjectException("Context requires an activity");
+            }
+            return activity;
+        }
+    }
+
+    /** Delegates to the binding of the implementation; dependencies are linked to that binding directly. */
+    static final class TypeBinding extends Binding {
+        private final ObjectGraph graph;
+        private final Class<?> implementation;
+        private volatile Binding target;
+
+        TypeBinding(ObjectGraph graph, Class<?> type, Class<?> implementation) {
+            super(type);
+            this.graph = graph;
+            this.implementation = implementation;
+        }
+
+        /** Resolved on first use, because the implementation may be bound after this binding. */
+        Binding getTarget() {
+            Binding binding = target;
+            if (binding == null) {
+                binding = graph.getBinding(implementation);
+                if (binding instanceof TypeBinding) {
+                    binding = ((TypeBinding) binding).getTarget();
+                }
+                if (graph.bindings.get(binding.type) == binding) {
+                    // Not cached while the link pass is running, which may still fail
+                    target = binding;
+                }
+            }
+            return binding;
+        }
+
+        @Override
+        Object get(Activity activity) {
+            return getTarget().get(activity);
+        }
+    }
+
+    static final class InstanceBinding extends Binding {
+        private final Object instance;
+
+        InstanceBinding(Class<?> type, Object instance) {
+            super(type);
+            this.instance = instance;
+        }
+
+        @Override
+        Object get(Activity activity) {
+            return instance;
+        }
+    }
+
+    static final class ProviderBinding extends Binding {
+        private final Provider<?> provider;
+
+        ProviderBinding(Class<?> type, Provider<?> provider) {
+            super(type);
+            this.provider = provider;
+        }
+
+        @Override
+        Object get(Activity activity) {
+            return provider.get();
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Base class for models whose @Value fields are applied to the UI automatically. Call {@link #notifyChanged(String)}
+ * after a field changed, from any thread. ValueBinders in auto update mode (see
+ * {@link ValueBinder#setAutoUpdate(boolean)}) collect the changes and apply them on the UI thread at most once per
+ * display frame.
+ * 
+ * @author Markus
+ */
+public abstract class ObservableModel {
+    private final CopyOnWriteArrayList<ValueBinder> binders = new CopyOnWriteArrayList<ValueBinder>();
+
+    /** Notifies the observing ValueBinders that the given field (annotated with @Value) changed. */
+    protected void notifyChanged(String fieldName) {
+        for (ValueBinder binder : binders) {
+            binder.notifyChanged(fieldName);
+        }
+    }
+
+    /** Notifies the observing ValueBinders that any field may have changed. */
+    protected void notifyAllChanged() {
+        for (ValueBinder binder : binders) {
+            binder.notifyAllChanged();
+        }
+    }
+
+    void addBinder(ValueBinder binder) {
+        binders.addIfAbsent(binder);
+    }
+
+    void removeBinder(ValueBinder binder) {
+        binders.remove(binder);
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.util.Log;
+
+/**
+ * Loads the injection metadata of classes in the background (see {@link Injector#prewarm(Class...)}), so the first
+ * injection of a class does not need to load the generated injector or scan annotations by reflection.
+ * 
+ * @author Markus
+ */
+final class Prewarming implements Callable<Integer> {
+    private final Context context;
+    private final Class<?>[] classes;
+    private final int classNamesResId;
+
+    /**
+     * @param context
+     *            used to read class names if classes is null
+     * @param classNamesResId
+     *            string array of class names, or 0 to read the class names from the manifest
+     */
+    Prewarming(Context context, Class<?>[] classes, int classNamesResId) {
+        // Do not keep an activity while prewarming
+        Context applicationContext = context != null ? context.getApplicationContext() : null;
+        this.context = applicationContext != null ? applicationContext : context;
+        this.classes = classes;
+        this.classNamesResId = classNamesResId;
+    }
+
+    /** @return the number of classes prepared */
+    @Override
+    public Integer call() {
+        if (context != null) {
+            MetadataIndex.load(context);
+        }
+        List<Class<?>> classList = new ArrayList<Class<?>>();
+        if (classes != null) {
+            for (Class<?> clazz : classes) {
+                classList.add(clazz);
+            }
+        } else {
+            for (String className : readClassNames()) {
+                try {
+                    // Do not initialize, static initializers may expect the main thread
+                    classList.add(Class.forName(className, false, context.getClassLoader()));
+                } catch (ClassNotFoundException e) {
+                    Log.w("greenInject", "Class to prewarm not found: " + className);
+                }
+            }
+        }
+        InjectionMetrics metrics = Injector.getMetrics();
+        int prepared = 0;
+        for (Class<?> clazz : classList) {
+            try {
+                long start = metrics != null ? System.nanoTime() : 0;
+                prepareClass(clazz);
+                if (metrics != null) {
+                    metrics.onPhase(InjectionMetrics.PHASE_PREWARM, clazz, System.nanoTime() - start);
+                }
+                prepared++;
+            } catch (RuntimeException e) {
+                // The error will be thrown again when the class is injected
+                Log.w("greenInject", "Could not prewarm " + clazz, e);
+            }
+        }
+        return prepared;
+    }
+
+    /** Loads the generated injector or the InjectionPlan, and the @Value fields (using the index if loaded). */
+    static void prepareClass(Class<?> clazz) {
+        if (GeneratedInjectors.forClass(clazz) == null) {
+            InjectionPlan.forClass(clazz);
+        }
+        ValueBinder.prepareClass(clazz);
+    }
+
+    private String[] readClassNames() {
+        int resId = classNamesResId;
+        if (resId == 0) {
+            Bundle metaData;
+            try {
+                PackageManager packageManager = context.getPackageManager();
+                ApplicationInfo info = packageManager.getApplicationInfo(context.getPackageName(),
+                        PackageManager.GET_META_DATA);
+                metaData = info.metaData;
+            } catch (PackageManager.NameNotFoundException e) {
+                throw new InjectException(e);
+            }
+            Object value = metaData != null ? metaData.get(Injector.PREWARM_META_DATA) : null;
+            if (value == null) {
+                Log.w("greenInject", "No meta-data " + Injector.PREWARM_META_DATA + " in manifest");
+                return new String[0];
+            } else if (value instanceof Integer) {
+                // android:resource referencing a string array
+                resId = (Integer) value;
+            } else {
+                // android:value listing class names separated by commas
+                String[] classNames = value.toString().split(",");
+                for (int i = 0; i < classNames.length; i++) {
+                    classNames[i] = classNames[i].trim();
+                }
+                return classNames;
+            }
+        }
+        return context.getResources().getStringArray(resId);
+    }
+
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+/**
+ * Provides objects of a type bound by {@link ObjectGraph#bindProvider(Class, Provider)}, e.g. objects that cannot be
+ * created by a constructor.
+ * 
+ * @author Markus
+ */
+public interface Provider<T> {
+    /** @return an object; called every time the type is injected (cache it in the provider to share it) */
+    T get();
+}
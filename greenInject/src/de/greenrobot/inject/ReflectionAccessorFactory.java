@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Default {@link AccessorFactory} based on reflection. Members are made accessible once when the accessor is created.
+ * Primitive fields are accessed using the typed Field methods, so values are not boxed.
+ * 
+ * @author Markus
+ */
+public class ReflectionAccessorFactory implements AccessorFactory {
+
+    @Override
+    public FieldAccessor createFieldAccessor(Field field) {
+        field.setAccessible(true);
+        return new ReflectionFieldAccessor(field);
+    }
+
+    @Override
+    public MethodInvoker createMethodInvoker(Method method) {
+        method.setAccessible(true);
+        return new ReflectionMethodInvoker(method);
+    }
+
+    static class ReflectionFieldAccessor extends FieldAccessor {
+        private final Field field;
+
+        ReflectionFieldAccessor(Field field) {
+            this.field = field;
+        }
+
+        @Override
+        public String getName() {
+            return field.getName();
+        }
+
+        @Override
+        public Class<?> getType() {
+            return field.getType();
+        }
+
+        @Override
+        public Object get(Object target) {
+            try {
+                return field.get(target);
+            } catch (Exception e) {
+                throw new InjectException("Could not get value for field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public void set(Object target, Object value) {
+            try {
+                field.set(target, value);
+            } catch (Exception e) {
+                throw new InjectException("Could not inject into field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public byte getByte(Object target) {
+            try {
+                return field.getByte(target);
+            } catch (Exception e) {
+                throw new InjectException("Could not get value for field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public void setByte(Object target, byte value) {
+            try {
+                field.setByte(target, value);
+            } catch (Exception e) {
+                throw new InjectException("Could not inject into field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public char getChar(Object target) {
+            try {
+                return field.getChar(target);
+            } catch (Exception e) {
+                throw new InjectException("Could not get value for field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public void setChar(Object target, char value) {
+            try {
+                field.setChar(target, value);
+            } catch (Exception e) {
+                throw new InjectException("Could not inject into field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public short getShort(Object target) {
+            try {
+                return field.getShort(target);
+            } catch (Exception e) {
+                throw new InjectException("Could not get value for field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public void setShort(Object target, short value) {
+            try {
+                field.setShort(target, value);
+            } catch (Exception e) {
+                throw new InjectException("Could not inject into field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public int getInt(Object target) {
+            try {
+                return field.getInt(target);
+            } catch (Exception e) {
+                throw new InjectException("Could not get value for field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public void setInt(Object target, int value) {
+            try {
+                field.setInt(target, value);
+            } catch (Exception e) {
+                throw new InjectException("Could not inject into field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public long getLong(Object target) {
+            try {
+                return field.getLong(target);
+            } catch (Exception e) {
+                throw new InjectException("Could not get value for field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public void setLong(Object target, long value) {
+            try {
+                field.setLong(target, value);
+            } catch (Exception e) {
+                throw new InjectException("Could not inject into field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public float getFloat(Object target) {
+            try {
+                return field.getFloat(target);
+            } catch (Exception e) {
+                throw new InjectException("Could not get value for field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public void setFloat(Object target, float value) {
+            try {
+                field.setFloat(target, value);
+            } catch (Exception e) {
+                throw new InjectException("Could not inject into field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public double getDouble(Object target) {
+            try {
+                return field.getDouble(target);
+            } catch (Exception e) {
+                throw new InjectException("Could not get value for field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public void setDouble(Object target, double value) {
+            try {
+                field.setDouble(target, value);
+            } catch (Exception e) {
+                throw new InjectException("Could not inject into field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public boolean getBoolean(Object target) {
+            try {
+                return field.getBoolean(target);
+            } catch (Exception e) {
+                throw new InjectException("Could not get value for field " + field.getName(), e);
+            }
+        }
+
+        @Override
+        public void setBoolean(Object target, boolean value) {
+            try {
+                field.setBoolean(target, value);
+            } catch (Exception e) {
+                throw new InjectException("Could not inject into field " + field.getName(), e);
+            }
+        }
+    }
+
+    static class ReflectionMethodInvoker extends MethodInvoker {
+        private static final Object[] NO_ARGS = new Object[0];
+
+        private final Method method;
+        private final boolean hasParameter;
+
+        ReflectionMethodInvoker(Method method) {
+            this.method = method;
+            hasParameter = method.getParameterTypes().length == 1;
+        }
+
+        @Override
+        public String getName() {
+            return method.getName();
+        }
+
+        @Override
+        public Object invoke(Object target, Object arg) {
+            // The argument array is not shared, because methods may be invoked concurrently
+            Object[] args = hasParameter ? new Object[] { arg } : NO_ARGS;
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw new RuntimeException(cause);
+                }
+            } catch (IllegalAccessException e) {
+                throw new InjectException("Could not invoke method " + method.getName(), e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.util.DisplayMetrics;
+
+/**
+ * Process wide LRU cache for injected resources, so activities injecting the same resources share a single decoded
+ * instance. Entries are keyed by resource ID, screen density, locale and orientation; the cache is limited by an
+ * estimated byte size (bitmaps count with their pixel data). Drawables are shared by their ConstantState, each
+ * injection gets a new Drawable instance. Injected bitmaps are shared and must not be recycled or modified (they are
+ * mutable if a {@link BitmapPool} is active).
+ * <p>
+ * The cache evicts entries on low memory and evicts all entries on configuration changes, because resources may be
+ * selected by any configuration qualifier. On Android 4.0 and later, it registers itself for these callbacks; on
+ * earlier versions, call {@link #onLowMemory()} and {@link #onConfigurationChanged(Configuration)} from your
+ * Application.
+ * 
+ * @author Markus
+ */
+public final class ResourceCache implements ComponentCallbacks, MemoryCallbacks.Trimmable {
+    /** Same value as ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL (API level 16). */
+    public static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+    /** Same value as ComponentCallbacks2.TRIM_MEMORY_MODERATE (API level 14). */
+    public static final int TRIM_MEMORY_MODERATE = 60;
+
+    static final int KIND_STRING = 1;
+    static final int KIND_DRAWABLE = 2;
+    static final int KIND_BITMAP = 3;
+
+    /** Rough estimate for entries without pixel data. */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static volatile ResourceCache defaultCache;
+
+    static final class Key {
+        final int kind;
+        final int id;
+        final int density;
+        final Locale locale;
+        final int orientation;
+        /** Further load options, e.g. a BitmapSpec; may be null. */
+        final Object options;
+
+        Key(int kind, int id, int density, Locale locale, int orientation, Object options) {
+            this.kind = kind;
+            this.id = id;
+            this.density = density;
+            this.locale = locale;
+            this.orientation = orientation;
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) object;
+            return id == other.id && kind == other.kind && density == other.density
+                    && orientation == other.orientation
+                    && (locale == other.locale || (locale != null && locale.equals(other.locale)))
+                    && (options == other.options || (options != null && options.equals(other.options)));
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = ((id * 31 + kind) * 31 + density) * 31 + orientation;
+            hash = locale != null ? hash * 31 + locale.hashCode() : hash;
+            return options != null ? hash * 31 + options.hashCode() : hash;
+        }
+    }
+
+    static final class Entry {
+        /** String, Drawable.ConstantState, or Bitmap. */
+        final Object value;
+        final long size;
+
+        Entry(Object value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    /** In access order, least recently used first. */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    /** Bitmaps ever cached; they must not be recycled or pooled as long as they are referenced. */
+    private final Map<Bitmap, Boolean> sharedBitmaps = new WeakHashMap<Bitmap, Boolean>();
+    private final long maxSize;
+    private long size;
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+
+    private volatile boolean callbacksRegistered;
+
+    /**
+     * @param maxSize
+     *            estimated bytes of all entries; 0 disables caching
+     */
+    public ResourceCache(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Max size may not be negative");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /** The cache used by {@link Injector}; created on first use with 1/8 of the VM's max memory. */
+    public static ResourceCache getDefault() {
+        ResourceCache cache = defaultCache;
+        if (cache == null) {
+            synchronized (ResourceCache.class) {
+                cache = defaultCache;
+                if (cache == null) {
+                    cache = new ResourceCache(Runtime.getRuntime().maxMemory() / 8);
+                    defaultCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /** Replaces the default cache; use a cache with a max size of 0 to disable caching. */
+    public static void setDefault(ResourceCache cache) {
+        if (cache == null) {
+            throw new IllegalArgumentException("Cache may not be null");
+        }
+        defaultCache = cache;
+    }
+
+    public String getString(Resources resources, int id) {
+        Key key = createKey(resources, KIND_STRING, id, null);
+        String value = (String) get(key);
+        if (value == null) {
+            value = resources.getString(id);
+            long size = ENTRY_OVERHEAD + 2L * value.length();
+            reportDecoded(id, size);
+            value = (String) put(key, value, size);
+        }
+        return value;
+    }
+
+    /** @return a new Drawable sharing its state with Drawables previously returned for the ID */
+    public Drawable getDrawable(Resources resources, int id) {
+        Key key = createKey(resources, KIND_DRAWABLE, id, null);
+        Drawable.ConstantState state = (Drawable.ConstantState) get(key);
+        if (state != null) {
+            return state.newDrawable();
+        }
+        Drawable drawable = resources.getDrawable(id);
+        state = drawable != null ? drawable.getConstantState() : null;
+        if (state != null) {
+            long size = ENTRY_OVERHEAD;
+            if (drawable instanceof BitmapDrawable) {
+                size += sizeOf(((BitmapDrawable) drawable).getBitmap());
+            }
+            reportDecoded(id, size);
+            put(key, state, size);
+        }
+        return drawable;
+    }
+
+    public Bitmap getBitmap(Resources resources, int id) {
+        return getBitmap(resources, new BitmapSpec(id));
+    }
+
+    /** Gets the bitmap decoded with the given options; bitmaps with different options are cached separately. */
+    public Bitmap getBitmap(Resources resources, BitmapSpec spec) {
+        Key key = createKey(resources, KIND_BITMAP, spec.getId(), spec);
+        Bitmap bitmap = (Bitmap) get(key);
+        if (bitmap == null) {
+            bitmap = spec.decode(resources);
+            if (bitmap != null) {
+                long size = ENTRY_OVERHEAD + sizeOf(bitmap);
+                reportDecoded(spec.getId(), size);
+                bitmap = (Bitmap) put(key, bitmap, size);
+            }
+        }
+        return bitmap;
+    }
+
+    /** @return true if the bitmap was cached, and thus may be shared, even if it was evicted since */
+    synchronized boolean isShared(Bitmap bitmap) {
+        return sharedBitmaps.containsKey(bitmap);
+    }
+
+    private static void reportDecoded(int id, long size) {
+        InjectionMetrics metrics = Injector.getMetrics();
+        if (metrics != null) {
+            metrics.onResourceDecoded(id, size);
+        }
+    }
+
+    /** Estimated bytes of the bitmap's pixel data. */
+    static long sizeOf(Bitmap bitmap) {
+        return bitmap != null ? (long) bitmap.getRowBytes() * bitmap.getHeight() : 0;
+    }
+
+    private static Key createKey(Resources resources, int kind, int id, Object options) {
+        DisplayMetrics metrics = resources.getDisplayMetrics();
+        Configuration configuration = resources.getConfiguration();
+        int density = metrics != null ? metrics.densityDpi : 0;
+        Locale locale = configuration != null ? configuration.locale : null;
+        int orientation = configuration != null ? configuration.orientation : 0;
+        return new Key(kind, id, density, locale, orientation, options);
+    }
+
+    private synchronized Object get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.value instanceof Bitmap && ((Bitmap) entry.value).isRecycled()) {
+                // Recycled by someone despite being shared; decode again
+                entries.remove(key);
+                size -= entry.size;
+            } else {
+                hitCount++;
+                return entry.value;
+            }
+        }
+        missCount++;
+        return null;
+    }
+
+    /** @return the value to use, which is an already cached value if another thread loaded it concurrently */
+    private synchronized Object put(Key key, Object value, long entrySize) {
+        Entry existing = entries.get(key);
+        if (existing != null) {
+            return existing.value;
+        }
+        if (entrySize <= maxSize) {
+            entries.put(key, new Entry(value, entrySize));
+            size += entrySize;
+            if (value instanceof Bitmap) {
+                sharedBitmaps.put((Bitmap) value, Boolean.TRUE);
+            }
+            trimToSize(maxSize);
+        }
+        return value;
+    }
+
+    /** Evicts least recently used entries until the estimated size is at most the given bytes. */
+    public synchronized void trimToSize(long maxBytes) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            size -= entry.size;
+            evictionCount++;
+        }
+    }
+
+    public synchronized void evictAll() {
+        trimToSize(-1);
+    }
+
+    /**
+     * Evicts entries depending on the level, e.g. forwarded from ComponentCallbacks2.onTrimMemory: all entries from
+     * {@link #TRIM_MEMORY_MODERATE}, half of the max size from {@link #TRIM_MEMORY_RUNNING_CRITICAL} on.
+     */
+    @Override
+    public void trimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            evictAll();
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(maxSize / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // The key covers only some configuration qualifiers (e.g. not uiMode or screen size)
+        evictAll();
+    }
+
+    /**
+     * Registers for memory and configuration callbacks of the application (Android 4.0 and later), unless already
+     * done. This is called by {@link Injector} for the default cache.
+     */
+    public void registerCallbacks(Context context) {
+        if (callbacksRegistered || Build.VERSION.SDK_INT < 14) {
+            return;
+        }
+        synchronized (this) {
+            if (callbacksRegistered) {
+                return;
+            }
+            callbacksRegistered = true;
+        }
+        MemoryCallbacks.register(context, this);
+    }
+
+    /** Bytes of all entries, estimated. */
+    public synchronized long size() {
+        return size;
+    }
+
+    public long maxSize() {
+        return maxSize;
+    }
+
+    public synchronized int hitCount() {
+        return hitCount;
+    }
+
+    public synchronized int missCount() {
+        return missCount;
+    }
+
+    public synchronized int evictionCount() {
+        return evictionCount;
+    }
+
+}
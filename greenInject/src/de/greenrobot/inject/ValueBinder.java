@@ -18,15 +18,22 @@ package de.greenrobot.inject;
 import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import android.app.Activity;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.SparseArray;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.Window;
 import android.widget.ImageView;
 import android.widget.TextView;
 import de.greenrobot.inject.annotation.Value;
@@ -34,22 +41,81 @@ import de.greenrobot.inject.annotation.Value;
 /**
  * "Binds" values (fields) to UI views. Setting UI/field values must be triggered explicitly by
  * {@link ValueBinder#valuesToUi()} or {@link ValueBinder#uiToValues()}.
+ * <p>
+ * The binder remembers the values last applied to the UI and only updates views whose value changed (values are
+ * compared using equals). TextViews are also updated if their text was changed since, e.g. by the user.
+ * <p>
+ * Fields are transferred by the {@link ValueConverter} registered for the field and view type (see
+ * {@link ValueConverters}); primitive fields are transferred without boxing.
+ * <p>
+ * In two-way mode (see {@link #setTwoWay(boolean)}), the binder watches bound TextViews for changes. uiToValues then
+ * only reads TextViews that changed, and {@link #getDirtyFields()} tells which fields were changed by the UI.
+ * <p>
+ * Changes may also be notified by {@link #notifyChanged(String)} from any thread (e.g. by an {@link ObservableModel}).
+ * The binder collects them and applies the changed fields on the UI thread at most once per display frame.
  * 
  * @author Markus
  */
 public class ValueBinder {
-    protected static Map<Class<?>, List<Field>> valueFieldsForClass = new ConcurrentHashMap<Class<?>, List<Field>>();
-    protected static Map<Class<?>, List<Integer>> valueViewIdsForClass = new ConcurrentHashMap<Class<?>, List<Integer>>();
+    /** Minimum time between two UI updates triggered by change notifications (about one display frame). */
+    public static final long FRAME_MILLIS = 16;
+
+    /** The @Value fields of a class and the IDs of the views they are bound to, in the same order. */
+    static final class ClassValues {
+        final List<FieldAccessor> fields;
+        final List<Integer> viewIds;
+
+        ClassValues(List<FieldAccessor> fields, List<Integer> viewIds) {
+            this.fields = fields;
+            this.viewIds = viewIds;
+        }
+    }
+
+    static final ClassCache<ClassValues> valuesForClass = new ClassCache<ClassValues>();
 
     protected final Object target;
     protected final Activity activity;
 
-    protected List<Field> valueFields;
-    protected List<View> valueViews;
+    protected List<FieldAccessor> valueFields;
     protected List<Integer> valueViewIds;
+    private int[] sortedValueViewIds;
+
+    /** Same index as valueFields; views are set once resolved. */
+    private ValueBinding[] bindings;
+    private boolean viewsResolved;
+
+    private boolean twoWay;
+    /** Same index as valueFields; non-null for watched TextViews in two-way mode. */
+    private TextViewWatcher[] watchers;
+    /** Fields whose TextView changed since the field was last transferred (two-way mode). */
+    private final BitSet pending = new BitSet();
+    /** Fields changed by the UI since valuesToUi set them or {@link #clearDirtyFields()} was called (two-way mode). */
+    private final BitSet dirty = new BitSet();
+
+    /** Parent of the activity's content view, used to detect setContentView calls; may be null. */
+    private ViewGroup contentParent;
+    /** Content view when the views were resolved. */
+    private View contentView;
 
     private Class<? extends Object> clazz;
 
+    /** Guards the change notification state below, which is written by any thread. */
+    private final Object changeLock = new Object();
+    private final BitSet notifiedChanges = new BitSet();
+    private boolean allChangesNotified;
+    private boolean updateScheduled;
+    private long lastUpdateTime;
+    /** Changes taken for the current UI pass; only used on the UI thread. */
+    private final BitSet changesToApply = new BitSet();
+    private Handler handler;
+    private boolean autoUpdate;
+    private final Runnable updateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            applyNotifiedChanges();
+        }
+    };
+
     /** If the value fields are in the activity itself. */
     public ValueBinder(Activity activity) {
         this(activity, activity);
@@ -63,124 +129,482 @@ public class ValueBinder {
         this.activity = activity;
         this.target = target;
         clazz = target.getClass();
+        MetadataIndex.load(activity);
     }
 
     protected View findView(Member field, int viewId) {
+        return findView(field.getName(), viewId);
+    }
+
+    protected View findView(String memberName, int viewId) {
         View view = activity.findViewById(viewId);
         if (view == null) {
-            throw new InjectException("View not found for member " + field.getName());
+            throw new InjectException("View not found for member " + memberName);
         }
         return view;
     }
 
-    /** Applies the values annotated with @Value to the UI views. */
+    /** Applies the values annotated with @Value to the UI views, if they changed since last applied. */
     public void valuesToUi() {
-        long start = System.currentTimeMillis();
+        InjectionMetrics metrics = Injector.getMetrics();
+        long start = metrics != null ? System.nanoTime() : 0;
         checkValueFields();
-        long start2 = System.currentTimeMillis();
-
         for (int i = 0; i < valueFields.size(); i++) {
-            Field field = valueFields.get(i);
-            View view = valueViews.get(i);
-
-            Object value;
-            try {
-                value = field.get(target);
-            } catch (Exception e) {
-                throw new InjectException("Could not get value for field " + field.getName(), e);
-            }
-            if (view instanceof TextView) {
-                ((TextView) view).setText(value != null ? value.toString() : null);
-            } else if (view instanceof ImageView) {
-                ImageView imageView = (ImageView) view;
-                if (value == null || value instanceof Bitmap) {
-                    imageView.setImageBitmap((Bitmap) value);
-                } else if (value instanceof Integer) {
-                    int resId = (Integer) value;
-                    imageView.setImageResource(resId);
-                } else if (value instanceof Drawable) {
-                    imageView.setImageDrawable((Drawable) value);
-                }
-            }
+            applyValue(i);
+        }
+        if (metrics != null) {
+            metrics.onPhase(InjectionMetrics.PHASE_VALUES_TO_UI, target.getClass(), System.nanoTime() - start);
+        }
+    }
+
+    /** Applies the values of the given fields (annotated with @Value) to the UI views, if they changed. */
+    public void valuesToUi(String... fieldNames) {
+        InjectionMetrics metrics = Injector.getMetrics();
+        long start = metrics != null ? System.nanoTime() : 0;
+        checkValueFields();
+        for (String fieldName : fieldNames) {
+            applyValue(indexOfValueField(fieldName));
         }
-        if (Injector.LOG_PERFORMANCE) {
-            long time = System.currentTimeMillis() - start;
-            long time2 = System.currentTimeMillis() - start2;
-            Log.d("greenInject", "valuesToUi proccesed " + valueFields.size() + " fields in " + time2 + "/" + time
-                    + "ms");
+        if (metrics != null) {
+            metrics.onPhase(InjectionMetrics.PHASE_VALUES_TO_UI, target.getClass(), System.nanoTime() - start);
         }
     }
 
-    /** Reads the values annotated with @Value from the UI views. */
+    /** Forgets the values last applied, so the next valuesToUi call updates all views. */
+    public void invalidateUi() {
+        if (bindings != null) {
+            for (ValueBinding binding : bindings) {
+                binding.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Reads the values annotated with @Value from the UI views. In two-way mode, watched TextViews are only read if
+     * they changed since; other views are always read (this does not involve text conversion).
+     */
     public void uiToValues() {
-        long start = System.currentTimeMillis();
+        InjectionMetrics metrics = Injector.getMetrics();
+        long start = metrics != null ? System.nanoTime() : 0;
         checkValueFields();
-        long start2 = System.currentTimeMillis();
+        for (int i = 0; i < bindings.length; i++) {
+            if (watchers == null || watchers[i] == null || pending.get(i)) {
+                valueFromUi(bindings[i]);
+            }
+        }
+        pending.clear();
+        if (metrics != null) {
+            metrics.onPhase(InjectionMetrics.PHASE_UI_TO_VALUES, target.getClass(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Enables or disables two-way mode: bound TextViews are watched for changes, so {@link #uiToValues()} only reads
+     * the views that changed and {@link #getDirtyFields()} can tell which fields the UI changed.
+     */
+    public void setTwoWay(boolean twoWay) {
+        if (this.twoWay != twoWay) {
+            this.twoWay = twoWay;
+            if (!twoWay) {
+                detachWatchers();
+                pending.clear();
+                dirty.clear();
+            } else if (viewsResolved) {
+                attachWatchers();
+            }
+        }
+    }
+
+    public boolean isTwoWay() {
+        return twoWay;
+    }
 
+    /**
+     * @return the indexes of the fields (see {@link #getFieldName(int)}) whose TextViews were changed since
+     *         valuesToUi set them or {@link #clearDirtyFields()} was called; always empty if not in two-way mode. The
+     *         returned BitSet is a copy.
+     */
+    public BitSet getDirtyFields() {
+        return (BitSet) dirty.clone();
+    }
+
+    /** @return true if the given field's TextView was changed (see {@link #getDirtyFields()}) */
+    public boolean isDirty(String fieldName) {
+        checkValueFields();
+        return dirty.get(indexOfValueField(fieldName));
+    }
+
+    /** Forgets which fields were changed, e.g. after the values were saved. */
+    public void clearDirtyFields() {
+        dirty.clear();
+    }
+
+    /** @return the name of the field annotated with @Value at the given index */
+    public String getFieldName(int index) {
+        checkValueFields();
+        return valueFields.get(index).getName();
+    }
+
+    /** @return true if the view was updated */
+    private boolean applyValue(int index) {
+        boolean updated = applyValueToView(index);
+        // The view shows the field's value now (also if our own setText triggered the watcher)
+        pending.clear(index);
+        dirty.clear(index);
+        return updated;
+    }
+
+    private boolean applyValueToView(int index) {
+        ValueBinding binding = bindings[index];
+        ValueConverter converter = binding.getConverter();
+        if (converter != null) {
+            return converter.toUi(binding, target);
+        }
+        Object value = binding.getField().get(target);
+        if (binding.isUnchanged(value)) {
+            return false;
+        }
+        View view = binding.getView();
+        valueToUi(view, value);
+        binding.setApplied(value);
+        if (view instanceof TextView) {
+            binding.syncText((TextView) view);
+        }
+        return true;
+    }
+
+    private void valueFromUi(ValueBinding binding) {
+        ValueConverter converter = binding.getConverter();
+        View view = binding.getView();
+        if (converter != null) {
+            converter.toValue(binding, target);
+        } else if (view instanceof TextView) {
+            TextView textView = (TextView) view;
+            String value = textView.getText().toString();
+            binding.getField().set(target, value);
+            // Field and view are in sync now
+            binding.setApplied(value);
+            binding.syncText(textView);
+        }
+    }
+
+    private int indexOfValueField(String fieldName) {
         for (int i = 0; i < valueFields.size(); i++) {
-            Field field = valueFields.get(i);
-            View view = valueViews.get(i);
+            if (valueFields.get(i).getName().equals(fieldName)) {
+                return i;
+            }
+        }
+        throw new InjectException("No field annotated with @Value: " + fieldName);
+    }
 
-            if (view instanceof TextView) {
-                String value = ((TextView) view).getText().toString();
-                injectIntoField(field, value);
+    protected void valueToUi(View view, Object value) {
+        if (view instanceof TextView) {
+            ((TextView) view).setText(value != null ? value.toString() : null);
+        } else if (view instanceof ImageView) {
+            ImageView imageView = (ImageView) view;
+            if (value == null || value instanceof Bitmap) {
+                imageView.setImageBitmap((Bitmap) value);
+            } else if (value instanceof Integer) {
+                int resId = (Integer) value;
+                imageView.setImageResource(resId);
+            } else if (value instanceof Drawable) {
+                imageView.setImageDrawable((Drawable) value);
             }
         }
-        if (Injector.LOG_PERFORMANCE) {
-            long time = System.currentTimeMillis() - start;
-            long time2 = System.currentTimeMillis() - start2;
-            Log.d("greenInject", "uiToValues proccesed " + valueFields.size() + " fields in " + time2 + "/" + time
-                    + "ms");
+    }
+
+    protected void checkValueFields() {
+        loadValueFields();
+        if (!viewsResolved || isContentViewChanged()) {
+            refreshUiViews();
         }
     }
 
-    protected void injectIntoField(Field field, Object value) {
-        try {
-            field.set(target, value);
-        } catch (Exception e) {
-            throw new InjectException("Could not inject into field " + field.getName(), e);
+    /** Gets the @Value fields of the class, loading them into the static cache if necessary; any thread may call it. */
+    static ClassValues prepareClass(Class<?> clazz) {
+        ClassValues values = valuesForClass.get(clazz);
+        if (values == null) {
+            List<FieldAccessor> fields = new ArrayList<FieldAccessor>();
+            List<Integer> viewIds = new ArrayList<Integer>();
+            GeneratedInjector<Object> generatedInjector = GeneratedInjectors.forClass(clazz);
+            if (generatedInjector != null) {
+                fields.addAll(Arrays.asList(generatedInjector.getValueAccessors()));
+                for (int viewId : generatedInjector.getValueViewIds()) {
+                    viewIds.add(viewId);
+                }
+            } else {
+                MetadataIndex.MemberEntry[] indexedMembers = MetadataIndex.forClass(clazz);
+                if (indexedMembers != null && !addIndexedValueFields(clazz, indexedMembers, fields, viewIds)) {
+                    fields.clear();
+                    viewIds.clear();
+                    indexedMembers = null;
+                }
+                if (indexedMembers == null) {
+                    for (Field field : clazz.getDeclaredFields()) {
+                        Value annotation = field.getAnnotation(Value.class);
+                        if (annotation != null) {
+                            fields.add(Accessors.forField(field));
+                            viewIds.add(annotation.bindTo());
+                        }
+                    }
+                }
+            }
+            // Concurrent first calls may load twice, which is harmless as the lists are equal
+            values = new ClassValues(fields, viewIds);
+            valuesForClass.put(clazz, values);
         }
+        return values;
     }
 
-    protected void checkValueFields() {
+    /** @return false if the index is out of date */
+    private static boolean addIndexedValueFields(Class<?> clazz, MetadataIndex.MemberEntry[] indexedMembers,
+            List<FieldAccessor> fields, List<Integer> viewIds) {
+        for (MetadataIndex.MemberEntry member : indexedMembers) {
+            if (member.kind == MetadataIndex.MEMBER_VALUE) {
+                Field field = InjectionPlan.findField(clazz, member.name);
+                if (field == null) {
+                    MetadataIndex.logOutOfDate(clazz, member.name);
+                    return false;
+                }
+                fields.add(Accessors.forField(field));
+                viewIds.add(member.ids[0]);
+            }
+        }
+        return true;
+    }
+
+    /** Loads the fields and creates their bindings (without views); may be called by any thread. */
+    private synchronized void loadValueFields() {
         if (valueFields == null) {
-            valueFields = valueFieldsForClass.get(clazz);
-            valueViewIds = valueViewIdsForClass.get(clazz);
-            if (valueFields == null || valueViewIds == null) {
-                valueFields = new ArrayList<Field>();
-                valueViewIds = new ArrayList<Integer>();
-                Field[] fields = clazz.getDeclaredFields();
-                for (Field field : fields) {
-                    Value annotation = field.getAnnotation(Value.class);
-                    if (annotation != null) {
-                        field.setAccessible(true);
-                        valueFields.add(field);
-                        int viewId = ((Value) annotation).bindTo();
-                        valueViewIds.add(viewId);
-                    }
+            ClassValues values = prepareClass(clazz);
+            valueFields = values.fields;
+            valueViewIds = values.viewIds;
+            int size = valueFields.size();
+            if (size != valueViewIds.size()) {
+                throw new InjectException("Internal error; size: " + size + " vs. " + valueViewIds.size());
+            }
+            bindings = new ValueBinding[size];
+            for (int i = 0; i < size; i++) {
+                bindings[i] = new ValueBinding(valueFields.get(i), valueViewIds.get(i));
+            }
+        }
+    }
+
+    /**
+     * Enables or disables automatic UI updates for a target that is an {@link ObservableModel}: the binder observes
+     * the model and applies the fields it notifies as changed. Disable it when the activity is destroyed, so the model
+     * does not keep the binder (and the activity).
+     */
+    public void setAutoUpdate(boolean autoUpdate) {
+        if (!(target instanceof ObservableModel)) {
+            throw new InjectException("Auto update requires an ObservableModel target: " + clazz);
+        }
+        this.autoUpdate = autoUpdate;
+        ObservableModel model = (ObservableModel) target;
+        if (autoUpdate) {
+            model.addBinder(this);
+        } else {
+            model.removeBinder(this);
+            synchronized (changeLock) {
+                notifiedChanges.clear();
+                allChangesNotified = false;
+                if (updateScheduled) {
+                    handler.removeCallbacks(updateRunnable);
+                    updateScheduled = false;
                 }
-                valueFieldsForClass.put(clazz, valueFields);
-                valueViewIdsForClass.put(clazz, valueViewIds);
             }
         }
-        refreshUiViews();
     }
 
-    public void refreshUiViews() {
-        if (valueViews == null) {
-            valueViews = new ArrayList<View>();
+    public boolean isAutoUpdate() {
+        return autoUpdate;
+    }
+
+    /**
+     * Releases the views, e.g. when the activity is destroyed: disables two-way mode and auto update, and forgets the
+     * resolved views. If used again, the binder resolves the views again.
+     */
+    public void release() {
+        setTwoWay(false);
+        if (autoUpdate) {
+            setAutoUpdate(false);
+        }
+        if (bindings != null) {
+            for (ValueBinding binding : bindings) {
+                binding.setView(null);
+            }
+        }
+        viewsResolved = false;
+        contentParent = null;
+        contentView = null;
+    }
+
+    /**
+     * Notifies that the given field (annotated with @Value) changed; may be called from any thread. Changes are
+     * collected and applied to the UI on the UI thread, at most once every {@link #FRAME_MILLIS}.
+     */
+    public void notifyChanged(String fieldName) {
+        int index;
+        synchronized (this) {
+            loadValueFields();
+            index = indexOfValueField(fieldName);
+        }
+        synchronized (changeLock) {
+            notifiedChanges.set(index);
+            scheduleUpdate();
+        }
+    }
+
+    /** Notifies that any field may have changed; may be called from any thread (see {@link #notifyChanged(String)}). */
+    public void notifyAllChanged() {
+        synchronized (changeLock) {
+            allChangesNotified = true;
+            scheduleUpdate();
+        }
+    }
+
+    /** Must be called holding changeLock. */
+    private void scheduleUpdate() {
+        if (!updateScheduled) {
+            if (handler == null) {
+                handler = new Handler(Looper.getMainLooper());
+            }
+            updateScheduled = true;
+            long delay = lastUpdateTime + FRAME_MILLIS - SystemClock.uptimeMillis();
+            handler.postDelayed(updateRunnable, delay > 0 ? delay : 0);
+        }
+    }
+
+    private void applyNotifiedChanges() {
+        boolean all;
+        synchronized (changeLock) {
+            updateScheduled = false;
+            lastUpdateTime = SystemClock.uptimeMillis();
+            all = allChangesNotified;
+            allChangesNotified = false;
+            changesToApply.clear();
+            changesToApply.or(notifiedChanges);
+            notifiedChanges.clear();
+        }
+        if (all) {
+            valuesToUi();
         } else {
-            valueViews.clear();
+            checkValueFields();
+            for (int i = changesToApply.nextSetBit(0); i >= 0; i = changesToApply.nextSetBit(i + 1)) {
+                applyValue(i);
+            }
         }
-        int size = valueFields.size();
-        if (size != valueViewIds.size()) {
-            throw new InjectException("Internal error; size: " + size + " vs. " + valueViewIds.size());
+    }
+
+    private boolean isContentViewChanged() {
+        if (contentParent == null) {
+            return false;
+        }
+        View currentContentView = contentParent.getChildCount() > 0 ? contentParent.getChildAt(0) : null;
+        return currentContentView != contentView;
+    }
+
+    /**
+     * Resolves the views bound to the fields. Views are resolved once and reused; this is done again automatically
+     * if the activity's content view was set again. Call this if views were replaced by other means.
+     */
+    public void refreshUiViews() {
+        if (bindings == null) {
+            // Resolves the views as well
+            checkValueFields();
+            return;
         }
-        for (int i = 0; i < size; i++) {
-            int viewId = valueViewIds.get(i);
-            Field field = valueFields.get(i);
-            View view = findView(field, viewId);
-            valueViews.add(view);
+        int size = bindings.length;
+        if (sortedValueViewIds == null) {
+            int[] ids = new int[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = valueViewIds.get(i);
+            }
+            sortedValueViewIds = ViewResolver.toSortedIds(ids);
+        }
+        Window window = activity.getWindow();
+        View root = window != null ? window.peekDecorView() : null;
+        SparseArray<View> resolvedViews = null;
+        if (root != null && sortedValueViewIds.length > 1) {
+            resolvedViews = ViewResolver.resolve(root, sortedValueViewIds);
+        }
+        if (root != null) {
+            View content = root.findViewById(android.R.id.content);
+            if (content instanceof ViewGroup) {
+                contentParent = (ViewGroup) content;
+                contentView = contentParent.getChildCount() > 0 ? contentParent.getChildAt(0) : null;
+            }
+        }
+        for (ValueBinding binding : bindings) {
+            int viewId = binding.getViewId();
+            View view = resolvedViews != null ? resolvedViews.get(viewId) : null;
+            if (view == null) {
+                view = findView(binding.getField().getName(), viewId);
+            }
+            // A new view does not show the last applied value; the binding resolves its converter for the view type
+            binding.setView(view);
+        }
+        viewsResolved = true;
+        if (twoWay) {
+            attachWatchers();
+        }
+    }
+
+    private void attachWatchers() {
+        if (watchers == null) {
+            watchers = new TextViewWatcher[bindings.length];
+        }
+        for (int i = 0; i < bindings.length; i++) {
+            View view = bindings[i].getView();
+            TextViewWatcher watcher = watchers[i];
+            if (watcher != null && watcher.textView != view) {
+                watcher.textView.removeTextChangedListener(watcher);
+                watcher = null;
+                watchers[i] = null;
+            }
+            if (watcher == null && view instanceof TextView) {
+                watcher = new TextViewWatcher(i, (TextView) view);
+                watcher.textView.addTextChangedListener(watcher);
+                watchers[i] = watcher;
+                // Unknown if the new view shows the field's value, so read it once
+                pending.set(i);
+            }
+        }
+    }
+
+    private void detachWatchers() {
+        if (watchers != null) {
+            for (TextViewWatcher watcher : watchers) {
+                if (watcher != null) {
+                    watcher.textView.removeTextChangedListener(watcher);
+                }
+            }
+            watchers = null;
+        }
+    }
+
+    /** TextWatcher does not tell the changed view, so there is one watcher per TextView. */
+    private class TextViewWatcher implements TextWatcher {
+        final int index;
+        final TextView textView;
+
+        TextViewWatcher(int index, TextView textView) {
+            this.index = index;
+            this.textView = textView;
+        }
+
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            pending.set(index);
+            dirty.set(index);
         }
     }
 
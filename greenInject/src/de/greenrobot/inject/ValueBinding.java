@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import android.view.View;
+import android.widget.TextView;
+
+/**
+ * A field bound to a view by a {@link ValueBinder}. Keeps the state last applied to the view, so converters can skip
+ * unchanged values, and a text buffer reused for every update.
+ * 
+ * @author Markus
+ */
+public final class ValueBinding {
+    private final FieldAccessor field;
+    private final int viewId;
+
+    private View view;
+    /** Null if the generic (boxing) conversion is used. */
+    private ValueConverter converter;
+
+    private boolean applied;
+    private long lastBits;
+    private Object lastValue;
+
+    private char[] textBuffer;
+    /** Length of the text last applied to a TextView, or -1. */
+    private int textLength = -1;
+
+    ValueBinding(FieldAccessor field, int viewId) {
+        this.field = field;
+        this.viewId = viewId;
+    }
+
+    public FieldAccessor getField() {
+        return field;
+    }
+
+    public int getViewId() {
+        return viewId;
+    }
+
+    public View getView() {
+        return view;
+    }
+
+    ValueConverter getConverter() {
+        return converter;
+    }
+
+    /** Sets a new view, resolves its converter and forgets the state last applied. */
+    void setView(View view) {
+        if (this.view != view) {
+            this.view = view;
+            converter = view != null ? ValueConverters.find(field.getType(), view.getClass()) : null;
+            invalidate();
+        }
+    }
+
+    /** Forgets the state last applied, so the next update is not skipped. */
+    public void invalidate() {
+        applied = false;
+        lastValue = null;
+        textLength = -1;
+    }
+
+    /** @return true if the given primitive value (as raw bits) was applied last and the view is unchanged */
+    public boolean isUnchanged(long bits) {
+        return applied && lastBits == bits && isTextUnchanged();
+    }
+
+    /** @return true if an equal value was applied last and the view is unchanged */
+    public boolean isUnchanged(Object value) {
+        return applied && (value == lastValue || (value != null && value.equals(lastValue))) && isTextUnchanged();
+    }
+
+    /** Remembers the primitive value (as raw bits) applied to the view. */
+    public void setApplied(long bits) {
+        applied = true;
+        lastBits = bits;
+        lastValue = null;
+    }
+
+    /** Remembers the value applied to the view. */
+    public void setApplied(Object value) {
+        applied = true;
+        lastBits = 0;
+        lastValue = value;
+    }
+
+    /**
+     * @return the text buffer of this binding with at least the given capacity. Only write to it right before passing
+     *         it to {@link #setText(TextView, char[], int)}, as the TextView may keep a reference to it.
+     */
+    public char[] getTextBuffer(int capacity) {
+        if (textBuffer == null || textBuffer.length < capacity) {
+            char[] newBuffer = new char[Math.max(capacity, 16)];
+            if (textBuffer != null && textLength > 0) {
+                System.arraycopy(textBuffer, 0, newBuffer, 0, textLength);
+            }
+            textBuffer = newBuffer;
+        }
+        return textBuffer;
+    }
+
+    /** Sets the text from the buffer returned by {@link #getTextBuffer(int)} and remembers it. */
+    public void setText(TextView textView, char[] buffer, int length) {
+        textView.setText(buffer, 0, length);
+        textLength = length;
+    }
+
+    /** Sets the text and remembers it (copied into the text buffer). */
+    public void setText(TextView textView, CharSequence text) {
+        textView.setText(text);
+        rememberText(text);
+    }
+
+    /** Remembers the view's current text as applied, e.g. after the field was set from the view. */
+    public void syncText(TextView textView) {
+        rememberText(textView.getText());
+    }
+
+    private void rememberText(CharSequence text) {
+        int length = text != null ? text.length() : 0;
+        char[] buffer = getTextBuffer(length);
+        if (text instanceof String) {
+            ((String) text).getChars(0, length, buffer, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                buffer[i] = text.charAt(i);
+            }
+        }
+        textLength = length;
+    }
+
+    /** @return true if the view is no TextView or still shows the text last applied */
+    private boolean isTextUnchanged() {
+        if (!(view instanceof TextView) || textLength < 0) {
+            return true;
+        }
+        CharSequence text = ((TextView) view).getText();
+        int length = text != null ? text.length() : 0;
+        if (length != textLength) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != textBuffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
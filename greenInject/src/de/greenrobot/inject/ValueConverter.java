@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+/**
+ * Transfers values between a field and a view of a specific type. Converters are registered by field and view type
+ * in {@link ValueConverters} and resolved once per binding; they must be stateless, per binding state is kept by
+ * {@link ValueBinding}. Implementations for primitive fields should use the primitive {@link FieldAccessor} methods
+ * and the binding's text buffer to avoid allocations.
+ * 
+ * @author Markus
+ */
+public abstract class ValueConverter {
+
+    /**
+     * Applies the field value to the view unless the binding reports it unchanged.
+     * 
+     * @return true if the view was updated
+     */
+    public abstract boolean toUi(ValueBinding binding, Object target);
+
+    /** Reads the view value into the field. Does nothing by default (one-way binding). */
+    public void toValue(ValueBinding binding, Object target) {
+    }
+
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.view.View;
+import android.widget.CompoundButton;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+/**
+ * Registry of {@link ValueConverter}s by field and view type. Built-in converters transfer int, long, float, double
+ * and boolean fields without boxing; int and long values are formatted into the binding's text buffer without any
+ * allocation. Fields without a matching converter use {@link ValueBinder#valueToUi(View, Object)}.
+ * 
+ * @author Markus
+ */
+public final class ValueConverters {
+    private static final char[] TRUE = { 't', 'r', 'u', 'e' };
+    private static final char[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+
+    /** Exact powers of ten for formatting decimals. */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17 };
+    /** 2^53: larger doubles may not be integers exactly. */
+    private static final double MAX_EXACT_LONG = 9007199254740992.0;
+
+    private static final Map<Class<?>, Map<Class<?>, ValueConverter>> convertersByViewType =
+            new ConcurrentHashMap<Class<?>, Map<Class<?>, ValueConverter>>();
+
+    static {
+        register(int.class, TextView.class, new IntTextConverter());
+        register(long.class, TextView.class, new LongTextConverter());
+        register(float.class, TextView.class, new FloatTextConverter());
+        register(double.class, TextView.class, new DoubleTextConverter());
+        register(boolean.class, TextView.class, new BooleanTextConverter());
+        register(boolean.class, CompoundButton.class, new BooleanCheckedConverter());
+        register(int.class, ImageView.class, new ImageResourceConverter());
+    }
+
+    private ValueConverters() {
+    }
+
+    /**
+     * Registers a converter for the given field type (use e.g. int.class for primitives) and view type (also used for
+     * subclasses). Register converters before views are bound; bindings resolve their converter once.
+     */
+    public static void register(Class<?> fieldType, Class<? extends View> viewType, ValueConverter converter) {
+        if (fieldType == null || viewType == null || converter == null) {
+            throw new IllegalArgumentException("Field type, view type, and converter may not be null");
+        }
+        synchronized (convertersByViewType) {
+            Map<Class<?>, ValueConverter> converters = convertersByViewType.get(viewType);
+            if (converters == null) {
+                converters = new ConcurrentHashMap<Class<?>, ValueConverter>();
+                convertersByViewType.put(viewType, converters);
+            }
+            converters.put(fieldType, converter);
+        }
+    }
+
+    /**
+     * Finds the converter for the given field type and the most specific matching view type.
+     * 
+     * @return the converter, or null if there is none
+     */
+    public static ValueConverter find(Class<?> fieldType, Class<?> viewType) {
+        for (Class<?> type = viewType; type != null && type != Object.class; type = type.getSuperclass()) {
+            Map<Class<?>, ValueConverter> converters = convertersByViewType.get(type);
+            if (converters != null) {
+                ValueConverter converter = converters.get(fieldType);
+                if (converter != null) {
+                    return converter;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Formats the value into the buffer (decimal, like Long.toString) without allocating.
+     * 
+     * @return the number of chars written; the buffer must have room for 20 chars
+     */
+    public static int format(long value, char[] buffer) {
+        if (value == 0) {
+            buffer[0] = '0';
+            return 1;
+        }
+        // Work with negative values to cover Long.MIN_VALUE
+        boolean negative = value < 0;
+        long remaining = negative ? value : -value;
+        int length = negative ? 1 : 0;
+        for (long rest = remaining; rest != 0; rest /= 10) {
+            length++;
+        }
+        int position = length;
+        while (remaining != 0) {
+            buffer[--position] = (char) ('0' - (remaining % 10));
+            remaining /= 10;
+        }
+        if (negative) {
+            buffer[0] = '-';
+        }
+        return length;
+    }
+
+    /**
+     * Formats the value into the buffer without allocating, using the fewest fraction digits (at least one) that parse
+     * back to the same value, e.g. "2.5" or "-0.0". Only values Float.toString/Double.toString format without exponent
+     * are supported.
+     * 
+     * @param floatPrecision
+     *            if the value is a float, so fewer digits are needed to parse back to it
+     * @return the number of chars written, or -1 if the value is not supported (nothing written); the buffer must have
+     *         room for 24 chars
+     */
+    public static int formatDecimal(double value, boolean floatPrecision, char[] buffer) {
+        double abs = Math.abs(value);
+        // Also excludes NaN
+        if (!(abs == 0 || (abs >= 1e-3 && abs < 1e7))) {
+            return -1;
+        }
+        for (int fractionDigits = 1; fractionDigits < POWERS_OF_TEN.length; fractionDigits++) {
+            double scale = POWERS_OF_TEN[fractionDigits];
+            double digits = Math.rint(abs * scale);
+            if (digits >= MAX_EXACT_LONG) {
+                return -1;
+            }
+            // Both are exact, so the division is rounded to the double nearest to the decimal, as parsing would
+            double decimal = digits / scale;
+            if (floatPrecision ? (float) decimal == (float) abs : decimal == abs) {
+                boolean negative = Double.doubleToRawLongBits(value) < 0;
+                return formatDecimal((long) digits, fractionDigits, negative, buffer);
+            }
+        }
+        return -1;
+    }
+
+    private static int formatDecimal(long digits, int fractionDigits, boolean negative, char[] buffer) {
+        int digitCount = 1;
+        for (long rest = digits / 10; rest != 0; rest /= 10) {
+            digitCount++;
+        }
+        // At least one integer digit, e.g. "0.001"
+        int length = Math.max(digitCount, fractionDigits + 1) + 1 + (negative ? 1 : 0);
+        int position = length;
+        long remaining = digits;
+        for (int i = 0; i < fractionDigits; i++) {
+            buffer[--position] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        buffer[--position] = '.';
+        do {
+            buffer[--position] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        if (negative) {
+            buffer[--position] = '-';
+        }
+        return length;
+    }
+
+    /**
+     * Parses a decimal integer without allocating; surrounding whitespace is ignored, empty text is 0.
+     * 
+     * @throws NumberFormatException
+     *             if the text is no decimal integer in the given range
+     */
+    public static long parse(CharSequence text, long min, long max) {
+        int start = 0;
+        int end = text != null ? text.length() : 0;
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return 0;
+        }
+        boolean negative = false;
+        char first = text.charAt(start);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            start++;
+            if (start == end) {
+                throw new NumberFormatException("Invalid number: " + text);
+            }
+        }
+        // Accumulate negatively to cover the minimum value
+        long limit = negative ? min : -max;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number: " + text);
+            }
+            if (result < multiplyLimit || result * 10 < limit + digit) {
+                throw new NumberFormatException("Number out of range: " + text);
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static String trimmedString(CharSequence text) {
+        return text != null ? text.toString().trim() : "";
+    }
+
+    private static InjectException parseException(ValueBinding binding, NumberFormatException e) {
+        return new InjectException("Could not parse value for field " + binding.getField().getName(), e);
+    }
+
+    static class IntTextConverter extends ValueConverter {
+        @Override
+        public boolean toUi(ValueBinding binding, Object target) {
+            int value = binding.getField().getInt(target);
+            if (binding.isUnchanged(value)) {
+                return false;
+            }
+            char[] buffer = binding.getTextBuffer(20);
+            binding.setText((TextView) binding.getView(), buffer, format(value, buffer));
+            binding.setApplied(value);
+            return true;
+        }
+
+        @Override
+        public void toValue(ValueBinding binding, Object target) {
+            TextView textView = (TextView) binding.getView();
+            int value;
+            try {
+                value = (int) parse(textView.getText(), Integer.MIN_VALUE, Integer.MAX_VALUE);
+            } catch (NumberFormatException e) {
+                throw parseException(binding, e);
+            }
+            binding.getField().setInt(target, value);
+            binding.setApplied(value);
+            binding.syncText(textView);
+        }
+    }
+
+    static class LongTextConverter extends ValueConverter {
+        @Override
+        public boolean toUi(ValueBinding binding, Object target) {
+            long value = binding.getField().getLong(target);
+            if (binding.isUnchanged(value)) {
+                return false;
+            }
+            char[] buffer = binding.getTextBuffer(20);
+            binding.setText((TextView) binding.getView(), buffer, format(value, buffer));
+            binding.setApplied(value);
+            return true;
+        }
+
+        @Override
+        public void toValue(ValueBinding binding, Object target) {
+            TextView textView = (TextView) binding.getView();
+            long value;
+            try {
+                value = parse(textView.getText(), Long.MIN_VALUE, Long.MAX_VALUE);
+            } catch (NumberFormatException e) {
+                throw parseException(binding, e);
+            }
+            binding.getField().setLong(target, value);
+            binding.setApplied(value);
+            binding.syncText(textView);
+        }
+    }
+
+    /**
+     * Compares and formats without boxing (Float.toString is used for values in scientific notation); parses using
+     * Float.
+     */
+    static class FloatTextConverter extends ValueConverter {
+        @Override
+        public boolean toUi(ValueBinding binding, Object target) {
+            float value = binding.getField().getFloat(target);
+            int bits = Float.floatToIntBits(value);
+            if (binding.isUnchanged(bits)) {
+                return false;
+            }
+            setDecimalText(binding, value, true);
+            binding.setApplied(bits);
+            return true;
+        }
+
+        @Override
+        public void toValue(ValueBinding binding, Object target) {
+            TextView textView = (TextView) binding.getView();
+            String text = trimmedString(textView.getText());
+            float value;
+            try {
+                value = text.length() > 0 ? Float.parseFloat(text) : 0;
+            } catch (NumberFormatException e) {
+                throw parseException(binding, e);
+            }
+            binding.getField().setFloat(target, value);
+            binding.setApplied(Float.floatToIntBits(value));
+            binding.syncText(textView);
+        }
+    }
+
+    /**
+     * Compares and formats without boxing (Double.toString is used for values in scientific notation); parses using
+     * Double.
+     */
+    static class DoubleTextConverter extends ValueConverter {
+        @Override
+        public boolean toUi(ValueBinding binding, Object target) {
+            double value = binding.getField().getDouble(target);
+            long bits = Double.doubleToLongBits(value);
+            if (binding.isUnchanged(bits)) {
+                return false;
+            }
+            setDecimalText(binding, value, false);
+            binding.setApplied(bits);
+            return true;
+        }
+
+        @Override
+        public void toValue(ValueBinding binding, Object target) {
+            TextView textView = (TextView) binding.getView();
+            String text = trimmedString(textView.getText());
+            double value;
+            try {
+                value = text.length() > 0 ? Double.parseDouble(text) : 0;
+            } catch (NumberFormatException e) {
+                throw parseException(binding, e);
+            }
+            binding.getField().setDouble(target, value);
+            binding.setApplied(Double.doubleToLongBits(value));
+            binding.syncText(textView);
+        }
+    }
+
+    static void setDecimalText(ValueBinding binding, double value, boolean floatPrecision) {
+        TextView textView = (TextView) binding.getView();
+        char[] buffer = binding.getTextBuffer(24);
+        int length = formatDecimal(value, floatPrecision, buffer);
+        if (length != -1) {
+            binding.setText(textView, buffer, length);
+        } else if (floatPrecision) {
+            binding.setText(textView, Float.toString((float) value));
+        } else {
+            binding.setText(textView, Double.toString(value));
+        }
+    }
+
+    static class BooleanTextConverter extends ValueConverter {
+        @Override
+        public boolean toUi(ValueBinding binding, Object target) {
+            boolean value = binding.getField().getBoolean(target);
+            if (binding.isUnchanged(value ? 1 : 0)) {
+                return false;
+            }
+            char[] source = value ? TRUE : FALSE;
+            char[] buffer = binding.getTextBuffer(source.length);
+            System.arraycopy(source, 0, buffer, 0, source.length);
+            binding.setText((TextView) binding.getView(), buffer, source.length);
+            binding.setApplied(value ? 1 : 0);
+            return true;
+        }
+
+        @Override
+        public void toValue(ValueBinding binding, Object target) {
+            TextView textView = (TextView) binding.getView();
+            boolean value = matches(textView.getText(), TRUE);
+            binding.getField().setBoolean(target, value);
+            binding.setApplied(value ? 1 : 0);
+            binding.syncText(textView);
+        }
+
+        /** Like Boolean.parseBoolean: true if the text equals "true", ignoring case. */
+        private static boolean matches(CharSequence text, char[] chars) {
+            if (text == null || text.length() != chars.length) {
+                return false;
+            }
+            for (int i = 0; i < chars.length; i++) {
+                if (Character.toLowerCase(text.charAt(i)) != chars[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static class BooleanCheckedConverter extends ValueConverter {
+        @Override
+        public boolean toUi(ValueBinding binding, Object target) {
+            boolean value = binding.getField().getBoolean(target);
+            CompoundButton button = (CompoundButton) binding.getView();
+            if (binding.isUnchanged(value ? 1 : 0) && button.isChecked() == value) {
+                return false;
+            }
+            button.setChecked(value);
+            binding.setApplied(value ? 1 : 0);
+            return true;
+        }
+
+        @Override
+        public void toValue(ValueBinding binding, Object target) {
+            boolean value = ((CompoundButton) binding.getView()).isChecked();
+            binding.getField().setBoolean(target, value);
+            binding.setApplied(value ? 1 : 0);
+        }
+    }
+
+    /** Sets int fields as image resource IDs. */
+    static class ImageResourceConverter extends ValueConverter {
+        @Override
+        public boolean toUi(ValueBinding binding, Object target) {
+            int resId = binding.getField().getInt(target);
+            if (binding.isUnchanged(resId)) {
+                return false;
+            }
+            ((ImageView) binding.getView()).setImageResource(resId);
+            binding.setApplied(resId);
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.util.Arrays;
+
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Resolves several view IDs in a single pass over the view hierarchy instead of one findViewById traversal per ID.
+ * Like findViewById, the first view in depth-first order wins if an ID is used more than once.
+ * 
+ * @author Markus
+ */
+final class ViewResolver {
+
+    private ViewResolver() {
+    }
+
+    /** @return the given IDs sorted, without duplicates and zero IDs */
+    static int[] toSortedIds(int[] ids) {
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            int id = sorted[i];
+            if (id != 0 && (count == 0 || sorted[count - 1] != id)) {
+                sorted[count++] = id;
+            }
+        }
+        if (count == sorted.length) {
+            return sorted;
+        }
+        int[] result = new int[count];
+        System.arraycopy(sorted, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * @param sortedIds
+     *            as returned by {@link #toSortedIds(int[])}
+     * @return views found for the IDs; IDs without view are missing
+     */
+    static SparseArray<View> resolve(View root, int[] sortedIds) {
+        SparseArray<View> views = new SparseArray<View>(sortedIds.length);
+        if (sortedIds.length > 0) {
+            collect(root, sortedIds, views);
+        }
+        return views;
+    }
+
+    /** @return true if all views were found */
+    private static boolean collect(View view, int[] sortedIds, SparseArray<View> views) {
+        int id = view.getId();
+        if (id != View.NO_ID && Arrays.binarySearch(sortedIds, id) >= 0 && views.indexOfKey(id) < 0) {
+            views.put(id, view);
+            if (views.size() == sortedIds.length) {
+                return true;
+            }
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            int count = group.getChildCount();
+            for (int i = 0; i < count; i++) {
+                if (collect(group.getChildAt(i), sortedIds, views)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Objects of the annotated class are created by the {@link de.greenrobot.inject.ObjectGraph} and kept in the
+ * {@link de.greenrobot.inject.InstanceCache} for the given scope, for expensive helper objects like formatters or
+ * parsers. Unlike singletons, cached objects are released on memory pressure and may be garbage collected once unused.
+ * Cached objects may not depend on activity scoped objects or the Context.
+ * 
+ * @author Markus
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cached {
+    /** Scope shared application wide (default). */
+    String APPLICATION = "";
+    /** Scope per activity class, so a screen entered again reuses the objects; released if an activity is destroyed. */
+    String ACTIVITY = "activity";
+
+    /** {@link #APPLICATION}, {@link #ACTIVITY}, or the name of a custom scope. */
+    String scope() default APPLICATION;
+}
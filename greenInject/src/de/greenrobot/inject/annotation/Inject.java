@@ -15,6 +15,20 @@
  */
 package de.greenrobot.inject.annotation;
 
- @interface Inject {
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field to be injected with an object from the {@link de.greenrobot.inject.ObjectGraph}, or the constructor
+ * the graph uses to create objects of a class. Fields may be declared as Lazy&lt;T&gt; to create the object on first
+ * use. The scope of created objects is given by {@link Singleton} or {@link ActivityScoped} on their class.
+ * 
+ * @author Markus
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.CONSTRUCTOR })
+public @interface Inject {
 
 }
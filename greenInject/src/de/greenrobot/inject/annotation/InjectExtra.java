@@ -20,8 +20,18 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * Injects the Intent extra with the given key. Primitive fields are set using the typed Bundle getters. If the extra
+ * is missing or has another type than the field, the field is set to {@link #defaultValue()}, or keeps its value if
+ * no default is given.
+ * 
+ * @author Markus
+ */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.FIELD)
 public @interface InjectExtra {
     String key();
+
+    /** Primitive, String and CharSequence fields only: default value as text, e.g. "42", "0xff00ff00" or "true". */
+    String defaultValue() default "";
 }
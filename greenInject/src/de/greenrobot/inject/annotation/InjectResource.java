@@ -25,4 +25,13 @@ import java.lang.annotation.Target;
 @Target(ElementType.FIELD)
 public @interface InjectResource {
     int id();
+
+    /** Bitmaps only: width in pixels the bitmap is displayed at; larger bitmaps are subsampled. 0 for no limit. */
+    int maxWidth() default 0;
+
+    /** Bitmaps only: height in pixels the bitmap is displayed at; larger bitmaps are subsampled. 0 for no limit. */
+    int maxHeight() default 0;
+
+    /** Bitmaps only: name of the preferred Bitmap.Config, e.g. "RGB_565"; empty for the default. */
+    String config() default "";
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The field is saved to the instance state Bundle by {@link de.greenrobot.inject.Injector#saveState(Object,
+ * android.os.Bundle)} and restored when injecting with the saved instance state, so state like query results survives
+ * configuration changes without being computed again. Supported are primitives, String, CharSequence, Bundle,
+ * Parcelable, primitive and String arrays, and Serializable types.
+ * 
+ * @author Markus
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface InjectState {
+    /** Key in the Bundle; defaults to the field name. */
+    String key() default "";
+}
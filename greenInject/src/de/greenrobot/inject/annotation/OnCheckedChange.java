@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Invokes the method when the checked state of the CompoundButtons (e.g. CheckBox) changes. The method may have no
+ * parameter or a single boolean parameter receiving the checked state.
+ * 
+ * @author Markus
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface OnCheckedChange {
+    // No int[] until Android 2.2 is minimum requirement, see OnClick
+
+    int id();
+
+    int id2() default 0;
+
+    int id3() default 0;
+
+    int id4() default 0;
+
+    int id5() default 0;
+
+    int id6() default 0;
+
+    int id7() default 0;
+
+    int id8() default 0;
+
+    int id9() default 0;
+
+    int id10() default 0;
+}
@@ -23,6 +23,15 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface OnClick {
+    /** Each click invokes the method, even if previous invocations are still running (default). */
+    int RUN_CONCURRENT = 0;
+
+    /** Clicks are ignored while the method is running in the background. */
+    int RUN_DROP = 1;
+
+    /** Clicks while the method is running in the background result in a single trailing invocation. */
+    int RUN_COALESCE = 2;
+
     // We cannot use int[] until Android 2.2 is minimum requirement due to
     // http://code.google.com/p/android/issues/detail?id=5964
     
@@ -47,4 +56,19 @@ public @interface OnClick {
     int id10() default 0;
 
     boolean newThread() default false;
+
+    /**
+     * Name of an executor registered with {@link de.greenrobot.inject.InjectExecutors#register(String,
+     * java.util.concurrent.Executor)} to run the method with (requires newThread). If empty, the default executor is
+     * used.
+     */
+    String executor() default "";
+
+    /**
+     * What to do with clicks while a background invocation of the method for the same target is still running: one of
+     * {@link #RUN_CONCURRENT}, {@link #RUN_DROP}, or {@link #RUN_COALESCE} (requires newThread). Executors must run
+     * each task they accept or throw; executors created by {@link de.greenrobot.inject.InjectExecutors} may also
+     * discard tasks.
+     */
+    int whileRunning() default RUN_CONCURRENT;
 }
@@ -0,0 +1,1098 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject.processor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a "Foo$$Injector" class for each class Foo using greenInject annotations. Generated injectors assign
+ * fields and call methods directly; at runtime, Injector and ValueBinder use them instead of reflection.
+ * <p>
+ * Classes with private annotated members cannot be accessed by generated code; for those, a warning is printed and
+ * the reflection based injection is used.
+ * <p>
+ * With the option greenInject.index=path/to/assets/greenInject.index, the processor also writes a binary index of
+ * all annotated members (including those of classes without generated injector). At runtime, the index replaces
+ * reading annotations by reflection. Do a full build to update the index; incremental builds may process only some
+ * classes. Eclipse resolves %ROOT% in option values to the workspace root (see greenInjectTest's APT settings).
+ * 
+ * @author Markus
+ */
+@SupportedAnnotationTypes({ InjectProcessor.INJECT_VIEW, InjectProcessor.INJECT_RESOURCE,
+        InjectProcessor.INJECT_EXTRA, InjectProcessor.ON_CLICK, InjectProcessor.ON_LONG_CLICK,
+        InjectProcessor.ON_ITEM_CLICK, InjectProcessor.ON_CHECKED_CHANGE, InjectProcessor.ON_TEXT_CHANGED,
+        InjectProcessor.VALUE, InjectProcessor.INJECT, InjectProcessor.INJECT_STATE })
+@SupportedOptions(InjectProcessor.OPTION_INDEX)
+public class InjectProcessor extends AbstractProcessor {
+    static final String INJECT_VIEW = "de.greenrobot.inject.annotation.InjectView";
+    static final String INJECT_RESOURCE = "de.greenrobot.inject.annotation.InjectResource";
+    static final String INJECT_EXTRA = "de.greenrobot.inject.annotation.InjectExtra";
+    static final String ON_CLICK = "de.greenrobot.inject.annotation.OnClick";
+    static final String ON_LONG_CLICK = "de.greenrobot.inject.annotation.OnLongClick";
+    static final String ON_ITEM_CLICK = "de.greenrobot.inject.annotation.OnItemClick";
+    static final String ON_CHECKED_CHANGE = "de.greenrobot.inject.annotation.OnCheckedChange";
+    static final String ON_TEXT_CHANGED = "de.greenrobot.inject.annotation.OnTextChanged";
+    static final String VALUE = "de.greenrobot.inject.annotation.Value";
+    static final String INJECT = "de.greenrobot.inject.annotation.Inject";
+    static final String INJECT_STATE = "de.greenrobot.inject.annotation.InjectState";
+    static final String ANIMATION = "android.view.animation.Animation";
+
+    /** Path of the metadata index file to write, e.g. the project's assets/greenInject.index. */
+    static final String OPTION_INDEX = "greenInject.index";
+
+    static final String SUFFIX = "$$Injector";
+    static final String LAZY = "de.greenrobot.inject.Lazy";
+
+    private static final String[] ID_NAMES = { "id", "id2", "id3", "id4", "id5", "id6", "id7", "id8", "id9",
+            "id10" };
+
+    private Elements elementUtils;
+    private Types typeUtils;
+    /** Collects the index over all rounds if OPTION_INDEX is set. */
+    private MetadataIndexWriter indexWriter;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        elementUtils = processingEnv.getElementUtils();
+        typeUtils = processingEnv.getTypeUtils();
+
+        Set<TypeElement> targetTypes = new LinkedHashSet<TypeElement>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                Element enclosing = element.getEnclosingElement();
+                // @Inject constructors are used by the ObjectGraph only
+                if (enclosing.getKind() == ElementKind.CLASS && element.getKind() != ElementKind.CONSTRUCTOR) {
+                    targetTypes.add((TypeElement) enclosing);
+                }
+            }
+        }
+        String indexPath = processingEnv.getOptions().get(OPTION_INDEX);
+        if (indexPath != null) {
+            if (indexWriter == null) {
+                indexWriter = new MetadataIndexWriter();
+            }
+            for (TypeElement type : targetTypes) {
+                addIndexEntries(type);
+            }
+            if (roundEnv.processingOver() && !indexWriter.isEmpty()) {
+                writeIndex(indexPath);
+            }
+        }
+        for (TypeElement type : targetTypes) {
+            if (isAccessible(type)) {
+                try {
+                    generateInjector(type);
+                } catch (IOException e) {
+                    error("Could not write generated injector: " + e, type);
+                }
+            }
+        }
+        // The annotations are still read at runtime if no injector was generated, so do not claim them
+        return false;
+    }
+
+    private boolean isAccessible(TypeElement type) {
+        Element element = type;
+        while (element.getKind() == ElementKind.CLASS) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                warning("Private class, using reflection instead of generated injector", type);
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        if (element.getKind() != ElementKind.PACKAGE) {
+            // Local or anonymous class
+            return false;
+        }
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getModifiers().contains(Modifier.PRIVATE)) {
+                for (String annotation : getSupportedAnnotationTypes()) {
+                    if (getAnnotationValues(member, annotation) != null) {
+                        warning("Private member " + member.getSimpleName()
+                                + ", using reflection instead of generated injector", member);
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Adds all annotated members of the type to the index, also if no injector can be generated for it. */
+    private void addIndexEntries(TypeElement type) {
+        String binaryName = elementUtils.getBinaryName(type).toString();
+        indexWriter.startClass(binaryName);
+        try {
+            for (Element member : type.getEnclosedElements()) {
+                ElementKind kind = member.getKind();
+                if (kind == ElementKind.FIELD || kind == ElementKind.METHOD) {
+                    addIndexEntries(binaryName, member);
+                }
+            }
+        } catch (IOException e) {
+            error("Could not write metadata index: " + e, type);
+        }
+    }
+
+    private void addIndexEntries(String binaryName, Element member) throws IOException {
+        String name = member.getSimpleName().toString();
+        String parameterType = "";
+        if (member.getKind() == ElementKind.METHOD) {
+            List<? extends VariableElement> parameters = ((ExecutableElement) member).getParameters();
+            if (!parameters.isEmpty()) {
+                parameterType = getRuntimeTypeName(parameters.get(0).asType());
+            }
+        }
+        Map<String, Object> values = getAnnotationValues(member, INJECT_VIEW);
+        if (values != null) {
+            int[] ids = { (Integer) values.get("id") };
+            indexWriter.addMember(binaryName, MetadataIndexWriter.MEMBER_VIEW, name, ids, "", 0, 0, false, 0, "");
+        }
+        values = getAnnotationValues(member, INJECT_RESOURCE);
+        if (values != null) {
+            int[] ids = { (Integer) values.get("id") };
+            indexWriter.addMember(binaryName, MetadataIndexWriter.MEMBER_RESOURCE, name, ids,
+                    (String) values.get("config"), (Integer) values.get("maxWidth"),
+                    (Integer) values.get("maxHeight"), false, 0, "");
+        }
+        values = getAnnotationValues(member, INJECT_EXTRA);
+        if (values != null) {
+            indexWriter.addMember(binaryName, MetadataIndexWriter.MEMBER_EXTRA, name, new int[0],
+                    (String) values.get("key"), (String) values.get("defaultValue"), 0, 0, false, 0, "");
+        }
+        values = getAnnotationValues(member, INJECT);
+        if (values != null) {
+            indexWriter.addMember(binaryName, MetadataIndexWriter.MEMBER_INJECT, name, new int[0], "", 0, 0, false, 0,
+                    "");
+        }
+        values = getAnnotationValues(member, INJECT_STATE);
+        if (values != null) {
+            indexWriter.addMember(binaryName, MetadataIndexWriter.MEMBER_STATE, name, new int[0],
+                    (String) values.get("key"), 0, 0, false, 0, "");
+        }
+        values = getAnnotationValues(member, VALUE);
+        if (values != null) {
+            int[] ids = { (Integer) values.get("bindTo") };
+            indexWriter.addMember(binaryName, MetadataIndexWriter.MEMBER_VALUE, name, ids, "", 0, 0, false, 0, "");
+        }
+        values = getAnnotationValues(member, ON_CLICK);
+        if (values != null) {
+            indexWriter.addMember(binaryName, MetadataIndexWriter.MEMBER_ON_CLICK, name, toIds(values),
+                    (String) values.get("executor"), 0, 0, (Boolean) values.get("newThread"),
+                    (Integer) values.get("whileRunning"), parameterType);
+        }
+        String[] eventAnnotations = { ON_LONG_CLICK, ON_ITEM_CLICK, ON_CHECKED_CHANGE, ON_TEXT_CHANGED };
+        int[] eventKinds = { MetadataIndexWriter.MEMBER_ON_LONG_CLICK, MetadataIndexWriter.MEMBER_ON_ITEM_CLICK,
+                MetadataIndexWriter.MEMBER_ON_CHECKED_CHANGE, MetadataIndexWriter.MEMBER_ON_TEXT_CHANGED };
+        for (int i = 0; i < eventAnnotations.length; i++) {
+            values = getAnnotationValues(member, eventAnnotations[i]);
+            if (values != null) {
+                indexWriter.addMember(binaryName, eventKinds[i], name, toIds(values), "", 0, 0, false, 0,
+                        parameterType);
+            }
+        }
+    }
+
+    /** @return the name of the erased type as returned by Class.getName() at runtime */
+    private String getRuntimeTypeName(TypeMirror type) {
+        TypeMirror erasure = typeUtils.erasure(type);
+        if (erasure.getKind() == TypeKind.DECLARED) {
+            return elementUtils.getBinaryName((TypeElement) ((DeclaredType) erasure).asElement()).toString();
+        } else if (erasure.getKind() == TypeKind.ARRAY) {
+            return "[" + getDescriptor(((ArrayType) erasure).getComponentType());
+        } else {
+            // Primitive type
+            return erasure.toString();
+        }
+    }
+
+    private String getDescriptor(TypeMirror type) {
+        switch (type.getKind()) {
+        case BOOLEAN:
+            return "Z";
+        case BYTE:
+            return "B";
+        case CHAR:
+            return "C";
+        case SHORT:
+            return "S";
+        case INT:
+            return "I";
+        case LONG:
+            return "J";
+        case FLOAT:
+            return "F";
+        case DOUBLE:
+            return "D";
+        case ARRAY:
+            return "[" + getDescriptor(((ArrayType) type).getComponentType());
+        default:
+            return "L" + getRuntimeTypeName(type) + ";";
+        }
+    }
+
+    private int[] toIds(Map<String, Object> values) {
+        int[] ids = new int[ID_NAMES.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (Integer) values.get(ID_NAMES[i]);
+        }
+        return ids;
+    }
+
+    private void writeIndex(String path) {
+        File file = new File(path);
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            processingEnv.getMessager().printMessage(Kind.ERROR, "Could not create directory for " + path);
+            return;
+        }
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                indexWriter.write(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Kind.ERROR, "Could not write metadata index " + path + ": " + e);
+        }
+    }
+
+    /** Generated source parts of a single injector. */
+    private static class InjectorSource {
+        final String typeName;
+        /** Static members like invokers and accessors. */
+        final List<String> constantLines = new ArrayList<String>();
+        final List<String> fieldLines = new ArrayList<String>();
+        final List<String> extraLines = new ArrayList<String>();
+        final List<String> methodLines = new ArrayList<String>();
+        /** Lines of releaseFields, undoing the view and resource lines of fieldLines. */
+        final List<String> releaseLines = new ArrayList<String>();
+        final List<String> saveStateLines = new ArrayList<String>();
+        final List<String> restoreStateLines = new ArrayList<String>();
+        /** If restoreState casts to a parameterized type. */
+        boolean restoreStateUnchecked;
+        final List<String> valueAccessorNames = new ArrayList<String>();
+        final List<Integer> valueViewIds = new ArrayList<Integer>();
+        /** View IDs bound to methods by annotation name. */
+        final Map<String, Set<Integer>> boundIds = new HashMap<String, Set<Integer>>();
+        final Set<Integer> viewIds = new TreeSet<Integer>();
+        /** Names of BitmapSpec constants by their constructor arguments; in order of declaration. */
+        final Map<String, String> bitmapSpecNames = new LinkedHashMap<String, String>();
+        /** Names of BitmapSpec constants of fields that are not lazy. */
+        final Set<String> decodedBitmapSpecNames = new LinkedHashSet<String>();
+        final Set<Integer> drawableResourceIds = new TreeSet<Integer>();
+
+        InjectorSource(String typeName) {
+            this.typeName = typeName;
+        }
+
+        /** @return a unique name for a static member */
+        String constantName(String prefix, String memberName) {
+            int count = 0;
+            for (String line : constantLines) {
+                if (line.startsWith("private static final")) {
+                    count++;
+                }
+            }
+            return prefix + "_" + count + "_" + memberName;
+        }
+    }
+
+    private void generateInjector(TypeElement type) throws IOException {
+        String packageName = getPackageName(type);
+        String binaryName = elementUtils.getBinaryName(type).toString();
+        String injectorName = binaryName.substring(packageName.length() > 0 ? packageName.length() + 1 : 0) + SUFFIX;
+        InjectorSource source = new InjectorSource(typeUtils.erasure(type.asType()).toString());
+        String typeName = source.typeName;
+
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.FIELD) {
+                addFieldLines((VariableElement) member, source);
+            } else if (member.getKind() == ElementKind.METHOD) {
+                addMethodLines((ExecutableElement) member, source);
+            }
+        }
+        for (Set<Integer> ids : source.boundIds.values()) {
+            source.viewIds.addAll(ids);
+        }
+
+        String qualifiedInjectorName = packageName.length() > 0 ? packageName + "." + injectorName : injectorName;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedInjectorName, type);
+        PrintWriter writer = new PrintWriter(file.openWriter());
+        try {
+            writer.println("// Generated by greenInject. Do not edit.");
+            if (packageName.length() > 0) {
+                writer.println("package " + packageName + ";");
+            }
+            writer.println();
+            writer.println("public class " + injectorName + " implements de.greenrobot.inject.GeneratedInjector<"
+                    + typeName + "> {");
+            writer.println();
+            writer.println("    private static final int[] VIEW_IDS = " + toArrayLiteral(source.viewIds) + ";");
+            writer.println("    private static final int[] VALUE_VIEW_IDS = " + toArrayLiteral(source.valueViewIds)
+                    + ";");
+            writer.println("    private static final int[] DRAWABLE_RESOURCE_IDS = "
+                    + toArrayLiteral(source.drawableResourceIds) + ";");
+            writer.println();
+            if (!source.constantLines.isEmpty()) {
+                printLines(writer, source.constantLines, "    ");
+                writer.println();
+            }
+            // After the spec constants it references
+            writer.println("    private static final de.greenrobot.inject.BitmapSpec[] BITMAP_SPECS = { "
+                    + join(new ArrayList<String>(source.decodedBitmapSpecNames)) + " };");
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public int[] getViewIds() {");
+            writer.println("        return VIEW_IDS;");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public de.greenrobot.inject.BitmapSpec[] getBitmapSpecs() {");
+            writer.println("        return BITMAP_SPECS;");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public int[] getDrawableResourceIds() {");
+            writer.println("        return DRAWABLE_RESOURCE_IDS;");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public void injectFields(de.greenrobot.inject.Injector injector, " + typeName
+                    + " target) {");
+            printLines(writer, source.fieldLines, "        ");
+            printLines(writer, source.extraLines, "        ");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public void bindMethods(de.greenrobot.inject.Injector injector, " + typeName
+                    + " target) {");
+            printLines(writer, source.methodLines, "        ");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public void saveState(" + typeName + " target, android.os.Bundle outState) {");
+            printLines(writer, source.saveStateLines, "        ");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @Override");
+            if (source.restoreStateUnchecked) {
+                writer.println("    @SuppressWarnings(\"unchecked\")");
+            }
+            writer.println("    public void restoreState(" + typeName + " target, android.os.Bundle savedState) {");
+            printLines(writer, source.restoreStateLines, "        ");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public void releaseFields(" + typeName + " target) {");
+            printLines(writer, source.releaseLines, "        ");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public de.greenrobot.inject.FieldAccessor[] getValueAccessors() {");
+            writer.println("        return new de.greenrobot.inject.FieldAccessor[] { "
+                    + join(source.valueAccessorNames) + " };");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public int[] getValueViewIds() {");
+            writer.println("        return VALUE_VIEW_IDS;");
+            writer.println("    }");
+            writer.println();
+            writer.println("}");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void addFieldLines(VariableElement field, InjectorSource source) {
+        String name = field.getSimpleName().toString();
+        String nameLiteral = elementUtils.getConstantExpression(name);
+        TypeMirror fieldType = typeUtils.erasure(field.asType());
+        String fieldTypeName = fieldType.toString();
+
+        boolean lazy = fieldTypeName.equals(LAZY);
+        TypeMirror lazyType = lazy ? getLazyType(field) : null;
+
+        Map<String, Object> values = getAnnotationValues(field, INJECT_VIEW);
+        if (values != null) {
+            String id = toIdLiteral(values.get("id"));
+            if (lazy) {
+                if (lazyType == null || !isAssignable(lazyType, "android.view.View")) {
+                    error("Lazy type must be a View", field);
+                } else {
+                    // Lazy views are not resolved up front
+                    source.fieldLines.add("target." + name + " = injector.lazyView(" + nameLiteral + ", " + id
+                            + ", " + lazyType + ".class);");
+                }
+            } else {
+                source.viewIds.add((Integer) values.get("id"));
+                source.fieldLines.add("target." + name + " = (" + fieldTypeName + ") injector.findView("
+                        + nameLiteral + ", " + id + ");");
+            }
+            source.releaseLines.add("target." + name + " = null;");
+        }
+
+        values = getAnnotationValues(field, INJECT_RESOURCE);
+        if (values != null) {
+            String id = toIdLiteral(values.get("id"));
+            TypeMirror resourceType = lazy ? lazyType : fieldType;
+            boolean bitmap = resourceType != null && isAssignable(resourceType, "android.graphics.Bitmap");
+            String bitmapSpecName = null;
+            if (bitmap) {
+                bitmapSpecName = addBitmapSpec(field, values, source);
+            } else if ((Integer) values.get("maxWidth") != 0 || (Integer) values.get("maxHeight") != 0
+                    || ((String) values.get("config")).length() > 0) {
+                error("Max width/height and config are supported for Bitmaps only", field);
+            }
+            if (lazy) {
+                if (lazyType == null) {
+                    error("Lazy fields must declare a class as type argument", field);
+                } else if (bitmap) {
+                    source.fieldLines.add("target." + name + " = injector.lazyBitmap(" + bitmapSpecName + ");");
+                } else if (isResourceType(lazyType)) {
+                    source.fieldLines.add("target." + name + " = injector.lazyResource(" + lazyType + ".class, "
+                            + id + ");");
+                } else {
+                    error("Cannot inject resource for type " + lazyType, field);
+                }
+            } else if (isAssignable(String.class.getName(), fieldType)
+                    && isAssignable(fieldType, String.class.getName())) {
+                source.fieldLines.add("target." + name + " = injector.getStringResource(" + id + ");");
+            } else if (getPrimitiveResourceName(fieldType) != null) {
+                String primitiveName = getPrimitiveResourceName(fieldType);
+                // The field's value is kept if the resource type cannot be injected into int fields
+                String fallback = primitiveName.equals("Int") ? ", target." + name : "";
+                source.fieldLines.add("target." + name + " = injector.get" + primitiveName + "Resource(" + id
+                        + fallback + ");");
+            } else if (fieldTypeName.equals("java.lang.String[]")) {
+                source.fieldLines.add("target." + name + " = injector.getStringArrayResource(" + id + ");");
+            } else if (fieldTypeName.equals(ANIMATION)) {
+                source.fieldLines.add("target." + name + " = injector.getAnimationResource(" + id + ");");
+            } else if (isAssignable(fieldType, "android.graphics.drawable.Drawable")) {
+                source.drawableResourceIds.add((Integer) values.get("id"));
+                source.fieldLines.add("target." + name + " = (" + fieldTypeName + ") injector.getDrawableResource("
+                        + id + ");");
+            } else if (bitmap) {
+                source.decodedBitmapSpecNames.add(bitmapSpecName);
+                source.fieldLines.add("target." + name + " = injector.getBitmapResource(" + bitmapSpecName + ");");
+            } else {
+                error("Cannot inject resource for type " + fieldTypeName, field);
+            }
+            if (bitmap) {
+                String releaseMethod = lazy ? "releaseLazyBitmap" : "releaseBitmap";
+                source.releaseLines.add("de.greenrobot.inject.Injector." + releaseMethod + "(target." + name + ");");
+            }
+            if (!fieldType.getKind().isPrimitive()) {
+                source.releaseLines.add("target." + name + " = null;");
+            }
+        }
+
+        values = getAnnotationValues(field, INJECT_EXTRA);
+        if (values != null) {
+            addExtraLine(field, (String) values.get("key"), (String) values.get("defaultValue"), source);
+        }
+
+        values = getAnnotationValues(field, INJECT);
+        if (values != null) {
+            if (lazy) {
+                if (lazyType == null) {
+                    error("Lazy fields must declare a class as type argument", field);
+                } else {
+                    source.fieldLines.add("target." + name + " = injector.lazyDependency(" + lazyType + ".class);");
+                }
+            } else {
+                source.fieldLines.add("target." + name + " = injector.getDependency(" + fieldTypeName + ".class);");
+            }
+        }
+
+        values = getAnnotationValues(field, INJECT_STATE);
+        if (values != null) {
+            addStateLines(field, (String) values.get("key"), source);
+        }
+
+        values = getAnnotationValues(field, VALUE);
+        if (values != null) {
+            String accessorName = addAccessorLines(field, source);
+            source.valueAccessorNames.add(accessorName);
+            source.valueViewIds.add((Integer) values.get("bindTo"));
+        }
+    }
+
+    /**
+     * Adds the line injecting the extra using the typed getter; the field keeps its value if the extra is missing and
+     * there is no default value.
+     */
+    private void addExtraLine(VariableElement field, String key, String defaultValue, InjectorSource source) {
+        String name = field.getSimpleName().toString();
+        TypeMirror fieldType = typeUtils.erasure(field.asType());
+        String fallback = "target." + name;
+        if (defaultValue.length() > 0) {
+            fallback = toDefaultLiteral(fieldType, defaultValue);
+            if (fallback == null) {
+                error("Invalid default value \"" + defaultValue + "\" for type " + fieldType, field);
+                return;
+            }
+        }
+        String keyLiteral = elementUtils.getConstantExpression(key);
+        TypeKind kind = fieldType.getKind();
+        if (kind == TypeKind.INT || kind == TypeKind.LONG || kind == TypeKind.BOOLEAN || kind == TypeKind.FLOAT
+                || kind == TypeKind.DOUBLE) {
+            source.extraLines.add("target." + name + " = injector.get" + getBundleTypeName(fieldType) + "Extra("
+                    + keyLiteral + ", " + fallback + ");");
+        } else {
+            source.extraLines.add("target." + name + " = injector.getExtra(" + keyLiteral + ", "
+                    + toCastTypeName(fieldType) + ".class, " + fallback + ");");
+        }
+    }
+
+    /** @return the Java literal of the default value for the type, or null if the type or the value is invalid */
+    private String toDefaultLiteral(TypeMirror type, String value) {
+        try {
+            switch (type.getKind()) {
+            case INT:
+                // Long to allow unsigned hex values like colors
+                return String.valueOf((int) Long.decode(value).longValue());
+            case LONG:
+                return Long.decode(value) + "L";
+            case SHORT:
+                return "(short) " + Short.decode(value);
+            case BYTE:
+                return "(byte) " + Byte.decode(value);
+            case FLOAT:
+                float floatValue = Float.parseFloat(value);
+                return Float.isInfinite(floatValue) || Float.isNaN(floatValue) ? null : floatValue + "f";
+            case DOUBLE:
+                double doubleValue = Double.parseDouble(value);
+                return Double.isInfinite(doubleValue) || Double.isNaN(doubleValue) ? null : doubleValue + "d";
+            case BOOLEAN:
+                return value.equals("true") || value.equals("false") ? value : null;
+            case CHAR:
+                return value.length() == 1 ? elementUtils.getConstantExpression(value.charAt(0)) : null;
+            default:
+                String typeName = type.toString();
+                if (typeName.equals(String.class.getName()) || typeName.equals(CharSequence.class.getName())) {
+                    return elementUtils.getConstantExpression(value);
+                }
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Adds the lines saving and restoring the field using the Bundle methods for its type. */
+    private void addStateLines(VariableElement field, String key, InjectorSource source) {
+        String name = field.getSimpleName().toString();
+        TypeMirror fieldType = typeUtils.erasure(field.asType());
+        String bundleType = getBundleTypeName(fieldType);
+        if (bundleType == null) {
+            error("Cannot save state of type " + fieldType, field);
+            return;
+        }
+        String keyLiteral = elementUtils.getConstantExpression(key.length() > 0 ? key : name);
+        boolean cast = bundleType.equals("Parcelable") || bundleType.equals("Serializable");
+        // Interface types like List are not known to be Serializable
+        boolean serializable = isAssignable(fieldType, "java.io.Serializable");
+        String saveCast = bundleType.equals("Serializable") && !serializable ? "(java.io.Serializable) " : "";
+        source.saveStateLines.add("outState.put" + bundleType + "(" + keyLiteral + ", " + saveCast + "target." + name
+                + ");");
+        String restoreCast = "";
+        if (cast) {
+            // Casting to the declared type (e.g. ArrayList<String>) avoids raw types, but the cast is unchecked
+            TypeMirror declaredType = field.asType();
+            boolean parameterized = declaredType.getKind() == TypeKind.DECLARED
+                    && !((DeclaredType) declaredType).getTypeArguments().isEmpty();
+            if (parameterized && !containsTypeVariable(declaredType)) {
+                restoreCast = "(" + declaredType + ") ";
+                source.restoreStateUnchecked = true;
+            } else {
+                restoreCast = "(" + fieldType + ") ";
+            }
+        }
+        source.restoreStateLines.add("if (savedState.containsKey(" + keyLiteral + ")) {");
+        source.restoreStateLines.add("    target." + name + " = " + restoreCast + "savedState.get" + bundleType + "("
+                + keyLiteral + ");");
+        source.restoreStateLines.add("}");
+    }
+
+    /** @return true if the type or one of its type arguments is a type variable, which the injector cannot name */
+    private boolean containsTypeVariable(TypeMirror type) {
+        if (type.getKind() == TypeKind.TYPEVAR) {
+            return true;
+        } else if (type.getKind() == TypeKind.ARRAY) {
+            return containsTypeVariable(((ArrayType) type).getComponentType());
+        } else if (type.getKind() == TypeKind.DECLARED) {
+            for (TypeMirror typeArgument : ((DeclaredType) type).getTypeArguments()) {
+                if (containsTypeVariable(typeArgument)) {
+                    return true;
+                }
+            }
+        } else if (type.getKind() == TypeKind.WILDCARD) {
+            WildcardType wildcard = (WildcardType) type;
+            TypeMirror bound = wildcard.getExtendsBound();
+            if (bound == null) {
+                bound = wildcard.getSuperBound();
+            }
+            return bound != null && containsTypeVariable(bound);
+        }
+        return false;
+    }
+
+    /**
+     * @return the type part of the Bundle get/put methods for the type (e.g. "Int" or "Parcelable"), or null if Bundles
+     *         cannot hold the type; in sync with BundleAccessors.typeOf
+     */
+    private String getBundleTypeName(TypeMirror type) {
+        TypeKind kind = type.getKind();
+        if (kind.isPrimitive()) {
+            String typeName = type.toString();
+            return Character.toUpperCase(typeName.charAt(0)) + typeName.substring(1);
+        } else if (kind == TypeKind.ARRAY) {
+            TypeMirror componentType = ((ArrayType) type).getComponentType();
+            if (componentType.getKind().isPrimitive()) {
+                return getBundleTypeName(componentType) + "Array";
+            } else if (componentType.toString().equals(String.class.getName())) {
+                return "StringArray";
+            }
+        } else {
+            String typeName = type.toString();
+            if (typeName.equals(String.class.getName())) {
+                return "String";
+            } else if (typeName.equals(CharSequence.class.getName())) {
+                return "CharSequence";
+            } else if (typeName.equals("android.os.Bundle")) {
+                return "Bundle";
+            } else if (isAssignable(type, "android.os.Parcelable")) {
+                return "Parcelable";
+            }
+        }
+        if (isAssignable(type, "java.io.Serializable")) {
+            return "Serializable";
+        }
+        Element element = typeUtils.asElement(type);
+        return element != null && element.getKind() == ElementKind.INTERFACE ? "Serializable" : null;
+    }
+
+    /**
+     * Adds a static BitmapSpec for the decode options, unless an equal one was already added.
+     * 
+     * @return the name of the spec constant
+     */
+    private String addBitmapSpec(VariableElement field, Map<String, Object> values, InjectorSource source) {
+        int maxWidth = (Integer) values.get("maxWidth");
+        int maxHeight = (Integer) values.get("maxHeight");
+        String configName = (String) values.get("config");
+        if (maxWidth < 0 || maxHeight < 0) {
+            error("Max width/height may not be negative", field);
+        }
+        String config = "null";
+        if (configName.length() > 0) {
+            if (!isEnumConstant("android.graphics.Bitmap.Config", configName)) {
+                error("Unknown Bitmap config " + configName, field);
+            }
+            config = "android.graphics.Bitmap.Config." + configName;
+        }
+        String arguments = toIdLiteral(values.get("id")) + ", " + maxWidth + ", " + maxHeight + ", " + config;
+        String specName = source.bitmapSpecNames.get(arguments);
+        if (specName == null) {
+            specName = source.constantName("BITMAP", field.getSimpleName().toString());
+            source.constantLines.add("private static final de.greenrobot.inject.BitmapSpec " + specName
+                    + " = new de.greenrobot.inject.BitmapSpec(" + arguments + ");");
+            source.bitmapSpecNames.put(arguments, specName);
+        }
+        return specName;
+    }
+
+    private boolean isEnumConstant(String enumTypeName, String name) {
+        TypeElement enumType = elementUtils.getTypeElement(enumTypeName);
+        if (enumType == null) {
+            // Cannot check
+            return true;
+        }
+        for (Element member : enumType.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.ENUM_CONSTANT && member.getSimpleName().contentEquals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a static FieldAccessor reading and writing the field directly.
+     * 
+     * @return the name of the accessor constant
+     */
+    private String addAccessorLines(VariableElement field, InjectorSource source) {
+        String name = field.getSimpleName().toString();
+        String accessorName = source.constantName("ACCESSOR", name);
+        TypeMirror fieldType = typeUtils.erasure(field.asType());
+        String fieldTypeName = fieldType.toString();
+        String fieldRef = "((" + source.typeName + ") target)." + name;
+
+        List<String> lines = source.constantLines;
+        lines.add("private static final de.greenrobot.inject.FieldAccessor " + accessorName
+                + " = new de.greenrobot.inject.FieldAccessor() {");
+        lines.add("    @Override");
+        lines.add("    public String getName() {");
+        lines.add("        return " + elementUtils.getConstantExpression(name) + ";");
+        lines.add("    }");
+        lines.add("");
+        lines.add("    @Override");
+        lines.add("    public Class<?> getType() {");
+        lines.add("        return " + fieldTypeName + ".class;");
+        lines.add("    }");
+        lines.add("");
+        lines.add("    @Override");
+        lines.add("    public Object get(Object target) {");
+        lines.add("        return " + fieldRef + ";");
+        lines.add("    }");
+        lines.add("");
+        lines.add("    @Override");
+        lines.add("    public void set(Object target, Object value) {");
+        lines.add("        " + fieldRef + " = (" + toCastTypeName(fieldType) + ") value;");
+        lines.add("    }");
+        TypeKind kind = fieldType.getKind();
+        if (kind == TypeKind.INT || kind == TypeKind.LONG || kind == TypeKind.FLOAT || kind == TypeKind.DOUBLE
+                || kind == TypeKind.BOOLEAN) {
+            String typeSuffix = Character.toUpperCase(fieldTypeName.charAt(0)) + fieldTypeName.substring(1);
+            lines.add("");
+            lines.add("    @Override");
+            lines.add("    public " + fieldTypeName + " get" + typeSuffix + "(Object target) {");
+            lines.add("        return " + fieldRef + ";");
+            lines.add("    }");
+            lines.add("");
+            lines.add("    @Override");
+            lines.add("    public void set" + typeSuffix + "(Object target, " + fieldTypeName + " value) {");
+            lines.add("        " + fieldRef + " = value;");
+            lines.add("    }");
+        }
+        lines.add("};");
+        return accessorName;
+    }
+
+    private void addMethodLines(ExecutableElement method, InjectorSource source) {
+        addOnClickLines(method, source);
+        addEventLines(method, ON_LONG_CLICK, "android.view.View", "bindOnLongClick", source);
+        addEventLines(method, ON_ITEM_CLICK, "int", "bindOnItemClick", source);
+        addEventLines(method, ON_CHECKED_CHANGE, "boolean", "bindOnCheckedChange", source);
+        addEventLines(method, ON_TEXT_CHANGED, "java.lang.CharSequence", "bindOnTextChanged", source);
+    }
+
+    private void addOnClickLines(ExecutableElement method, InjectorSource source) {
+        Map<String, Object> values = getAnnotationValues(method, ON_CLICK);
+        if (values == null) {
+            return;
+        }
+        String name = method.getSimpleName().toString();
+        Boolean invokeWithView = checkParameters(method, "android.view.View");
+        if (invokeWithView == null) {
+            return;
+        }
+        String ids = toBoundIdsLiteral(method, ON_CLICK, values, source);
+        boolean newThread = (Boolean) values.get("newThread");
+        String executorName = (String) values.get("executor");
+        if (executorName.length() > 0 && !newThread) {
+            error("Executor may be set only if newThread is true: " + name, method);
+        }
+        int whileRunning = (Integer) values.get("whileRunning");
+        if (whileRunning < 0 || whileRunning > 2) {
+            error("Illegal whileRunning value " + whileRunning + ": " + name, method);
+        } else if (whileRunning != 0 && !newThread) {
+            error("whileRunning may be set only if newThread is true: " + name, method);
+        }
+        String invokerName = addInvokerLines(method, source);
+        source.methodLines.add("injector.bindOnClickListener(" + invokerName + ", " + invokeWithView + ", "
+                + newThread + ", " + elementUtils.getConstantExpression(executorName) + ", " + whileRunning + ids
+                + ");");
+    }
+
+    private void addEventLines(ExecutableElement method, String annotationName, String argTypeName,
+            String bindMethodName, InjectorSource source) {
+        Map<String, Object> values = getAnnotationValues(method, annotationName);
+        if (values == null) {
+            return;
+        }
+        Boolean invokeWithArg = checkParameters(method, argTypeName);
+        if (invokeWithArg == null) {
+            return;
+        }
+        String ids = toBoundIdsLiteral(method, annotationName, values, source);
+        String invokerName = addInvokerLines(method, source);
+        source.methodLines.add("injector." + bindMethodName + "(" + invokerName + ", " + invokeWithArg + ids + ");");
+    }
+
+    /**
+     * @return true if the method has a single parameter of the given type, false if it has none, or null if the
+     *         parameters are invalid (error reported)
+     */
+    private Boolean checkParameters(ExecutableElement method, String argTypeName) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        if (parameters.isEmpty()) {
+            return false;
+        } else if (parameters.size() == 1
+                && typeUtils.erasure(parameters.get(0).asType()).toString().equals(argTypeName)) {
+            return true;
+        } else {
+            String simpleName = argTypeName.substring(argTypeName.lastIndexOf('.') + 1);
+            error("Method may have no parameter or a single " + simpleName + " parameter only: "
+                    + method.getSimpleName(), method);
+            return null;
+        }
+    }
+
+    /** @return the non-zero IDs of the annotation, each prefixed by ", " */
+    private String toBoundIdsLiteral(ExecutableElement method, String annotationName, Map<String, Object> values,
+            InjectorSource source) {
+        Set<Integer> boundIds = source.boundIds.get(annotationName);
+        if (boundIds == null) {
+            boundIds = new HashSet<Integer>();
+            source.boundIds.put(annotationName, boundIds);
+        }
+        StringBuilder ids = new StringBuilder();
+        for (String idName : ID_NAMES) {
+            int id = (Integer) values.get(idName);
+            if (id != 0) {
+                if (!boundIds.add(id)) {
+                    error("View can be bound to methods only once per event: " + method.getSimpleName(), method);
+                }
+                ids.append(", ").append(toIdLiteral(id));
+            }
+        }
+        return ids.toString();
+    }
+
+    /**
+     * Adds a static MethodInvoker calling the method directly.
+     * 
+     * @return the name of the invoker constant
+     */
+    private String addInvokerLines(ExecutableElement method, InjectorSource source) {
+        String name = method.getSimpleName().toString();
+        String invokerName = source.constantName("INVOKER", name);
+        List<String> invokerLines = source.constantLines;
+        List<? extends VariableElement> parameters = method.getParameters();
+        String callStart = "((" + source.typeName + ") target)." + name + "(";
+        TypeMirror parameterType = parameters.size() == 1 ? typeUtils.erasure(parameters.get(0).asType()) : null;
+        String call;
+        if (parameterType != null) {
+            // Primitives are passed boxed
+            call = callStart + "(" + toCastTypeName(parameterType) + ") arg);";
+        } else {
+            call = callStart + ");";
+        }
+
+        invokerLines.add("private static final de.greenrobot.inject.MethodInvoker " + invokerName
+                + " = new de.greenrobot.inject.MethodInvoker() {");
+        invokerLines.add("    @Override");
+        invokerLines.add("    public String getName() {");
+        invokerLines.add("        return " + elementUtils.getConstantExpression(name) + ";");
+        invokerLines.add("    }");
+        invokerLines.add("");
+        addInvokeLines(method, "Object", call, invokerLines);
+        if (parameterType != null
+                && (parameterType.getKind() == TypeKind.INT || parameterType.getKind() == TypeKind.BOOLEAN)) {
+            // Item positions and checked states are dispatched without boxing
+            invokerLines.add("");
+            addInvokeLines(method, parameterType.toString(), callStart + "arg);", invokerLines);
+        }
+        invokerLines.add("};");
+        return invokerName;
+    }
+
+    private void addInvokeLines(ExecutableElement method, String argTypeName, String call, List<String> invokerLines) {
+        boolean isVoid = method.getReturnType().getKind() == TypeKind.VOID;
+        invokerLines.add("    @Override");
+        invokerLines.add("    public Object invoke(Object target, " + argTypeName + " arg) {");
+        String indent = "        ";
+        if (!method.getThrownTypes().isEmpty()) {
+            invokerLines.add("        try {");
+            indent = "            ";
+        }
+        if (isVoid) {
+            invokerLines.add(indent + call);
+            invokerLines.add(indent + "return null;");
+        } else {
+            invokerLines.add(indent + "return " + call);
+        }
+        if (!method.getThrownTypes().isEmpty()) {
+            invokerLines.add("        } catch (Exception e) {");
+            invokerLines.add("            throw new RuntimeException(e);");
+            invokerLines.add("        }");
+        }
+        invokerLines.add("    }");
+    }
+
+    private Map<String, Object> getAnnotationValues(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+                Map<String, Object> values = new HashMap<String, Object>();
+                Map<? extends ExecutableElement, ? extends AnnotationValue> valueMap = elementUtils
+                        .getElementValuesWithDefaults(mirror);
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : valueMap.entrySet()) {
+                    values.put(entry.getKey().getSimpleName().toString(), entry.getValue().getValue());
+                }
+                return values;
+            }
+        }
+        return null;
+    }
+
+    /** @return the erased type argument of a Lazy field, or null if it is no declared type */
+    private TypeMirror getLazyType(VariableElement field) {
+        TypeMirror type = field.asType();
+        if (type instanceof DeclaredType) {
+            List<? extends TypeMirror> typeArguments = ((DeclaredType) type).getTypeArguments();
+            if (typeArguments.size() == 1 && typeArguments.get(0).getKind() == TypeKind.DECLARED) {
+                return typeUtils.erasure(typeArguments.get(0));
+            }
+        }
+        return null;
+    }
+
+    /** @return the name part of the Injector method for a primitive resource type, or null if not supported */
+    private String getPrimitiveResourceName(TypeMirror type) {
+        switch (type.getKind()) {
+        case INT:
+            return "Int";
+        case BOOLEAN:
+            return "Boolean";
+        case FLOAT:
+            return "Dimension";
+        default:
+            return null;
+        }
+    }
+
+    private boolean isResourceType(TypeMirror type) {
+        String typeName = type.toString();
+        return typeName.equals(String.class.getName()) || typeName.equals("java.lang.String[]")
+                || typeName.equals(ANIMATION)
+                || isAssignable(type, "android.graphics.drawable.Drawable")
+                || isAssignable(type, "android.graphics.Bitmap");
+    }
+
+    private boolean isAssignable(TypeMirror type, String toTypeName) {
+        TypeElement toType = elementUtils.getTypeElement(toTypeName);
+        return toType != null && typeUtils.isAssignable(type, typeUtils.erasure(toType.asType()));
+    }
+
+    private boolean isAssignable(String typeName, TypeMirror toType) {
+        TypeElement type = elementUtils.getTypeElement(typeName);
+        return type != null && typeUtils.isAssignable(typeUtils.erasure(type.asType()), toType);
+    }
+
+    private String getPackageName(TypeElement type) {
+        PackageElement packageElement = elementUtils.getPackageOf(type);
+        return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+    }
+
+    private static String toIdLiteral(Object id) {
+        return "0x" + Integer.toHexString((Integer) id);
+    }
+
+    /** @return the boxed type name for primitives, otherwise the type name */
+    private String toCastTypeName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return typeUtils.boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        } else {
+            return type.toString();
+        }
+    }
+
+    private static String toArrayLiteral(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return "{}";
+        }
+        List<String> literals = new ArrayList<String>();
+        for (Integer id : ids) {
+            literals.add(toIdLiteral(id));
+        }
+        return "{ " + join(literals) + " }";
+    }
+
+    private static String join(List<String> strings) {
+        StringBuilder joined = new StringBuilder();
+        for (String string : strings) {
+            if (joined.length() > 0) {
+                joined.append(", ");
+            }
+            joined.append(string);
+        }
+        return joined.toString();
+    }
+
+    private static void printLines(PrintWriter writer, List<String> lines, String indent) {
+        for (String line : lines) {
+            writer.println(line.length() > 0 ? indent + line : line);
+        }
+    }
+
+    private void warning(String message, Element element) {
+        processingEnv.getMessager().printMessage(Kind.WARNING, message, element);
+    }
+
+    private void error(String message, Element element) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject.processor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes the binary metadata index read by de.greenrobot.inject.MetadataIndex at runtime; see there for the format,
+ * which must be kept in sync.
+ * 
+ * @author Markus
+ */
+class MetadataIndexWriter {
+    static final int MAGIC = 0x67494458;
+    static final int VERSION = 3;
+
+    static final int MEMBER_VIEW = 1;
+    static final int MEMBER_RESOURCE = 2;
+    static final int MEMBER_EXTRA = 3;
+    static final int MEMBER_INJECT = 4;
+    static final int MEMBER_VALUE = 5;
+    static final int MEMBER_STATE = 6;
+    static final int MEMBER_ON_CLICK = 11;
+    static final int MEMBER_ON_LONG_CLICK = 12;
+    static final int MEMBER_ON_ITEM_CLICK = 13;
+    static final int MEMBER_ON_CHECKED_CHANGE = 14;
+    static final int MEMBER_ON_TEXT_CHANGED = 15;
+
+    private static class ClassRecord {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(bytes);
+        int memberCount;
+    }
+
+    /** By binary class name, in order of processing. */
+    private final Map<String, ClassRecord> records = new LinkedHashMap<String, ClassRecord>();
+
+    /** Starts the record of a class, replacing a record written in a previous round. */
+    void startClass(String binaryName) {
+        records.put(binaryName, new ClassRecord());
+    }
+
+    void addMember(String binaryName, int kind, String name, int[] ids, String text, int maxWidth, int maxHeight,
+            boolean newThread, int whileRunning, String parameterType) throws IOException {
+        addMember(binaryName, kind, name, ids, text, "", maxWidth, maxHeight, newThread, whileRunning, parameterType);
+    }
+
+    void addMember(String binaryName, int kind, String name, int[] ids, String text, String defaultValue,
+            int maxWidth, int maxHeight, boolean newThread, int whileRunning, String parameterType) throws IOException {
+        ClassRecord record = records.get(binaryName);
+        DataOutputStream data = record.data;
+        data.writeByte(kind);
+        data.writeUTF(name);
+        data.writeByte(ids.length);
+        for (int id : ids) {
+            data.writeInt(id);
+        }
+        data.writeUTF(text);
+        data.writeUTF(defaultValue);
+        data.writeInt(maxWidth);
+        data.writeInt(maxHeight);
+        data.writeBoolean(newThread);
+        data.writeByte(whileRunning);
+        data.writeUTF(parameterType);
+        record.memberCount++;
+    }
+
+    boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeInt(records.size());
+        for (Map.Entry<String, ClassRecord> entry : records.entrySet()) {
+            ClassRecord record = entry.getValue();
+            data.writeUTF(entry.getKey());
+            data.writeShort(record.memberCount);
+            record.bytes.writeTo(data);
+        }
+        data.flush();
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import android.view.View;
+import de.greenrobot.inject.annotation.OnClick;
+import de.greenrobot.inject.test.R;
+
+public class AccessorsTest extends TestCase {
+
+    static class PrimitiveTarget {
+        private int intValue;
+        private long longValue;
+        private float floatValue;
+        private double doubleValue;
+        private boolean booleanValue;
+        private byte byteValue;
+        private char charValue;
+        private short shortValue;
+
+        private void increment() {
+            intValue++;
+        }
+    }
+
+    /** Private members, so there is no generated injector. */
+    static class ClickTarget {
+        View clickedView;
+
+        @OnClick(id = R.id.button1)
+        private void click(View view) {
+            clickedView = view;
+        }
+    }
+
+    /** Delegates to the reflection based factory and remembers the created accessors. */
+    static class RecordingFactory implements AccessorFactory {
+        final AccessorFactory delegate = new ReflectionAccessorFactory();
+        final List<FieldAccessor> fieldAccessors = new ArrayList<FieldAccessor>();
+        final List<MethodInvoker> methodInvokers = new ArrayList<MethodInvoker>();
+
+        @Override
+        public FieldAccessor createFieldAccessor(Field field) {
+            FieldAccessor accessor = delegate.createFieldAccessor(field);
+            fieldAccessors.add(accessor);
+            return accessor;
+        }
+
+        @Override
+        public MethodInvoker createMethodInvoker(Method method) {
+            MethodInvoker invoker = delegate.createMethodInvoker(method);
+            methodInvokers.add(invoker);
+            return invoker;
+        }
+    }
+
+    private AccessorFactory originalFactory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        originalFactory = Accessors.getFactory();
+        InjectionPlan.plans.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Accessors.setFactory(originalFactory);
+        InjectionPlan.plans.clear();
+        super.tearDown();
+    }
+
+    public void testCustomFactory() {
+        RecordingFactory factory = new RecordingFactory();
+        Accessors.setFactory(factory);
+        InjectionPlan plan = InjectionPlan.forClass(ClickTarget.class);
+        assertEquals(1, factory.methodInvokers.size());
+        MethodInvoker invoker = plan.methodEntries[0].invoker;
+        assertSame(factory.methodInvokers.get(0), invoker);
+        assertEquals("click", invoker.getName());
+
+        ClickTarget target = new ClickTarget();
+        View view = new View(null);
+        invoker.invoke(target, view);
+        assertSame(view, target.clickedView);
+    }
+
+    public void testSetFactoryNull() {
+        try {
+            Accessors.setFactory(null);
+            fail("Should have thrown");
+        } catch (IllegalArgumentException expected) {
+            // OK
+        }
+        assertSame(originalFactory, Accessors.getFactory());
+    }
+
+    public void testNoInvokerCreated() {
+        Accessors.setFactory(new RecordingFactory() {
+            @Override
+            public MethodInvoker createMethodInvoker(Method method) {
+                return null;
+            }
+        });
+        try {
+            InjectionPlan.forClass(ClickTarget.class);
+            fail("Should have thrown");
+        } catch (InjectException expected) {
+            // OK
+        }
+    }
+
+    public void testInvokeWithoutParameter() throws NoSuchMethodException {
+        MethodInvoker invoker = new ReflectionAccessorFactory().createMethodInvoker(PrimitiveTarget.class
+                .getDeclaredMethod("increment"));
+        PrimitiveTarget target = new PrimitiveTarget();
+        // The argument is ignored for methods without parameters
+        invoker.invoke(target, "ignored");
+        invoker.invoke(target, null);
+        assertEquals(2, target.intValue);
+    }
+
+    public void testPrimitiveAccessors() throws NoSuchFieldException {
+        PrimitiveTarget target = new PrimitiveTarget();
+        AccessorFactory factory = new ReflectionAccessorFactory();
+
+        FieldAccessor intAccessor = factory.createFieldAccessor(PrimitiveTarget.class.getDeclaredField("intValue"));
+        intAccessor.setInt(target, 42);
+        assertEquals(42, target.intValue);
+        assertEquals(42, intAccessor.getInt(target));
+        assertEquals(int.class, intAccessor.getType());
+
+        FieldAccessor longAccessor = factory.createFieldAccessor(PrimitiveTarget.class.getDeclaredField("longValue"));
+        longAccessor.setLong(target, 1234567890123L);
+        assertEquals(1234567890123L, longAccessor.getLong(target));
+
+        FieldAccessor floatAccessor = factory.createFieldAccessor(PrimitiveTarget.class.getDeclaredField("floatValue"));
+        floatAccessor.setFloat(target, 1.5f);
+        assertEquals(1.5f, floatAccessor.getFloat(target), 0);
+
+        FieldAccessor doubleAccessor = factory.createFieldAccessor(PrimitiveTarget.class
+                .getDeclaredField("doubleValue"));
+        doubleAccessor.setDouble(target, 2.5);
+        assertEquals(2.5, doubleAccessor.getDouble(target), 0);
+
+        FieldAccessor booleanAccessor = factory.createFieldAccessor(PrimitiveTarget.class
+                .getDeclaredField("booleanValue"));
+        booleanAccessor.setBoolean(target, true);
+        assertTrue(booleanAccessor.getBoolean(target));
+
+        FieldAccessor byteAccessor = factory.createFieldAccessor(PrimitiveTarget.class.getDeclaredField("byteValue"));
+        byteAccessor.setByte(target, (byte) -3);
+        assertEquals(-3, byteAccessor.getByte(target));
+
+        FieldAccessor charAccessor = factory.createFieldAccessor(PrimitiveTarget.class.getDeclaredField("charValue"));
+        charAccessor.setChar(target, 'x');
+        assertEquals('x', charAccessor.getChar(target));
+
+        FieldAccessor shortAccessor = factory.createFieldAccessor(PrimitiveTarget.class
+                .getDeclaredField("shortValue"));
+        shortAccessor.setShort(target, (short) 1000);
+        assertEquals(1000, shortAccessor.getShort(target));
+
+        // Boxed access to primitive fields
+        intAccessor.set(target, 7);
+        assertEquals(Integer.valueOf(7), intAccessor.get(target));
+    }
+
+    public void testPrimitiveAccessorDefaults() {
+        // Custom accessors implementing only get and set still support the typed methods by boxing
+        final Object[] value = new Object[1];
+        FieldAccessor accessor = new FieldAccessor() {
+            @Override
+            public String getName() {
+                return "value";
+            }
+
+            @Override
+            public Class<?> getType() {
+                return Object.class;
+            }
+
+            @Override
+            public Object get(Object target) {
+                return value[0];
+            }
+
+            @Override
+            public void set(Object target, Object newValue) {
+                value[0] = newValue;
+            }
+        };
+        accessor.setInt(null, 3);
+        assertEquals(3, accessor.getInt(null));
+        accessor.setLong(null, 4L);
+        assertEquals(4L, accessor.getLong(null));
+        accessor.setFloat(null, 0.5f);
+        assertEquals(0.5f, accessor.getFloat(null), 0);
+        accessor.setDouble(null, 0.25);
+        assertEquals(0.25, accessor.getDouble(null), 0);
+        accessor.setBoolean(null, true);
+        assertTrue(accessor.getBoolean(null));
+        accessor.setByte(null, (byte) 5);
+        assertEquals(5, accessor.getByte(null));
+        accessor.setChar(null, 'c');
+        assertEquals('c', accessor.getChar(null));
+        accessor.setShort(null, (short) 6);
+        assertEquals(6, accessor.getShort(null));
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import junit.framework.TestCase;
+
+public class InjectedDispatcherTest extends TestCase {
+
+    /** All instances are equal. */
+    static class EqualTarget {
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof EqualTarget;
+        }
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+    }
+
+    public void testForTargetByIdentity() {
+        EqualTarget first = new EqualTarget();
+        EqualTarget second = new EqualTarget();
+        InjectedDispatcher firstDispatcher = new InjectedDispatcher(first, false);
+        InjectedDispatcher secondDispatcher = new InjectedDispatcher(second, false);
+        assertSame(firstDispatcher, InjectedDispatcher.forTarget(first));
+        assertSame(secondDispatcher, InjectedDispatcher.forTarget(second));
+
+        firstDispatcher.unbind();
+        assertNull(InjectedDispatcher.forTarget(first));
+        assertSame(secondDispatcher, InjectedDispatcher.forTarget(second));
+    }
+
+    public void testTypedInvoke() {
+        final int[] position = { -1 };
+        final boolean[] checked = { false };
+        MethodInvoker invoker = new MethodInvoker() {
+            @Override
+            public String getName() {
+                return "typed";
+            }
+
+            @Override
+            public Object invoke(Object target, Object arg) {
+                fail("Boxed " + arg);
+                return null;
+            }
+
+            @Override
+            public Object invoke(Object target, int arg) {
+                position[0] = arg;
+                return null;
+            }
+
+            @Override
+            public Object invoke(Object target, boolean arg) {
+                checked[0] = arg;
+                return null;
+            }
+        };
+        InjectedDispatcher.EventHandler handler = new InjectedDispatcher.EventHandler(invoker, true);
+        handler.invoke(this, 1000);
+        handler.invoke(this, true);
+        assertEquals(1000, position[0]);
+        assertTrue(checked[0]);
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.test.ActivityInstrumentationTestCase2;
+import android.view.View;
+import de.greenrobot.inject.InjectionPlan.FieldEntry;
+import de.greenrobot.inject.InjectionPlan.MethodEntry;
+import de.greenrobot.inject.MetadataIndex.MemberEntry;
+import de.greenrobot.inject.annotation.OnClick;
+import de.greenrobot.inject.annotation.Value;
+import de.greenrobot.inject.test.R;
+import de.greenrobot.inject.test.TestActivity;
+import de.greenrobot.inject.test.TestClickTarget;
+import de.greenrobot.inject.test.TestExtraModel;
+import de.greenrobot.inject.test.TestStateModel;
+
+/** Reads the index written by the annotation processor (see the test project's APT settings) and uses it for plans. */
+public class MetadataIndexTest extends ActivityInstrumentationTestCase2<TestActivity> {
+
+    static class OverloadTarget {
+        String savedText;
+        View savedView;
+        /** Private, so there is no generated injector and ValueBinder uses the index. */
+        @Value(bindTo = R.id.editText1)
+        private String text;
+
+        void onSave(String text) {
+            savedText = text;
+        }
+
+        @OnClick(id = R.id.button1)
+        void onSave(View view) {
+            savedView = view;
+        }
+    }
+
+    public MetadataIndexTest() {
+        super("de.greenrobot.inject.test", TestActivity.class);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        MetadataIndex.set(null);
+        InjectionPlan.plans.clear();
+        ValueBinder.valuesForClass.clear();
+        super.tearDown();
+    }
+
+    public void testIndexedPlansMatchScannedPlans() throws IOException {
+        Map<String, MemberEntry[]> index = readIndex();
+        Class<?>[] classes = { TestActivity.class, TestClickTarget.class, TestStateModel.class, TestExtraModel.class,
+                OverloadTarget.class };
+        for (Class<?> clazz : classes) {
+            assertNotNull(clazz.getName(), index.get(clazz.getName()));
+
+            MetadataIndex.set(new HashMap<String, MemberEntry[]>());
+            InjectionPlan.plans.clear();
+            List<String> scanned = describe(InjectionPlan.forClass(clazz));
+
+            MetadataIndex.set(index);
+            InjectionPlan.plans.clear();
+            List<String> indexed = describe(InjectionPlan.forClass(clazz));
+            assertFalse(indexed.isEmpty());
+            assertEquals(scanned, indexed);
+        }
+    }
+
+    public void testOverloadedMethod() throws IOException {
+        MetadataIndex.set(readIndex());
+        InjectionPlan plan = InjectionPlan.forClass(OverloadTarget.class);
+        assertEquals(1, plan.methodEntries.length);
+        MethodEntry entry = plan.methodEntries[0];
+        assertTrue(entry.invokeWithArg);
+
+        OverloadTarget target = new OverloadTarget();
+        View button = getActivity().findViewById(R.id.button1);
+        entry.invoker.invoke(target, button);
+        assertSame(button, target.savedView);
+        assertNull(target.savedText);
+
+        ValueBinder.ClassValues values = ValueBinder.prepareClass(OverloadTarget.class);
+        assertEquals(1, values.fields.size());
+        assertEquals("text", values.fields.get(0).getName());
+    }
+
+    public void testOutOfDateIndex() {
+        Map<String, MemberEntry[]> index = new HashMap<String, MemberEntry[]>();
+        // The method's parameter type changed and a @Value field was renamed since the index was written
+        MemberEntry method = new MemberEntry(MetadataIndex.METHOD_EVENT_OFFSET + InjectionPlan.EVENT_CLICK, "onSave",
+                new int[] { R.id.button1 }, "", 0, 0, false, OnClick.RUN_CONCURRENT, Integer.class.getName());
+        MemberEntry value = new MemberEntry(MetadataIndex.MEMBER_VALUE, "oldText", new int[] { R.id.editText1 }, "",
+                0, 0, false, 0, "");
+        index.put(OverloadTarget.class.getName(), new MemberEntry[] { method, value });
+        MetadataIndex.set(index);
+
+        // Scanned instead
+        InjectionPlan plan = InjectionPlan.forClass(OverloadTarget.class);
+        assertEquals(1, plan.methodEntries.length);
+        assertTrue(plan.methodEntries[0].invokeWithArg);
+        ValueBinder.ClassValues values = ValueBinder.prepareClass(OverloadTarget.class);
+        assertEquals(1, values.fields.size());
+        assertEquals("text", values.fields.get(0).getName());
+        assertEquals(Arrays.asList(R.id.editText1), values.viewIds);
+    }
+
+    private Map<String, MemberEntry[]> readIndex() throws IOException {
+        InputStream in = getActivity().getAssets().open(MetadataIndex.ASSET_NAME);
+        try {
+            return MetadataIndex.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** @return sorted descriptions of all entries, as the index and reflection may list members in different order */
+    private List<String> describe(InjectionPlan plan) {
+        List<String> descriptions = new ArrayList<String>();
+        for (FieldEntry entry : plan.fieldEntries) {
+            BitmapSpec spec = entry.bitmapSpec;
+            String specDescription = "";
+            if (spec != null) {
+                specDescription = spec.getMaxWidth() + "x" + spec.getMaxHeight() + " " + spec.getConfig();
+            }
+            descriptions.add(entry.accessor.getName() + " " + entry.kind + " " + entry.id + " " + entry.resourceKind
+                    + " " + entry.key + " " + entry.lazyType + " " + specDescription + " " + entry.bundleType + " "
+                    + entry.defaultValue);
+        }
+        for (MethodEntry entry : plan.methodEntries) {
+            descriptions.add(entry.invoker.getName() + "() " + entry.event + " " + Arrays.toString(entry.ids) + " "
+                    + entry.invokeWithArg + " " + entry.invokeInNewThread + " " + entry.executorName + " "
+                    + entry.whileRunning);
+        }
+        Collections.sort(descriptions);
+        return descriptions;
+    }
+
+}
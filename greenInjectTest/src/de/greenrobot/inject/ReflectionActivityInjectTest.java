@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import de.greenrobot.inject.test.ActivityInjectTest;
+
+/** Runs all tests of {@link ActivityInjectTest} with reflection instead of the generated injectors. */
+public class ReflectionActivityInjectTest extends ActivityInjectTest {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        GeneratedInjectors.lookupEnabled = false;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        GeneratedInjectors.lookupEnabled = true;
+        super.tearDown();
+    }
+
+    @Override
+    protected boolean usesGeneratedInjectors() {
+        return false;
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import junit.framework.TestCase;
+
+public class ValueConvertersTest extends TestCase {
+
+    public void testFormatDecimalLikeToString() {
+        float[] floats = { 0f, -0f, 1f, 2.5f, -0.1f, 0.001f, 123.456f, 9999999f, 1234.5677f };
+        for (float value : floats) {
+            assertEquals(Float.toString(value), formatDecimal(value, true));
+        }
+        double[] doubles = { 0, -0d, 1, 2.5, -0.1, 0.001, 123.456, 9999999.5, 1234.5678901234 };
+        for (double value : doubles) {
+            assertEquals(Double.toString(value), formatDecimal(value, false));
+        }
+    }
+
+    public void testFormatDecimalUnsupported() {
+        char[] buffer = new char[24];
+        assertEquals(-1, ValueConverters.formatDecimal(1e7, false, buffer));
+        assertEquals(-1, ValueConverters.formatDecimal(0.0001, false, buffer));
+        assertEquals(-1, ValueConverters.formatDecimal(Double.NaN, false, buffer));
+        assertEquals(-1, ValueConverters.formatDecimal(Double.POSITIVE_INFINITY, false, buffer));
+    }
+
+    private String formatDecimal(double value, boolean floatPrecision) {
+        char[] buffer = new char[24];
+        int length = ValueConverters.formatDecimal(value, floatPrecision, buffer);
+        assertTrue(length > 0);
+        return new String(buffer, 0, length);
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject;
+
+import java.util.Arrays;
+
+import android.app.Activity;
+import android.content.Context;
+import android.test.ActivityInstrumentationTestCase2;
+import android.test.UiThreadTest;
+import android.util.SparseArray;
+import android.view.View;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+import de.greenrobot.inject.annotation.Value;
+import de.greenrobot.inject.test.R;
+import de.greenrobot.inject.test.TestActivity;
+
+public class ViewResolverTest extends ActivityInstrumentationTestCase2<TestActivity> {
+
+    static class ValueModel {
+        @Value(bindTo = R.id.textView1)
+        String text;
+        @Value(bindTo = R.id.button1)
+        String buttonText;
+        @Value(bindTo = R.id.editText1)
+        String editText;
+    }
+
+    /** Counts the views that were not resolved by the single pass and thus looked up by findViewById. */
+    static class CountingValueBinder extends ValueBinder {
+        int findViewCount;
+
+        CountingValueBinder(Activity activity, Object target) {
+            super(activity, target);
+        }
+
+        @Override
+        protected View findView(String memberName, int viewId) {
+            findViewCount++;
+            return super.findView(memberName, viewId);
+        }
+    }
+
+    /** Hides its children from ViewResolver (but not from findViewById, which does not call getChildCount). */
+    static class HidingLayout extends FrameLayout {
+        HidingLayout(Context context) {
+            super(context);
+        }
+
+        @Override
+        public int getChildCount() {
+            return 0;
+        }
+    }
+
+    public ViewResolverTest() {
+        super("de.greenrobot.inject.test", TestActivity.class);
+    }
+
+    public void testToSortedIds() {
+        assertTrue(Arrays.equals(new int[] { 1, 2, 5 }, ViewResolver.toSortedIds(new int[] { 5, 0, 2, 5, 1 })));
+        assertEquals(0, ViewResolver.toSortedIds(new int[] { 0, 0 }).length);
+    }
+
+    public void testDuplicateIds() {
+        Context context = getActivity();
+        LinearLayout root = new LinearLayout(context);
+        LinearLayout group = new LinearLayout(context);
+        TextView nested = newTextView(context, 1);
+        group.addView(nested);
+        root.addView(group);
+        root.addView(newTextView(context, 1));
+        TextView other = newTextView(context, 2);
+        root.addView(other);
+
+        SparseArray<View> views = ViewResolver.resolve(root, ViewResolver.toSortedIds(new int[] { 2, 1 }));
+        assertEquals(2, views.size());
+        // Like findViewById, the first view in depth-first order wins
+        assertSame(nested, views.get(1));
+        assertSame(root.findViewById(1), views.get(1));
+        assertSame(other, views.get(2));
+    }
+
+    public void testMissingIds() {
+        Context context = getActivity();
+        LinearLayout root = new LinearLayout(context);
+        TextView textView = newTextView(context, 1);
+        root.addView(textView);
+
+        SparseArray<View> views = ViewResolver.resolve(root, new int[] { 1, 3 });
+        assertEquals(1, views.size());
+        assertSame(textView, views.get(1));
+        assertNull(views.get(3));
+        assertEquals(0, ViewResolver.resolve(root, new int[0]).size());
+    }
+
+    @UiThreadTest
+    public void testValueBinderSinglePass() {
+        TestActivity activity = getActivity();
+        ValueModel model = new ValueModel();
+        model.text = "text";
+        CountingValueBinder binder = new CountingValueBinder(activity, model);
+        binder.refreshUiViews();
+        assertEquals(0, binder.findViewCount);
+
+        binder.valuesToUi();
+        assertEquals("text", ((TextView) activity.findViewById(R.id.textView1)).getText().toString());
+    }
+
+    @UiThreadTest
+    public void testValueBinderFallsBackToFindViewById() {
+        TestActivity activity = getActivity();
+        LinearLayout root = new LinearLayout(activity);
+        root.addView(newTextView(activity, R.id.textView1));
+        EditText editText = new EditText(activity);
+        editText.setId(R.id.editText1);
+        root.addView(editText);
+        HidingLayout hidingLayout = new HidingLayout(activity);
+        Button button = new Button(activity);
+        button.setId(R.id.button1);
+        hidingLayout.addView(button);
+        root.addView(hidingLayout);
+        activity.setContentView(root);
+
+        ValueModel model = new ValueModel();
+        model.buttonText = "button";
+        CountingValueBinder binder = new CountingValueBinder(activity, model);
+        binder.refreshUiViews();
+        assertEquals(1, binder.findViewCount);
+
+        binder.valuesToUi();
+        assertEquals("button", button.getText().toString());
+    }
+
+    private TextView newTextView(Context context, int id) {
+        TextView textView = new TextView(context);
+        textView.setId(id);
+        return textView;
+    }
+
+}
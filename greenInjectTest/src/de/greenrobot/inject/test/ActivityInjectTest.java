@@ -15,23 +15,56 @@
  */
 package de.greenrobot.inject.test;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import android.content.Intent;
+import android.content.res.Configuration;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Bundle;
 import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
 import android.test.ActivityInstrumentationTestCase2;
 import android.test.UiThreadTest;
 import android.view.View;
+import android.view.animation.Animation;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.TextView;
+import de.greenrobot.inject.AggregatingMetrics;
+import de.greenrobot.inject.BitmapPool;
+import de.greenrobot.inject.BitmapSpec;
+import de.greenrobot.inject.InjectException;
+import de.greenrobot.inject.InjectExecutors;
+import de.greenrobot.inject.InjectionMetrics;
 import de.greenrobot.inject.Injector;
+import de.greenrobot.inject.InstanceCache;
+import de.greenrobot.inject.LatencyHistogram;
+import de.greenrobot.inject.ObjectGraph;
+import de.greenrobot.inject.ResourceCache;
+import de.greenrobot.inject.ValueBinder;
 
 public class ActivityInjectTest extends ActivityInstrumentationTestCase2<TestActivity> {
     private final boolean methodTracing = false;
+    private final List<Runnable> testExecutorTasks = new ArrayList<Runnable>();
+    private AggregatingMetrics metrics;
 
     public ActivityInjectTest() {
         super("de.greenrobot.inject.test", TestActivity.class);
@@ -39,7 +72,14 @@ public class ActivityInjectTest extends ActivityInstrumentationTestCase2<TestAct
 
     protected void setUp() throws Exception {
         super.setUp();
-        Injector.LOG_PERFORMANCE = true;
+        metrics = new AggregatingMetrics();
+        Injector.setMetrics(metrics);
+        InjectExecutors.register("test", new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                testExecutorTasks.add(command);
+            }
+        });
         System.gc();
         if (methodTracing) {
             Debug.startMethodTracing(getName());
@@ -51,6 +91,8 @@ public class ActivityInjectTest extends ActivityInstrumentationTestCase2<TestAct
         if (methodTracing) {
             Debug.stopMethodTracing();
         }
+        metrics.log();
+        Injector.setMetrics(null);
         System.gc();
         super.tearDown();
     }
@@ -70,6 +112,144 @@ public class ActivityInjectTest extends ActivityInstrumentationTestCase2<TestAct
         assertEquals(drawable.getBitmap().getHeight(), activity.iconBitmap.getHeight());
     }
 
+    /** Overridden by tests running with reflection instead of the generated injectors. */
+    protected boolean usesGeneratedInjectors() {
+        return true;
+    }
+
+    public void testGeneratedInjectorsPresent() throws ClassNotFoundException {
+        // Fails if the test project is built without the annotation processor (see .factorypath); all tests also run
+        // with reflection (see ReflectionActivityInjectTest)
+        Class.forName(TestActivity.class.getName() + "$$Injector");
+        Class.forName(TestViewModel.class.getName() + "$$Injector");
+        try {
+            Class.forName(TestStateModel.class.getName() + "$$Injector");
+            fail("Private members cannot be injected by generated code");
+        } catch (ClassNotFoundException expected) {
+            // OK
+        }
+    }
+
+    public void testInjectBitmapSubsampled() {
+        TestActivity activity = getActivity();
+        Injector.injectInto(activity);
+        Bitmap small = activity.smallIconBitmap;
+        assertTrue(small.getWidth() >= 8);
+        assertTrue(small.getHeight() >= 8);
+        assertTrue(small.getWidth() < activity.iconBitmap.getWidth());
+    }
+
+    public void testBitmapPool() {
+        Resources resources = getActivity().getResources();
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, R.drawable.icon, bounds);
+        boolean scaled = bounds.inDensity != bounds.inTargetDensity;
+        Bitmap expected = BitmapFactory.decodeResource(resources, R.drawable.icon);
+
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap pooled = Bitmap.createBitmap(bounds.outWidth, bounds.outHeight, Bitmap.Config.ARGB_8888);
+        pool.put(pooled);
+        BitmapPool.setDefault(pool);
+        try {
+            Bitmap bitmap = new BitmapSpec(R.drawable.icon).decode(resources);
+            assertEquals(expected.getWidth(), bitmap.getWidth());
+            assertEquals(expected.getHeight(), bitmap.getHeight());
+            if (Build.VERSION.SDK_INT >= 11 && !scaled) {
+                assertSame(pooled, bitmap);
+                assertEquals(0, pool.size());
+            } else {
+                // Scaled resources are decoded without reuse
+                assertNotSame(pooled, bitmap);
+                assertTrue(pool.size() > 0);
+            }
+        } finally {
+            BitmapPool.setDefault(null);
+        }
+    }
+
+    public void testInjectParallel() {
+        TestActivity activity = getActivity();
+        new Injector(activity).injectAllParallel(10000);
+        assertEquals(activity.getString(R.string.app_name), activity.app_name);
+        assertNotNull(activity.icon);
+        assertNotNull(activity.iconBitmap);
+        assertSame(activity.textViewReference, activity.textView);
+    }
+
+    public void testInjectAsync() throws InterruptedException {
+        final TestActivity activity = getActivity();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Thread[] callbackThread = new Thread[1];
+        new Injector(activity).injectAllAsync(new Runnable() {
+            @Override
+            public void run() {
+                callbackThread[0] = Thread.currentThread();
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertSame(Looper.getMainLooper().getThread(), callbackThread[0]);
+        assertNotNull(activity.icon);
+        assertNotNull(activity.iconBitmap);
+    }
+
+    public void testInjectLazy() {
+        TestActivity activity = getActivity();
+        Injector.injectInto(activity);
+        assertFalse(activity.lazyIconBitmap.isCreated());
+        assertFalse(activity.lazyTextView.isCreated());
+
+        Bitmap bitmap = activity.lazyIconBitmap.get();
+        assertEquals(activity.iconBitmap.getHeight(), bitmap.getHeight());
+        assertSame(bitmap, activity.lazyIconBitmap.get());
+        assertTrue(activity.lazyIconBitmap.isCreated());
+
+        assertSame(activity.textViewReference, activity.lazyTextView.get());
+    }
+
+    public void testInjectResourceCached() {
+        TestActivity activity = getActivity();
+        ResourceCache cache = new ResourceCache(1024 * 1024);
+        ResourceCache.setDefault(cache);
+        try {
+            Injector.injectInto(activity);
+            Bitmap bitmap = activity.iconBitmap;
+            Injector.injectInto(activity);
+            assertSame(bitmap, activity.iconBitmap);
+            assertTrue(cache.hitCount() > 0);
+
+            cache.trimMemory(ResourceCache.TRIM_MEMORY_MODERATE);
+            assertEquals(0, cache.size());
+            Injector.injectInto(activity);
+            assertNotSame(bitmap, activity.iconBitmap);
+        } finally {
+            ResourceCache.setDefault(new ResourceCache(Runtime.getRuntime().maxMemory() / 8));
+        }
+    }
+
+    public void testResourceCacheConfigurationChanged() {
+        Resources resources = getActivity().getResources();
+        ResourceCache cache = new ResourceCache(1024 * 1024);
+        String appName = cache.getString(resources, R.string.app_name);
+        assertSame(appName, cache.getString(resources, R.string.app_name));
+        assertEquals(1, cache.missCount());
+
+        Configuration rotated = new Configuration(resources.getConfiguration());
+        rotated.orientation = rotated.orientation == Configuration.ORIENTATION_LANDSCAPE
+                ? Configuration.ORIENTATION_PORTRAIT : Configuration.ORIENTATION_LANDSCAPE;
+        Resources rotatedResources = new Resources(resources.getAssets(), resources.getDisplayMetrics(), rotated);
+        cache.getString(rotatedResources, R.string.app_name);
+        assertEquals(2, cache.missCount());
+        // Both share the AssetManager, which the new Resources configured for the rotated configuration
+        resources.updateConfiguration(resources.getConfiguration(), resources.getDisplayMetrics());
+
+        cache.onConfigurationChanged(rotated);
+        assertEquals(0, cache.size());
+        cache.getString(resources, R.string.app_name);
+        assertEquals(3, cache.missCount());
+    }
+
     @UiThreadTest
     public void testClick() {
         TestActivity activity = getActivity();
@@ -80,6 +260,79 @@ public class ActivityInjectTest extends ActivityInstrumentationTestCase2<TestAct
         assertTrue(activity.button1Clicked);
     }
 
+    @UiThreadTest
+    public void testWeakTargetReference() {
+        TestActivity activity = getActivity();
+        TestClickTarget target = new TestClickTarget();
+        Injector injector = new Injector(activity, target);
+        injector.setWeakTargetReference(true);
+        injector.bindMethods();
+        View button = activity.findViewById(R.id.button1);
+        assertTrue(button.performClick());
+        assertEquals(1, target.clickCount);
+        try {
+            injector.setWeakTargetReference(false);
+            fail("Methods already bound");
+        } catch (InjectException expected) {
+            // OK
+        }
+
+        WeakReference<TestClickTarget> targetReference = new WeakReference<TestClickTarget>(target);
+        target = null;
+        injector = null;
+        for (int i = 0; i < 10 && targetReference.get() != null; i++) {
+            System.gc();
+        }
+        // The button's listener does not keep the target
+        assertNull(targetReference.get());
+        assertTrue(button.performClick());
+    }
+
+    @UiThreadTest
+    public void testRelease() {
+        TestActivity activity = getActivity();
+        Injector injector = Injector.injectInto(activity);
+        Bitmap iconBitmap = activity.iconBitmap;
+        assertNotNull(activity.textView);
+        assertNotNull(iconBitmap);
+
+        injector.release();
+        assertNull(activity.textView);
+        assertNull(activity.lazyTextView);
+        assertNull(activity.app_name);
+        assertNull(activity.iconBitmap);
+        assertNull(activity.lazyIconBitmap);
+        // Shared by the ResourceCache
+        assertFalse(iconBitmap.isRecycled());
+        View button = activity.findViewById(R.id.button1);
+        assertFalse(button.performClick());
+        assertFalse(activity.button1Clicked);
+
+        Injector.injectInto(activity);
+        assertTrue(button.performClick());
+        assertTrue(activity.button1Clicked);
+    }
+
+    @UiThreadTest
+    public void testReleaseTarget() {
+        ResourceCache defaultCache = ResourceCache.getDefault();
+        ResourceCache.setDefault(new ResourceCache(0));
+        try {
+            TestActivity activity = getActivity();
+            Injector.injectInto(activity);
+            Bitmap smallIconBitmap = activity.smallIconBitmap;
+
+            Injector.release(activity);
+            assertNull(activity.smallIconBitmap);
+            // Not cached, so owned by the activity
+            assertTrue(smallIconBitmap.isRecycled());
+            assertFalse(activity.findViewById(R.id.button1).performClick());
+            assertFalse(activity.button1Clicked);
+        } finally {
+            ResourceCache.setDefault(defaultCache);
+        }
+    }
+
     @UiThreadTest
     public void testClickTwoViews() {
         TestActivity activity = getActivity();
@@ -122,6 +375,210 @@ public class ActivityInjectTest extends ActivityInstrumentationTestCase2<TestAct
 
     }
 
+    @UiThreadTest
+    public void testClickNamedExecutor() {
+        TestActivity activity = getActivity();
+        Injector.injectInto(activity);
+        assertTrue(activity.findViewById(R.id.button6).performClick());
+        assertEquals(1, testExecutorTasks.size());
+        assertEquals(0, activity.clickCount);
+
+        testExecutorTasks.get(0).run();
+        assertEquals(1, activity.clickCount);
+    }
+
+    @UiThreadTest
+    public void testClickCoalesced() {
+        TestActivity activity = getActivity();
+        Injector.injectInto(activity);
+        View button = activity.findViewById(R.id.button7);
+        assertTrue(button.performClick());
+        assertTrue(button.performClick());
+        assertTrue(button.performClick());
+        assertEquals(1, testExecutorTasks.size());
+
+        // Initial run plus one trailing run for the clicks while running
+        testExecutorTasks.get(0).run();
+        assertEquals(2, activity.clickCount);
+
+        assertTrue(button.performClick());
+        assertEquals(2, testExecutorTasks.size());
+    }
+
+    public void testClickDropped() {
+        TestActivity activity = getActivity();
+        TestSingleFlightTarget target = new TestSingleFlightTarget();
+        ThreadPoolExecutor discardExecutor = registerDiscardExecutor();
+        try {
+            Injector.inject(activity, target);
+        } finally {
+            InjectExecutors.unregister("discard");
+            discardExecutor.shutdown();
+        }
+        final View button = activity.findViewById(R.id.button1);
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(button.performClick());
+                assertTrue(button.performClick());
+            }
+        });
+        assertEquals(1, testExecutorTasks.size());
+
+        // No trailing run for the clicks while running
+        testExecutorTasks.get(0).run();
+        assertEquals(1, target.dropCount.get());
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(button.performClick());
+            }
+        });
+        assertEquals(2, testExecutorTasks.size());
+    }
+
+    public void testClickDiscardedByExecutor() throws Exception {
+        TestActivity activity = getActivity();
+        TestSingleFlightTarget target = new TestSingleFlightTarget();
+        ThreadPoolExecutor executor = registerDiscardExecutor();
+        try {
+            Injector.inject(activity, target);
+            final CountDownLatch blockedLatch = new CountDownLatch(1);
+            // Occupy the single thread and fill the queue, so the click's task is discarded
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        blockedLatch.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            final CountDownLatch drainedLatch = new CountDownLatch(1);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    drainedLatch.countDown();
+                }
+            });
+            final View button = activity.findViewById(R.id.button2);
+            Runnable click = new Runnable() {
+                @Override
+                public void run() {
+                    assertTrue(button.performClick());
+                }
+            };
+            runOnMainSync(click);
+            blockedLatch.countDown();
+            assertTrue(drainedLatch.await(5, TimeUnit.SECONDS));
+            assertEquals(0, target.discardCount.get());
+
+            // The discarded task does not block further clicks
+            runOnMainSync(click);
+            assertTrue(target.discardLatch.await(5, TimeUnit.SECONDS));
+            assertEquals(1, target.discardCount.get());
+        } finally {
+            InjectExecutors.unregister("discard");
+            executor.shutdown();
+        }
+    }
+
+    public void testClickCoalescedWhileThreadStarting() throws Exception {
+        TestActivity activity = getActivity();
+        TestSingleFlightTarget target = new TestSingleFlightTarget();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        // The first task is handed to the new thread directly and never queued
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread() {
+                            @Override
+                            public void run() {
+                                try {
+                                    startLatch.await();
+                                } catch (InterruptedException e) {
+                                    throw new RuntimeException(e);
+                                }
+                                runnable.run();
+                            }
+                        };
+                    }
+                });
+        InjectExecutors.register("discard", executor);
+        try {
+            Injector.inject(activity, target);
+            final View button = activity.findViewById(R.id.button3);
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    assertTrue(button.performClick());
+                    // Coalesced, because the first task is still pending
+                    assertTrue(button.performClick());
+                }
+            });
+            startLatch.countDown();
+            // Queued behind the first task, which runs again for the coalesced click before finishing
+            final CountDownLatch doneLatch = new CountDownLatch(1);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    doneLatch.countDown();
+                }
+            });
+            assertTrue(doneLatch.await(5, TimeUnit.SECONDS));
+            assertEquals(2, target.coalesceCount.get());
+        } finally {
+            InjectExecutors.unregister("discard");
+            executor.shutdown();
+        }
+    }
+
+    private ThreadPoolExecutor registerDiscardExecutor() {
+        ThreadPoolExecutor executor = InjectExecutors.newBoundedExecutor("discard", 1, 1,
+                new ThreadPoolExecutor.DiscardPolicy());
+        InjectExecutors.register("discard", executor);
+        return executor;
+    }
+
+    private void runOnMainSync(Runnable runnable) {
+        getInstrumentation().runOnMainSync(runnable);
+    }
+
+    @UiThreadTest
+    public void testLongClick() {
+        TestActivity activity = getActivity();
+        Injector.injectInto(activity);
+        View button = activity.findViewById(R.id.button2);
+        assertTrue(button.performLongClick());
+        assertSame(button, activity.longClickedView);
+
+        // Click and long click share the dispatcher
+        assertTrue(button.performClick());
+        assertSame(button, activity.clickedView);
+    }
+
+    @UiThreadTest
+    public void testTextChanged() {
+        TestActivity activity = getActivity();
+        Injector.injectInto(activity);
+        EditText editText = (EditText) activity.findViewById(R.id.editText1);
+        editText.setText("tiger");
+        assertEquals("tiger", activity.changedText);
+    }
+
+    @UiThreadTest
+    public void testCheckedChange() {
+        TestActivity activity = getActivity();
+        TestCheckedTarget target = new TestCheckedTarget();
+        Injector.inject(activity, target);
+        CheckBox checkBox = (CheckBox) activity.findViewById(R.id.checkBox1);
+        checkBox.setChecked(!checkBox.isChecked());
+        assertEquals(1, target.changeCount);
+        assertEquals(checkBox.isChecked(), target.checked);
+    }
+
     @UiThreadTest
     public void testValue() {
         TestActivity activity = getActivity();
@@ -193,6 +650,395 @@ public class ActivityInjectTest extends ActivityInstrumentationTestCase2<TestAct
         }
     }
 
+    @UiThreadTest
+    public void testValuesToUiPartial() {
+        TestActivity activity = getActivity();
+        TestViewModel model = new TestViewModel();
+        Injector injector = new Injector(activity, model);
+        TextView textView = (TextView) activity.findViewById(R.id.textView1);
+        EditText editText = (EditText) activity.findViewById(R.id.editText1);
+        editText.setText("unchanged");
+
+        model.text = "ReadMe";
+        model.editText = "EditMe";
+        injector.valuesToUi("text");
+        assertEquals("ReadMe", textView.getText().toString());
+        assertEquals("unchanged", editText.getText().toString());
+        assertEquals(1, metrics.getPhaseHistogram(InjectionMetrics.PHASE_VALUES_TO_UI, TestViewModel.class).getCount());
+    }
+
+    @UiThreadTest
+    public void testValuesToUiChangedByUser() {
+        TestActivity activity = getActivity();
+        Injector injector = new Injector(activity);
+        EditText editText = (EditText) activity.findViewById(R.id.editText1);
+
+        activity.value = "rhino";
+        injector.valuesToUi();
+        editText.setText("tiger");
+
+        // Value did not change, but the UI did
+        injector.valuesToUi();
+        assertEquals("rhino", editText.getText().toString());
+    }
+
+    @UiThreadTest
+    public void testValueAfterSetContentView() {
+        TestActivity activity = getActivity();
+        Injector injector = new Injector(activity);
+        activity.value = "rhino";
+        injector.valuesToUi();
+
+        activity.setContentView(R.layout.main);
+        injector.valuesToUi();
+        EditText editText = (EditText) activity.findViewById(R.id.editText1);
+        assertEquals("rhino", editText.getText().toString());
+    }
+
+    @UiThreadTest
+    public void testValuePrimitives() {
+        TestActivity activity = getActivity();
+        TestPrimitiveViewModel model = new TestPrimitiveViewModel();
+        Injector injector = new Injector(activity, model);
+        TextView textView = (TextView) activity.findViewById(R.id.textView1);
+        Button button = (Button) activity.findViewById(R.id.button1);
+        EditText editText = (EditText) activity.findViewById(R.id.editText1);
+
+        model.count = Integer.MIN_VALUE;
+        model.total = 1234567890123L;
+        model.ratio = 0.5;
+        injector.valuesToUi();
+        assertEquals("-2147483648", textView.getText().toString());
+        assertEquals("1234567890123", button.getText().toString());
+        assertEquals("0.5", editText.getText().toString());
+
+        textView.setText("42");
+        button.setText(" -7 ");
+        editText.setText("");
+        injector.uiToValues();
+        assertEquals(42, model.count);
+        assertEquals(-7, model.total);
+        assertEquals(0.0, model.ratio);
+
+        model.count = 0;
+        injector.valuesToUi();
+        assertEquals("0", textView.getText().toString());
+    }
+
+    @UiThreadTest
+    public void testValuePrimitiveParseError() {
+        TestActivity activity = getActivity();
+        TestPrimitiveViewModel model = new TestPrimitiveViewModel();
+        Injector injector = new Injector(activity, model);
+        injector.valuesToUi();
+
+        TextView textView = (TextView) activity.findViewById(R.id.textView1);
+        textView.setText("2147483648");
+        try {
+            injector.uiToValues();
+            fail("Should have thrown");
+        } catch (InjectException expected) {
+            // OK
+        }
+    }
+
+    @UiThreadTest
+    public void testValueTwoWay() {
+        TestActivity activity = getActivity();
+        TestViewModel model = new TestViewModel();
+        Injector injector = new Injector(activity, model);
+        ValueBinder valueBinder = injector.getValueBinder();
+        valueBinder.setTwoWay(true);
+
+        model.text = "ReadMe";
+        model.editText = "EditMe";
+        injector.valuesToUi();
+        assertTrue(valueBinder.getDirtyFields().isEmpty());
+
+        EditText editText = (EditText) activity.findViewById(R.id.editText1);
+        editText.setText("Edited");
+        assertTrue(valueBinder.isDirty("editText"));
+        assertFalse(valueBinder.isDirty("text"));
+
+        // Unchanged views are not read, so the field keeps its value
+        model.text = "NotApplied";
+        injector.uiToValues();
+        assertEquals("Edited", model.editText);
+        assertEquals("NotApplied", model.text);
+        assertTrue(valueBinder.isDirty("editText"));
+
+        valueBinder.clearDirtyFields();
+        assertTrue(valueBinder.getDirtyFields().isEmpty());
+
+        valueBinder.setTwoWay(false);
+        injector.uiToValues();
+        assertEquals("ReadMe", model.text);
+    }
+
+    public void testValueAutoUpdate() throws Exception {
+        TestActivity activity = getActivity();
+        final TestObservableModel model = new TestObservableModel();
+        final Injector injector = new Injector(activity, model);
+        injector.getValueBinder().setAutoUpdate(true);
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= 1000; i++) {
+                    model.setPrice(i);
+                }
+                model.setName("Stock");
+            }
+        };
+        thread.start();
+        thread.join();
+        awaitMainLooper(ValueBinder.FRAME_MILLIS);
+
+        TextView textView = (TextView) activity.findViewById(R.id.textView1);
+        Button button = (Button) activity.findViewById(R.id.button1);
+        assertEquals("1000", textView.getText().toString());
+        assertEquals("Stock", button.getText().toString());
+
+        injector.getValueBinder().setAutoUpdate(false);
+        model.setName("Ignored");
+        awaitMainLooper(ValueBinder.FRAME_MILLIS);
+        assertEquals("Stock", button.getText().toString());
+    }
+
+    /**
+     * Waits until the main looper ran all messages posted so far that are due within the given delay; the auto update
+     * of ValueBinder is posted at most FRAME_MILLIS after the last change.
+     */
+    private void awaitMainLooper(long delayMillis) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, delayMillis);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testInjectDependencies() {
+        TestActivity activity = getActivity();
+        Injector.injectInto(activity);
+        TestSession session = activity.session;
+        assertNotNull(session);
+        assertSame(activity, session.context);
+        assertSame(ObjectGraph.getDefault().get(TestClock.class), session.clock);
+        assertSame(session, ObjectGraph.getDefault().get(activity, TestSession.class));
+
+        assertFalse(activity.lazyClock.isCreated());
+        assertSame(session.clock, activity.lazyClock.get());
+        assertSame(session.clock, session.lazyClock.get());
+    }
+
+    public void testObjectGraphScopes() {
+        TestActivity activity = getActivity();
+        ObjectGraph graph = new ObjectGraph();
+        try {
+            graph.get(TestSession.class);
+            fail("Should have thrown");
+        } catch (InjectException expected) {
+            // OK, activity scoped
+        }
+        TestSession session = graph.get(activity, TestSession.class);
+        assertSame(session, graph.get(activity, TestSession.class));
+        graph.releaseScope(activity);
+        assertNotSame(session, graph.get(activity, TestSession.class));
+        assertSame(session.clock, graph.get(TestClock.class));
+
+        TestClock clock = new TestClock();
+        ObjectGraph boundGraph = new ObjectGraph();
+        boundGraph.bindInstance(TestClock.class, clock);
+        assertSame(clock, boundGraph.get(activity, TestSession.class).clock);
+    }
+
+    public void testObjectGraphCached() {
+        TestActivity activity = getActivity();
+        ObjectGraph graph = new ObjectGraph();
+        TestFormatter formatter = graph.get(activity, TestFormatter.class);
+        assertSame(formatter, graph.get(activity, TestFormatter.class));
+        assertSame(graph.get(TestClock.class), formatter.clock);
+
+        // Released objects are still shared while referenced
+        graph.releaseScope(activity);
+        assertSame(formatter, graph.get(activity, TestFormatter.class));
+        assertTrue(InstanceCache.getDefault().size() > 0);
+    }
+
+    public void testObjectGraphReleasedActivityCollectable() {
+        // Not attached, only used as scope
+        TestActivity activity = new TestActivity();
+        ObjectGraph graph = new ObjectGraph();
+        TestSession session = graph.get(activity, TestSession.class);
+        assertSame(activity, session.context);
+
+        graph.releaseScope(activity);
+        WeakReference<TestActivity> activityReference = new WeakReference<TestActivity>(activity);
+        activity = null;
+        session = null;
+        for (int i = 0; i < 10 && activityReference.get() != null; i++) {
+            System.gc();
+        }
+        assertNull(activityReference.get());
+    }
+
+    @UiThreadTest
+    public void testReleaseScope() {
+        TestActivity activity = getActivity();
+        Injector injector = Injector.injectInto(activity);
+        TestSession session = activity.session;
+        assertSame(session, ObjectGraph.getDefault().get(activity, TestSession.class));
+
+        // Injecting another target does not release the activity's scope
+        new Injector(activity, new TestClickTarget()).release();
+        assertSame(session, ObjectGraph.getDefault().get(activity, TestSession.class));
+
+        injector.release();
+        assertNotSame(session, ObjectGraph.getDefault().get(activity, TestSession.class));
+    }
+
+    public void testObjectGraphFailedLinkNotCached() {
+        ObjectGraph graph = new ObjectGraph();
+        graph.bindType(TestCycle.Named.class, TestCycle.UnboundNamed.class);
+        for (int i = 0; i < 2; i++) {
+            try {
+                graph.get(TestCycle.Named.class);
+                fail("Should have thrown");
+            } catch (InjectException expected) {
+                assertTrue(expected.getMessage().startsWith("No binding"));
+            }
+        }
+    }
+
+    public void testObjectGraphLazyCycle() {
+        TestActivity activity = getActivity();
+        TestCycle.LazyA a = new ObjectGraph().get(TestCycle.LazyA.class);
+        assertNotNull(a.b.get().a);
+
+        // Entering the cycle at the other type
+        ObjectGraph graph = new ObjectGraph();
+        TestCycle.EagerB b = graph.get(TestCycle.EagerB.class);
+        assertNotNull(b.a.b.get());
+        assertNotNull(graph.get(activity, TestCycle.LazyA.class));
+    }
+
+    public void testObjectGraphEagerCycle() {
+        try {
+            new ObjectGraph().get(TestCycle.CycleA.class);
+            fail("Should have thrown");
+        } catch (InjectException expected) {
+            assertTrue(expected.getMessage().startsWith("Dependency cycle"));
+        }
+        try {
+            new ObjectGraph().get(TestCycle.CycleB.class);
+            fail("Should have thrown");
+        } catch (InjectException expected) {
+            assertTrue(expected.getMessage().startsWith("Dependency cycle"));
+        }
+    }
+
+    public void testObjectGraphLazyCycleNeedsActivity() {
+        // The singleton depends on the Context through the cycle, whichever type is linked first
+        try {
+            new ObjectGraph().get(TestCycle.SingletonA.class);
+            fail("Should have thrown");
+        } catch (InjectException expected) {
+            assertTrue(expected.getMessage().startsWith("Singleton may not depend"));
+        }
+        try {
+            new ObjectGraph().get(getActivity(), TestCycle.ContextB.class);
+            fail("Should have thrown");
+        } catch (InjectException expected) {
+            assertTrue(expected.getMessage().startsWith("Singleton may not depend"));
+        }
+    }
+
+    public void testInstanceCache() {
+        InstanceCache cache = new InstanceCache(1);
+        String first = new String("first");
+        String second = new String("second");
+        assertSame(first, cache.putIfAbsent("scope", String.class, first));
+        assertSame(first, cache.putIfAbsent("scope", String.class, second));
+        assertSame(first, cache.get("scope", String.class));
+        assertNull(cache.get(InstanceCache.APPLICATION_SCOPE, String.class));
+
+        cache.putIfAbsent(InstanceCache.APPLICATION_SCOPE, String.class, second);
+        assertEquals(1, cache.size());
+        // Evicted, but still referenced
+        assertSame(first, cache.get("scope", String.class));
+
+        cache.releaseScope("scope");
+        cache.trimMemory(ResourceCache.TRIM_MEMORY_MODERATE);
+        assertEquals(0, cache.size());
+        assertSame(second, cache.get(InstanceCache.APPLICATION_SCOPE, String.class));
+    }
+
+    public void testMetadataCacheSize() {
+        Injector.setMetadataCacheSize(0);
+        try {
+            TestActivity activity = getActivity();
+            Injector.injectInto(activity);
+            assertEquals(activity.getString(R.string.app_name), activity.app_name);
+            Injector.injectInto(activity);
+            assertEquals(activity.getString(R.string.app_name), activity.app_name);
+        } finally {
+            Injector.setMetadataCacheSize(64);
+        }
+    }
+
+    public void testPrewarm() throws Exception {
+        Future<Integer> future = Injector.prewarm(TestActivity.class, TestViewModel.class);
+        assertEquals(2, future.get(5, TimeUnit.SECONDS).intValue());
+
+        TestActivity activity = getActivity();
+        assertEquals(3, Injector.prewarm(activity, R.array.prewarm_classes).get(5, TimeUnit.SECONDS).intValue());
+        // Listed in the manifest
+        assertEquals(3, Injector.prewarm(activity).get(5, TimeUnit.SECONDS).intValue());
+    }
+
+    public void testState() {
+        TestActivity activity = getActivity();
+        activity.stateCounter = 42;
+        activity.stateQuery = "green";
+        activity.stateResults = new ArrayList<String>(Arrays.asList("a", "b"));
+        Bundle state = new Bundle();
+        Injector.saveState(activity, state);
+        assertEquals(42, state.getInt("stateCounter"));
+        assertEquals("green", state.getString("query"));
+
+        activity.stateCounter = 0;
+        activity.stateQuery = null;
+        activity.stateResults = null;
+        Injector.injectInto(activity, state);
+        assertEquals(42, activity.stateCounter);
+        assertEquals("green", activity.stateQuery);
+        assertEquals(Arrays.asList("a", "b"), activity.stateResults);
+    }
+
+    public void testStateReflection() {
+        Bundle state = new Bundle();
+        Injector.saveState(new TestStateModel(7, 2.5f, new int[] { 1, 3 }), state);
+        assertEquals(7, state.getLong("id"));
+
+        TestStateModel model = new TestStateModel(0, 0, null);
+        Injector.restoreState(model, state);
+        assertEquals(7, model.getId());
+        assertEquals(2.5f, model.getRatio());
+        assertTrue(Arrays.equals(new int[] { 1, 3 }, model.getSelectedPositions()));
+        assertEquals(3, metrics.getMemberHistogram(InjectionMetrics.MEMBER_STATE, TestStateModel.class).getCount());
+        // Reported once per field when restored by injecting as well
+        Injector.inject(getActivity(), new TestStateModel(0, 0, null), state);
+        assertEquals(6, metrics.getMemberHistogram(InjectionMetrics.MEMBER_STATE, TestStateModel.class).getCount());
+
+        // Missing in state
+        model = new TestStateModel(3, 1, null);
+        Injector.restoreState(model, new Bundle());
+        assertEquals(3, model.getId());
+    }
+
     public void testExtra() {
         Intent intent = new Intent();
         intent.putExtra("color", "green");
@@ -202,6 +1048,154 @@ public class ActivityInjectTest extends ActivityInstrumentationTestCase2<TestAct
         assertEquals("green", activity.color);
     }
 
+    public void testTypedExtras() {
+        Intent intent = new Intent();
+        intent.putExtra("count", 3);
+        intent.putExtra("ratio", 2.5f);
+        setActivityIntent(intent);
+        TestActivity activity = getActivity();
+        Injector.injectInto(activity);
+        assertEquals(3, activity.count);
+        assertEquals(2.5f, activity.ratio);
+        assertTrue(activity.enabled);
+        assertEquals("Untitled", activity.title);
+    }
+
+    public void testTypedExtrasMissingOrWrongType() {
+        Intent intent = new Intent();
+        intent.putExtra("count", "not an int");
+        intent.putExtra("title", 42);
+        setActivityIntent(intent);
+        TestActivity activity = getActivity();
+        Injector.injectInto(activity);
+        assertEquals(7, activity.count);
+        assertEquals(0.5f, activity.ratio);
+        assertEquals("Untitled", activity.title);
+    }
+
+    public void testTypedExtrasReflection() {
+        Intent intent = new Intent();
+        intent.putExtra("timestamp", 1234567890123L);
+        setActivityIntent(intent);
+        TestActivity activity = getActivity();
+        TestExtraModel model = new TestExtraModel();
+        Injector.inject(activity, model);
+        assertEquals(16, model.getCount());
+        assertEquals(1234567890123L, model.getTimestamp());
+        assertEquals(1.5, model.getRatio());
+        assertEquals(42, model.getMaxItems());
+        assertTrue(model.isFeatureEnabled());
+    }
+
+    public void testTypedResources() {
+        TestActivity activity = getActivity();
+        Injector.injectInto(activity);
+        assertEquals(42, activity.maxItems);
+        assertEquals(0xff336699, activity.highlightColor);
+        assertTrue(activity.featureEnabled);
+        assertEquals(8f, activity.padding);
+        assertTrue(Arrays.equals(new String[] { "red", "green", "blue" }, activity.colors));
+        assertNotNull(activity.fadeIn);
+
+        // Animations hold state, so each injection gets its own instance
+        Animation fadeIn = activity.fadeIn;
+        Injector.injectInto(activity);
+        assertNotSame(fadeIn, activity.fadeIn);
+        assertEquals(42, activity.maxItems);
+    }
+
+    public void testIntResourceUnsupportedType() {
+        TestIntResourceModel model = new TestIntResourceModel();
+        Injector.inject(getActivity(), model);
+        // Logged, the field keeps its value
+        assertEquals(-1, model.appName);
+    }
+
+    public void testMetrics() {
+        TestActivity activity = getActivity();
+        Injector.injectInto(activity);
+        assertEquals(1, metrics.getPhaseHistogram(InjectionMetrics.PHASE_INJECT_FIELDS).getCount());
+        LatencyHistogram activityHistogram = metrics.getPhaseHistogram(InjectionMetrics.PHASE_BIND_METHODS,
+                TestActivity.class);
+        assertEquals(1, activityHistogram.getCount());
+        assertTrue(activityHistogram.getMax() > 0);
+        assertTrue(metrics.getViewsResolved() > 0);
+
+        // Reflection reports each member
+        Injector.inject(activity, new TestExtraModel());
+        assertEquals(2, metrics.getPhaseHistogramsByClass(InjectionMetrics.PHASE_INJECT_FIELDS).size());
+        assertEquals(3, metrics.getMemberHistogram(InjectionMetrics.MEMBER_EXTRA, TestExtraModel.class).getCount());
+        assertEquals(2, metrics.getMemberHistogram(InjectionMetrics.MEMBER_RESOURCE, TestExtraModel.class)
+                .getCount());
+        long activityExtras = metrics.getMemberHistogram(InjectionMetrics.MEMBER_EXTRA, TestActivity.class)
+                .getCount();
+        if (usesGeneratedInjectors()) {
+            // Generated injectors do not report members
+            assertEquals(0, activityExtras);
+            assertEquals(3, metrics.getMemberHistogram(InjectionMetrics.MEMBER_EXTRA).getCount());
+        } else {
+            assertEquals(5, activityExtras);
+            assertEquals(8, metrics.getMemberHistogram(InjectionMetrics.MEMBER_EXTRA).getCount());
+        }
+
+        metrics.reset();
+        assertEquals(0, metrics.getPhaseHistogram(InjectionMetrics.PHASE_INJECT_FIELDS).getCount());
+        assertEquals(0, metrics.getViewsResolved());
+    }
+
+    public void testMetricsResourcesDecoded() {
+        TestActivity activity = getActivity();
+        ResourceCache.setDefault(new ResourceCache(1024 * 1024));
+        try {
+            Injector.injectInto(activity);
+            assertTrue(metrics.getResourcesDecoded() > 0);
+            assertTrue(metrics.getBytesAllocated() > 0);
+
+            // Cached now
+            long decoded = metrics.getResourcesDecoded();
+            Injector.injectInto(activity);
+            assertEquals(decoded, metrics.getResourcesDecoded());
+        } finally {
+            ResourceCache.setDefault(new ResourceCache(Runtime.getRuntime().maxMemory() / 8));
+        }
+    }
+
+    public void testMetricsNotInstalled() {
+        Injector.setMetrics(null);
+        TestActivity activity = getActivity();
+        Injector.injectInto(activity);
+        assertEquals(0, metrics.getPhaseHistogram(InjectionMetrics.PHASE_INJECT_FIELDS).getCount());
+        assertEquals(0, metrics.getViewsResolved());
+    }
+
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(1000, histogram.getMin());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(50500, histogram.getMean());
+        assertWithin(50000, histogram.getPercentile(50), 0.125);
+        assertWithin(90000, histogram.getPercentile(90), 0.125);
+        assertEquals(100000, histogram.getPercentile(100));
+
+        LatencyHistogram copy = histogram.copy();
+        histogram.add(copy);
+        assertEquals(200, histogram.getCount());
+        assertWithin(50000, histogram.getPercentile(50), 0.125);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(100, copy.getCount());
+    }
+
+    private void assertWithin(long expected, long actual, double relativeError) {
+        assertTrue("Expected " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected * relativeError);
+    }
+
     @UiThreadTest
     public void testViewModelValues() {
         TestActivity activity = getActivity();
@@ -15,16 +15,24 @@
  */
 package de.greenrobot.inject.test;
 
+import java.util.ArrayList;
+
 import android.app.Activity;
 import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.os.Bundle;
 import android.view.View;
+import android.view.animation.Animation;
 import android.widget.TextView;
+import de.greenrobot.inject.Lazy;
+import de.greenrobot.inject.annotation.Inject;
 import de.greenrobot.inject.annotation.InjectExtra;
 import de.greenrobot.inject.annotation.InjectResource;
+import de.greenrobot.inject.annotation.InjectState;
 import de.greenrobot.inject.annotation.InjectView;
 import de.greenrobot.inject.annotation.OnClick;
+import de.greenrobot.inject.annotation.OnLongClick;
+import de.greenrobot.inject.annotation.OnTextChanged;
 import de.greenrobot.inject.annotation.Value;
 
 public class TestActivity extends Activity {
@@ -42,8 +50,25 @@ public class TestActivity extends Activity {
     @InjectResource(id = R.drawable.icon)
     Bitmap iconBitmap;
 
+    @InjectResource(id = R.drawable.icon, maxWidth = 8, maxHeight = 8, config = "RGB_565")
+    Bitmap smallIconBitmap;
+
+    @InjectResource(id = R.drawable.icon)
+    Lazy<Bitmap> lazyIconBitmap;
+
+    @InjectView(id = R.id.textView1)
+    Lazy<TextView> lazyTextView;
+
+    @Inject
+    TestSession session;
+
+    @Inject
+    Lazy<TestClock> lazyClock;
+
     boolean button1Clicked;
     View clickedView;
+    View longClickedView;
+    CharSequence changedText;
 
     @Value(bindTo = R.id.editText1)
     String value;
@@ -51,6 +76,36 @@ public class TestActivity extends Activity {
     @InjectExtra(key = "color")
     String color;
 
+    @InjectExtra(key = "count", defaultValue = "7")
+    int count;
+
+    @InjectExtra(key = "ratio")
+    float ratio = 0.5f;
+
+    @InjectExtra(key = "enabled", defaultValue = "true")
+    boolean enabled;
+
+    @InjectExtra(key = "title", defaultValue = "Untitled")
+    String title;
+
+    @InjectResource(id = R.integer.max_items)
+    int maxItems;
+
+    @InjectResource(id = R.color.highlight)
+    int highlightColor;
+
+    @InjectResource(id = R.bool.feature_enabled)
+    boolean featureEnabled;
+
+    @InjectResource(id = R.dimen.padding)
+    float padding;
+
+    @InjectResource(id = R.array.colors)
+    String[] colors;
+
+    @InjectResource(id = R.anim.fade_in)
+    Animation fadeIn;
+
     int clickCount;
     Thread clickThread;
 
@@ -60,6 +115,15 @@ public class TestActivity extends Activity {
     @Value(bindTo = R.id.imageView2)
     Bitmap imageBitmap;
 
+    @InjectState
+    int stateCounter;
+
+    @InjectState(key = "query")
+    String stateQuery;
+
+    @InjectState
+    ArrayList<String> stateResults;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -91,4 +155,25 @@ public class TestActivity extends Activity {
         clickThread = Thread.currentThread();
     }
 
+    @OnClick(id = R.id.button6, newThread = true, executor = "test")
+    void clickTestExecutor() {
+        clickCount++;
+    }
+
+    @OnClick(id = R.id.button7, newThread = true, executor = "test", whileRunning = OnClick.RUN_COALESCE)
+    void clickCoalesced() {
+        clickCount++;
+    }
+
+    @OnLongClick(id = R.id.button2)
+    boolean longClickMe(View longClickedView) {
+        this.longClickedView = longClickedView;
+        return true;
+    }
+
+    @OnTextChanged(id = R.id.editText1)
+    void textChanged(CharSequence text) {
+        changedText = text.toString();
+    }
+
 }
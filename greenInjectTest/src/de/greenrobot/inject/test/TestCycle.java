@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject.test;
+
+import android.content.Context;
+import de.greenrobot.inject.Lazy;
+import de.greenrobot.inject.annotation.Inject;
+import de.greenrobot.inject.annotation.Singleton;
+
+/** Dependency cycles resolved by the ObjectGraph. */
+public class TestCycle {
+
+    /** Cycle broken by a lazy dependency. */
+    public static class LazyA {
+        @Inject
+        Lazy<EagerB> b;
+    }
+
+    public static class EagerB {
+        @Inject
+        LazyA a;
+    }
+
+    /** Cycle without a lazy dependency. */
+    public static class CycleA {
+        @Inject
+        CycleB b;
+    }
+
+    public static class CycleB {
+        @Inject
+        CycleA a;
+    }
+
+    /** Reaches the Context through a lazy cycle. */
+    @Singleton
+    public static class SingletonA {
+        @Inject
+        Lazy<ContextB> b;
+    }
+
+    public static class ContextB {
+        @Inject
+        SingletonA a;
+        @Inject
+        Context context;
+    }
+
+    public interface Named {
+    }
+
+    /** Reaches its interface lazily while linking, but has a dependency without binding. */
+    public static class UnboundNamed implements Named {
+        @Inject
+        Lazy<Named> self;
+        @Inject
+        Runnable unbound;
+    }
+
+}
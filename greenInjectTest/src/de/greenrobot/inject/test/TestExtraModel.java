@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject.test;
+
+import de.greenrobot.inject.annotation.InjectExtra;
+import de.greenrobot.inject.annotation.InjectResource;
+
+/** Private fields: injected by reflection. */
+public class TestExtraModel {
+    @InjectExtra(key = "count", defaultValue = "0x10")
+    private int count;
+
+    @InjectExtra(key = "timestamp")
+    private long timestamp = -1;
+
+    @InjectExtra(key = "ratio", defaultValue = "1.5")
+    private double ratio;
+
+    @InjectResource(id = R.integer.max_items)
+    private int maxItems;
+
+    @InjectResource(id = R.bool.feature_enabled)
+    private boolean featureEnabled;
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getRatio() {
+        return ratio;
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    public boolean isFeatureEnabled() {
+        return featureEnabled;
+    }
+
+}
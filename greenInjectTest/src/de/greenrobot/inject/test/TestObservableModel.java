@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject.test;
+
+import de.greenrobot.inject.ObservableModel;
+import de.greenrobot.inject.annotation.Value;
+
+public class TestObservableModel extends ObservableModel {
+    @Value(bindTo = R.id.textView1)
+    int price;
+    @Value(bindTo = R.id.button1)
+    String name;
+
+    public void setPrice(int price) {
+        this.price = price;
+        notifyChanged("price");
+    }
+
+    public void setName(String name) {
+        this.name = name;
+        notifyChanged("name");
+    }
+}
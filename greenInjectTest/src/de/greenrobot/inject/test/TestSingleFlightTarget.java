@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2011 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.greenrobot.inject.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.greenrobot.inject.annotation.OnClick;
+
+public class TestSingleFlightTarget {
+    final AtomicInteger dropCount = new AtomicInteger();
+    final AtomicInteger discardCount = new AtomicInteger();
+    final CountDownLatch discardLatch = new CountDownLatch(1);
+    final AtomicInteger coalesceCount = new AtomicInteger();
+
+    @OnClick(id = R.id.button1, newThread = true, executor = "test", whileRunning = OnClick.RUN_DROP)
+    void clickDrop() {
+        dropCount.incrementAndGet();
+    }
+
+    /** The "discard" executor is registered by the tests. */
+    @OnClick(id = R.id.button2, newThread = true, executor = "discard", whileRunning = OnClick.RUN_DROP)
+    void clickDiscard() {
+        discardCount.incrementAndGet();
+        discardLatch.countDown();
+    }
+
+    @OnClick(id = R.id.button3, newThread = true, executor = "discard", whileRunning = OnClick.RUN_COALESCE)
+    void clickCoalesce() {
+        coalesceCount.incrementAndGet();
+    }
+
+}